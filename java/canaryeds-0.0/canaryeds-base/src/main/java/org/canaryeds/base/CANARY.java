@@ -24,12 +24,16 @@ import org.canaryeds.base.util.CustomResolver;
 import gov.sandia.seme.framework.Components;
 import gov.sandia.seme.framework.Descriptor;
 import gov.sandia.seme.framework.Engine;
+import gov.sandia.seme.framework.ExecutionMode;
+import gov.sandia.seme.framework.HistoryStorage;
 import gov.sandia.seme.framework.Messagable;
 import gov.sandia.seme.framework.ModelConnection;
 import gov.sandia.seme.framework.ConfigurationException;
 import gov.sandia.seme.framework.InitializationException;
 import gov.sandia.seme.framework.InvalidComponentClassException;
+import gov.sandia.seme.framework.RouterMode;
 import gov.sandia.seme.framework.RouterRegistrationException;
+import gov.sandia.seme.framework.SchedulerMode;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -42,8 +46,6 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.ResourceBundle;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import net.sourceforge.argparse4j.ArgumentParsers;
 import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
@@ -276,6 +278,56 @@ public final class CANARY extends Engine implements Serializable {
             LOG.fatal("Error in configuration file - 'data channels' section is badly formed.");
             throw ex;
         }
+        if (v5config.containsKey("router mode")) {
+            String mode = String.valueOf(v5config.get("router mode"));
+            try {
+                this.setRouterMode(RouterMode.valueOf(mode.trim().toUpperCase()));
+            } catch (IllegalArgumentException ex) {
+                LOG.fatal("Error in configuration file - unknown 'router mode': " + mode);
+                throw new ConfigurationException(
+                        "Invalid router mode '" + mode + "' (use 'polling' or 'push')");
+            }
+        }
+        if (v5config.containsKey("scheduler mode")) {
+            String mode = String.valueOf(v5config.get("scheduler mode"));
+            try {
+                this.setSchedulerMode(SchedulerMode.valueOf(
+                        mode.trim().toUpperCase().replace(' ', '_').replace('-', '_')));
+            } catch (IllegalArgumentException ex) {
+                LOG.fatal("Error in configuration file - unknown 'scheduler mode': " + mode);
+                throw new ConfigurationException(
+                        "Invalid scheduler mode '" + mode + "' (use 'fixed' or 'work stealing')");
+            }
+        }
+        if (v5config.containsKey("execution mode")) {
+            String mode = String.valueOf(v5config.get("execution mode"));
+            try {
+                this.setExecutionMode(ExecutionMode.valueOf(mode.trim().toUpperCase()));
+            } catch (IllegalArgumentException ex) {
+                LOG.fatal("Error in configuration file - unknown 'execution mode': " + mode);
+                throw new ConfigurationException(
+                        "Invalid execution mode '" + mode + "' (use 'phased' or 'dataflow')");
+            }
+        }
+        if (v5config.containsKey("history storage")) {
+            String mode = String.valueOf(v5config.get("history storage"));
+            try {
+                this.setHistoryStorage(HistoryStorage.valueOf(mode.trim().toUpperCase()));
+            } catch (IllegalArgumentException ex) {
+                LOG.fatal("Error in configuration file - unknown 'history storage': " + mode);
+                throw new ConfigurationException(
+                        "Invalid history storage '" + mode + "' (use 'heap', 'direct' or 'mapped')");
+            }
+        }
+        if (v5config.containsKey("history directory")) {
+            File dir = new File(String.valueOf(v5config.get("history directory")));
+            if (!dir.isDirectory()) {
+                LOG.fatal("Error in configuration file - 'history directory' does not exist: " + dir);
+                throw new ConfigurationException(
+                        "Invalid history directory '" + dir + "'");
+            }
+            factory.setHistoryDirectory(dir);
+        }
 //        descSubComponents = factory.getWorkflowDescriptors(
 //                (HashMap) v5config.get("workflows"), "WORKFLOW");
 //        descMessagables.putAll(factory.getConnectionDescriptors(
@@ -469,7 +521,7 @@ public final class CANARY extends Engine implements Serializable {
             ex2.addSuppressed(ex);
             throw ex2;
         }
-        this.workerService = Executors.newFixedThreadPool(maxThreads);
+        this.startWorkers();
         LOG.debug("Created controllers");
         String connName;
         for (Iterator<String> it = descMessagables.keySet().iterator(); it.hasNext();) {
@@ -494,8 +546,7 @@ public final class CANARY extends Engine implements Serializable {
                 LOG.error("Registration error: ", ex);
             }
         }
-        this.routerTask = this.routerService.scheduleWithFixedDelay(router, 0, 1,
-                TimeUnit.MICROSECONDS);
+        this.startRouter();
     }
 
     /**
@@ -23,6 +23,7 @@ package org.canaryeds.base;
 import gov.sandia.seme.framework.DataChannel;
 import gov.sandia.seme.framework.DataStatus;
 import gov.sandia.seme.framework.Step;
+import gov.sandia.seme.util.LazyModulusMatrix;
 import static java.lang.Math.max;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -73,6 +74,10 @@ public class EventRecord {
     final HashMap<String, ArrayList<Short>> contributed;
     final HashMap<String, ArrayList<Integer>> limitViolation;
     final HashMap<String, ArrayList<DataStatus>> channelStatus;
+    // station history, and each channel's column in it (-1 if none)
+    LazyModulusMatrix history;
+    int[] historyColumns;
+    double[] row;
 
     /**
      * Event Record Object
@@ -123,6 +128,22 @@ public class EventRecord {
         this.workflowChannels.addAll(workflowChannels);
     }
 
+    /**
+     * Read raw data from the station's history rather than from each channel.
+     * Channels with a column of -1 are still read directly.
+     * @param history The station's history matrix.
+     * @param columns The history column of each channel, in channel order.
+     */
+    public void setHistory(LazyModulusMatrix history, int[] columns) {
+        if (history != null && columns.length != channels.size()) {
+            throw new IllegalArgumentException("History has "
+                    + columns.length + " columns for "
+                    + channels.size() + " channels");
+        }
+        this.history = history;
+        this.historyColumns = columns;
+    }
+
     /**
      * Generate a new HashMap of the current station.
      * @return The map.
@@ -250,17 +271,86 @@ public class EventRecord {
         }
     }
 
+    /**
+     * Set the channel statuses from statuses already worked out for the
+     * current step.
+     * @param statuses The status of each channel, in channel order.
+     */
+    public void setChannelStatuses(DataStatus[] statuses) {
+        for (int i = 0; i < channels.size(); i++) {
+            this.channelStatus.get(channels.get(i).getName()).add(statuses[i]);
+        }
+    }
+
     /**
      * Set the raw data for each channel.
      * @param data List of raw data values.
      */
     public void setChannelRawData(Double[] data) {
+        double[] values = new double[data.length];
+        for (int i = 0; i < data.length; i++) {
+            values[i] = data[i];
+        }
+        this.setChannelRawData(values);
+    }
+
+    /**
+     * Set the limit violations for each channel.
+     * @param violations List of limit violations.
+     */
+    public void setChannelLimitViolations(Integer[] violations) {
+        int[] values = new int[violations.length];
+        for (int i = 0; i < violations.length; i++) {
+            values[i] = violations[i];
+        }
+        this.setChannelLimitViolations(values);
+    }
+
+    /**
+     * Set the contributed value for each channel.
+     * @param contributed The list of contributed values.
+     */
+    public void setChannelContributed(Short[] contributed) {
+        byte[] values = new byte[contributed.length];
+        for (int i = 0; i < contributed.length; i++) {
+            values[i] = contributed[i].byteValue();
+        }
+        this.setChannelContributed(values);
+    }
+
+    /**
+     * Set the residuals for each channel.
+     * @param residuals The list of residuals.
+     */
+    public void setChannelResiduals(Double[] residuals) {
+        double[] values = new double[residuals.length];
+        for (int i = 0; i < residuals.length; i++) {
+            values[i] = residuals[i];
+        }
+        this.setChannelResiduals(values);
+    }
+
+    /**
+     * Set the raw data for each channel from a workflow's raw data buffer.
+     * @param data The raw data values, in workflow channel order.
+     */
+    public void setChannelRawData(double[] data) {
         int ct = 0;
         int dataIdx = steps.get(steps.size() - 1).getIndex();
-        for (DataChannel channel : channels) {
+        double[] values = null;
+        if (history != null) {
+            values = history.tryGetRow(dataIdx, historyColumns, row);
+            if (values != null) {
+                row = values;
+            }
+        }
+        for (int i = 0; i < channels.size(); i++) {
+            DataChannel channel = channels.get(i);
             if (this.workflowChannels.contains(channel)) {
                 this.rawData.get(channel.getName()).add(data[ct]);
                 ct++;
+            } else if (values != null && historyColumns[i] >= 0) {
+                rawData.get(channel.getName()).add(values[i]);
             } else {
                 rawData.get(channel.getName()).add(channel.getDoubleValue(
                         dataIdx));
@@ -269,12 +359,14 @@ public class EventRecord {
     }
 
     /**
-     * Set the limit violations for each channel.
-     * @param violations List of limit violations.
+     * Set the limit violations for each channel from a workflow's violations
+     * buffer.
+     * @param violations The limit violations, in workflow channel order.
      */
-    public void setChannelLimitViolations(Integer[] violations) {
+    public void setChannelLimitViolations(int[] violations) {
         int ct = 0;
-        for (DataChannel channel : channels) {
+        for (int i = 0; i < channels.size(); i++) {
+            DataChannel channel = channels.get(i);
             if (this.workflowChannels.contains(channel)) {
                 this.limitViolation.get(channel.getName()).add(violations[ct]);
                 ct++;
@@ -285,28 +377,32 @@ public class EventRecord {
     }
 
     /**
-     * Set the contributed value for each channel.
-     * @param contributed The list of contributed values.
+     * Set the contributed value for each channel from a workflow's
+     * contributed buffer.
+     * @param contributed The contributed values, in workflow channel order.
      */
-    public void setChannelContributed(Short[] contributed) {
+    public void setChannelContributed(byte[] contributed) {
         int ct = 0;
-        for (DataChannel channel : channels) {
+        for (int i = 0; i < channels.size(); i++) {
+            DataChannel channel = channels.get(i);
             if (this.workflowChannels.contains(channel)) {
-                this.contributed.get(channel.getName()).add(contributed[ct]);
+                this.contributed.get(channel.getName()).add(
+                        (short) contributed[ct]);
                 ct++;
             } else {
-                this.contributed.get(channel.getName()).add((short)0);
+                this.contributed.get(channel.getName()).add((short) 0);
             }
         }
     }
 
     /**
-     * Set the residuals for each channel.
-     * @param residuals The list of residuals.
+     * Set the residuals for each channel from a workflow's residuals buffer.
+     * @param residuals The residuals, in workflow channel order.
      */
-    public void setChannelResiduals(Double[] residuals) {
+    public void setChannelResiduals(double[] residuals) {
         int ct = 0;
-        for (DataChannel channel : channels) {
+        for (int i = 0; i < channels.size(); i++) {
+            DataChannel channel = channels.get(i);
             if (this.workflowChannels.contains(channel)) {
                 this.residuals.get(channel.getName()).add(residuals[ct]);
                 ct++;
@@ -314,7 +410,6 @@ public class EventRecord {
                 this.residuals.get(channel.getName()).add(0.0);
             }
         }
-
     }
 
     /**
@@ -21,24 +21,36 @@
 package org.canaryeds.base;
 
 import gov.sandia.seme.framework.DataChannel;
+import gov.sandia.seme.framework.DataStatus;
+import gov.sandia.seme.framework.DataflowConnection;
+import gov.sandia.seme.framework.DataflowListener;
 import gov.sandia.seme.framework.Descriptor;
 import gov.sandia.seme.framework.Message;
 import gov.sandia.seme.framework.MessageType;
 import gov.sandia.seme.framework.ModelConnection;
+import gov.sandia.seme.framework.RowMessage;
+import gov.sandia.seme.framework.RowMessageConsumer;
 import gov.sandia.seme.framework.Step;
+import gov.sandia.seme.framework.ValueMessage;
 import gov.sandia.seme.framework.ConfigurationException;
 import gov.sandia.seme.framework.InitializationException;
 import gov.sandia.seme.framework.InvalidComponentClassException;
+import gov.sandia.seme.util.LazyModulusMatrix;
 import gov.sandia.seme.util.MessagableImpl;
 import static java.lang.Math.max;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import org.apache.log4j.Logger;
+import org.canaryeds.base.datachannels.QualityScreen;
+import org.canaryeds.base.datachannels.SCADAChannel;
 import org.json.simple.JSONValue;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
@@ -73,7 +85,8 @@ import org.json.simple.parser.ParseException;
  * @author $LastChangedBy: dbhart $
  * @version $Rev: 4374 $, $Date: 2015-01-27 10:01:15 -0700 (Tue, 27 Jan 2015) $
  */
-public final class Station extends MessagableImpl implements ModelConnection {
+public final class Station extends MessagableImpl implements ModelConnection,
+        DataflowConnection, RowMessageConsumer {
 
     private static final Logger LOG = Logger.getLogger(Station.class);
     static final long serialVersionUID = -1785562090925337343L;
@@ -143,6 +156,44 @@ public final class Station extends MessagableImpl implements ModelConnection {
      * Access to the station's channels in order.
      */
     protected final ArrayList<DataChannel> channelList;
+
+    /**
+     * The channels' history, or null if the channels keep their own.
+     */
+    protected LazyModulusMatrix history;
+
+    /**
+     * The history column of each channel, in channelList order; -1 for a
+     * channel that keeps its own history.
+     */
+    protected int[] historyColumns;
+
+    /**
+     * Each channel's status for the current step, in channelList order,
+     * including the status of the channels it requires. Updated once per
+     * step, before the workflow is evaluated.
+     */
+    protected DataStatus[] channelStatus;
+
+    /**
+     * channelList positions, ordered so that each channel comes after the
+     * channels it requires.
+     */
+    private int[] statusOrder;
+
+    /**
+     * The channelList positions of the channels each channel requires.
+     */
+    private int[][] statusLinks;
+
+    /**
+     * Screens the latest values of the SCADA channels, in channelList order,
+     * together; scadaChannels holds null for other channels, whose status is
+     * asked for instead.
+     */
+    private QualityScreen screen;
+    private SCADAChannel[] scadaChannels;
+    private double[] latestValues;
     
     /**
      * Is this station enabled for execution.
@@ -173,6 +224,36 @@ public final class Station extends MessagableImpl implements ModelConnection {
      * A list of tags that must be seen before workflow execution starts.
      */
     protected ArrayList<String> synchronizeToTags;
+
+    /**
+     * Index of each synchronize-to tag in synchronizeToTags.
+     */
+    private HashMap<String, Integer> syncTagIndex = new HashMap();
+
+    /**
+     * Highest step index delivered to the inbox for each synchronize-to tag.
+     */
+    private AtomicIntegerArray syncArrived = new AtomicIntegerArray(0);
+
+    /**
+     * Synchronize-to index for each tag ID (-1 for other tags, -2 where not
+     * yet looked up) and for each column of each row producer, so delivering
+     * a message does not look its tag up by name.
+     */
+    private int[] syncIndexById = new int[0];
+    private final IdentityHashMap<String[], int[]> rowSyncIndex = new IdentityHashMap();
+
+    /**
+     * The step and listener registered with #notifyWhenReady, cleared when the
+     * listener is called.
+     */
+    private final AtomicReference<ReadyWatch> readyWatch = new AtomicReference();
+
+    /**
+     * Channel lookups for each row producer, keyed by its column tag array.
+     */
+    private final IdentityHashMap<String[], DataChannel[]> rowChannels = new IdentityHashMap();
+    private DataChannel[] channelsById = new DataChannel[16];
     
     /**
      * The station's tag name (used for message routing).
@@ -395,8 +476,179 @@ public final class Station extends MessagableImpl implements ModelConnection {
             channelList.add(channels.get(chanName));
         }
         workflow.initialize();
+        this.initializeHistory(maxWinSize);
+        this.initializeStatus();
+        Object syncTo = conf.getOptions().get("synchronize to");
+        if (syncTo != null) {
+            ArrayList<String> syncTags = new ArrayList();
+            for (Descriptor reqd : conf.getRequiresComponents()) {
+                if (!"DATACHANNEL".equals(reqd.getType().toString())) {
+                    continue;
+                }
+                if ("all".equals(syncTo)
+                        || (syncTo instanceof ArrayList
+                        && (((ArrayList) syncTo).contains(reqd.getName())
+                        || ((ArrayList) syncTo).contains(reqd.getTag())))) {
+                    if (!syncTags.contains(reqd.getTag())) {
+                        syncTags.add(reqd.getTag());
+                    }
+                }
+            }
+            this.setSynchronizeToTags(syncTags);
+            LOG.debug("Station " + name + " synchronizes to " + syncTags);
+        }
         this.currentEvent = new EventRecord(this.name, channelList);
         this.currentEvent.setWorkflowChannels(workflow.getChannels());
+        this.currentEvent.setHistory(history, historyColumns);
+    }
+
+    /**
+     * Work out the order in which channel statuses are updated, so that a
+     * channel's status can be taken from its required channels' statuses
+     * for the same step rather than by asking each of them again.
+     *
+     * @throws InitializationException if channels require each other
+     */
+    private void initializeStatus() throws InitializationException {
+        int n = channelList.size();
+        statusLinks = new int[n][];
+        for (int i = 0; i < n; i++) {
+            ArrayList<String> reqs = channelList.get(i).getRequires();
+            statusLinks[i] = new int[reqs.size()];
+            for (int j = 0; j < reqs.size(); j++) {
+                statusLinks[i][j] = channelList.indexOf(channels.get(reqs.get(j)));
+            }
+        }
+        statusOrder = new int[n];
+        byte[] visited = new byte[n];
+        int next = 0;
+        for (int i = 0; i < n; i++) {
+            next = this.orderChannelStatus(i, visited, next);
+        }
+        channelStatus = new DataStatus[n];
+        Arrays.fill(channelStatus, DataStatus.MISSING);
+        screen = new QualityScreen(n);
+        scadaChannels = new SCADAChannel[n];
+        latestValues = new double[n];
+        for (int i = 0; i < n; i++) {
+            if (channelList.get(i) instanceof SCADAChannel) {
+                scadaChannels[i] = (SCADAChannel) channelList.get(i);
+                scadaChannels[i].copyLimitsTo(screen, i);
+            }
+        }
+        ArrayList<DataChannel> wfChannels = workflow.getChannels();
+        int[] positions = new int[wfChannels.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = channelList.indexOf(wfChannels.get(i));
+        }
+        workflow.setChannelStatuses(channelStatus, positions);
+    }
+
+    /**
+     * Place a channel in statusOrder after the channels it requires.
+     *
+     * @param pos the channel's position in channelList
+     * @param visited 0 for channels not yet seen, 1 for channels being
+     * placed, 2 for channels already placed
+     * @param next the next free position in statusOrder
+     * @return the next free position in statusOrder
+     * @throws InitializationException if channels require each other
+     */
+    private int orderChannelStatus(int pos, byte[] visited, int next)
+            throws InitializationException {
+        if (visited[pos] == 2) {
+            return next;
+        } else if (visited[pos] == 1) {
+            throw new InitializationException(
+                    "Data channels require each other in a loop, at channel "
+                    + channelList.get(pos).getName());
+        }
+        visited[pos] = 1;
+        for (int link : statusLinks[pos]) {
+            next = this.orderChannelStatus(link, visited, next);
+        }
+        visited[pos] = 2;
+        statusOrder[next] = pos;
+        return next + 1;
+    }
+
+    /**
+     * Update channelStatus from the channels' latest values, screened as one
+     * row. A channel whose required channels are not all NORMAL is then
+     * FLAGGED_BAD_QUALITY, as in SCADAChannel#getStatus.
+     */
+    private void updateChannelStatus() {
+        int n = scadaChannels.length;
+        for (int i = 0; i < n; i++) {
+            latestValues[i] = scadaChannels[i] == null ? Double.NaN
+                    : scadaChannels[i].getCurrentValue();
+        }
+        screen.screen(latestValues, channelStatus);
+        for (int pos : statusOrder) {
+            if (scadaChannels[pos] == null) {
+                channelStatus[pos] = channelList.get(pos).getStatus();
+                continue;
+            }
+            for (int link : statusLinks[pos]) {
+                if (channelStatus[link] != DataStatus.NORMAL) {
+                    channelStatus[pos] = DataStatus.FLAGGED_BAD_QUALITY;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a single history for all channels, so the workflow and event
+     * records can read a step's values in one pass. Only used if every
+     * channel is a SCADAChannel; otherwise each channel keeps its own. Sparse
+     * channels also keep their own and are read through the channel. The
+     * component factory decides where the history is stored.
+     *
+     * @param frameSize number of steps to keep
+     * @throws InitializationException if the history cannot be allocated
+     */
+    private void initializeHistory(int frameSize) throws InitializationException {
+        this.history = null;
+        this.historyColumns = null;
+        if (channelList.isEmpty()) {
+            return;
+        }
+        for (DataChannel chan : channelList) {
+            if (!(chan instanceof SCADAChannel)) {
+                LOG.debug("Station " + name + " has channels without a shared history");
+                return;
+            }
+        }
+        int[] stationColumns = new int[channelList.size()];
+        int dense = 0;
+        for (int i = 0; i < stationColumns.length; i++) {
+            if (((SCADAChannel) channelList.get(i)).isSparse()) {
+                stationColumns[i] = -1;
+            } else {
+                stationColumns[i] = dense++;
+            }
+        }
+        if (dense == 0) {
+            return;
+        }
+        LazyModulusMatrix matrix = this.getComponentFactory().newHistory(
+                dense, frameSize);
+        for (int i = 0; i < stationColumns.length; i++) {
+            if (stationColumns[i] >= 0) {
+                ((SCADAChannel) channelList.get(i)).setHistory(matrix,
+                        stationColumns[i]);
+            }
+        }
+        ArrayList<DataChannel> wfChannels = workflow.getChannels();
+        int[] columns = new int[wfChannels.size()];
+        for (int i = 0; i < columns.length; i++) {
+            int pos = channelList.indexOf(wfChannels.get(i));
+            columns[i] = pos < 0 ? -1 : stationColumns[pos];
+        }
+        workflow.setHistory(matrix, columns);
+        this.history = matrix;
+        this.historyColumns = stationColumns;
     }
 
     /**
@@ -470,13 +722,7 @@ public final class Station extends MessagableImpl implements ModelConnection {
          % end
          */
         executing = true;
-        Step step;
-        try {
-            step = this.getCurrentStep().getClass().getConstructor(this.getCurrentStep().getClass()).newInstance(this.getCurrentStep());
-        } catch (NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-            LOG.error("Problem creating new step!", ex);
-            throw new RuntimeException("Error creating a new step of type: "+Step.class.toString());
-        }
+        Step step = this.getStepFactory().copyOf(this.getCurrentStep());
         Message retMessage;
         HashMap<String, Object> statusData = new HashMap();
         statusData.put("code", 0);
@@ -489,21 +735,41 @@ public final class Station extends MessagableImpl implements ModelConnection {
         try {
 
             // read in new data from router
+            ArrayList<Message> received = new ArrayList();
+            this.drainMessagesFromInbox(step, received);
             int count = 0;
-            newData = this.pollMessageFromInbox(step);
             //while (!all(this.recvdStatusForCurrentStep) || newData != null) {
             Double value;
-            String chTag;
-            while (newData != null) {
+            for (int i = 0; i < received.size(); i++) {
                 //process data
-                chTag = newData.getTag();
-                value = (Double) newData.getData().get("value");
-                DataChannel channel = this.channels.get(chTag);
+                newData = received.get(i);
+                // Values are stored at their own step; anything drained
+                //  late (from an earlier step) is not credited to this one
+                Step at = newData.getStep() == null ? step : newData.getStep();
+                if (newData instanceof RowMessage) {
+                    RowMessage row = (RowMessage) newData;
+                    DataChannel[] byColumn = this.channelsForRow(row);
+                    for (int k = 0; k < row.size(); k++) {
+                        DataChannel channel = byColumn[row.getColumn(k)];
+                        if (channel != null) {
+                            channel.addNewValue(row.getValue(k), at);
+                        }
+                    }
+                    count += row.size();
+                    continue;
+                }
+                DataChannel channel = this.channelFor(newData);
                 count++;
-                if (channel != null) {
-                    channel.addNewValue(value, step);
+                if (channel == null) {
+                    continue;
+                }
+                if (newData instanceof ValueMessage) {
+                    channel.addNewValue(((ValueMessage) newData).getValue(),
+                            at);
+                } else {
+                    value = (Double) newData.getData().get("value");
+                    channel.addNewValue(value, at);
                 }
-                newData = this.pollMessageFromInbox(step);
             }
             statusData.put("msgsConsumed", count);
             resultData.put("message", "" + count + " messages read in");
@@ -511,7 +777,8 @@ public final class Station extends MessagableImpl implements ModelConnection {
              * evaluateModel event detection algorithms
              */
             int idx = step.getIndex();
-            HashMap workflowRes = workflow.evaluateWorkflow(idx);
+            this.updateChannelStatus();
+            workflow.evaluateWorkflow(idx);
             EventStatus curStatus = workflow.getStatus();
             if (this.lastStatus != EventStatus.POSSIBLE_EVENT
                     && curStatus == EventStatus.POSSIBLE_EVENT) {
@@ -523,6 +790,7 @@ public final class Station extends MessagableImpl implements ModelConnection {
                 LOG.debug(this.currentEvent);
                 this.currentEvent = new EventRecord(this.name, channelList);
                 this.currentEvent.setWorkflowChannels(workflow.getChannels());
+                this.currentEvent.setHistory(history, historyColumns);
             }
             lastStatus = curStatus;
             if (curStatus != EventStatus.UNINITIALIZED) {
@@ -531,13 +799,11 @@ public final class Station extends MessagableImpl implements ModelConnection {
                 currentEvent.addStep(step);
                 currentEvent.addProbabilityAndStatus(workflow.getProbability(),
                         workflow.getStatus());
-                currentEvent.setChannelLimitViolations(
-                        workflow.getChannelViolations());
-                currentEvent.setChannelContributed(
-                        workflow.getChannelContributed());
-                currentEvent.setChannelRawData(workflow.getChannelRawData());
-                currentEvent.setChannelResiduals(workflow.getChannelResiduals());
-                currentEvent.setChannelStatuses();
+                currentEvent.setChannelLimitViolations(workflow.violations());
+                currentEvent.setChannelContributed(workflow.contributed());
+                currentEvent.setChannelRawData(workflow.rawData());
+                currentEvent.setChannelResiduals(workflow.residuals());
+                currentEvent.setChannelStatuses(channelStatus);
             }
             if (curStatus != EventStatus.NORMAL
                     && curStatus != EventStatus.OUTLIER_DETECTED
@@ -550,7 +816,7 @@ public final class Station extends MessagableImpl implements ModelConnection {
                         "Station " + this.name + " " + curStatus.toString() + " at " + step.toString());
             }
             String[] parameters = workflow.getChannelParameters();
-            Short[] contrib = workflow.getChannelContributed();
+            byte[] contrib = workflow.contributed();
             String contribString = "";
             for (int i = 0; i < contrib.length; i++) {
                 if (contrib[i] > 0) {
@@ -630,6 +896,216 @@ public final class Station extends MessagableImpl implements ModelConnection {
      */
     public void setSynchronizeToTags(ArrayList<String> synchronizeToTags) {
         this.synchronizeToTags = synchronizeToTags;
+        HashMap<String, Integer> index = new HashMap();
+        AtomicIntegerArray arrived = new AtomicIntegerArray(synchronizeToTags.size());
+        for (int i = 0; i < synchronizeToTags.size(); i++) {
+            index.put(synchronizeToTags.get(i), i);
+            arrived.set(i, Integer.MIN_VALUE);
+        }
+        this.syncArrived = arrived;
+        this.syncTagIndex = index;
+        this.syncIndexById = new int[0];
+        this.rowSyncIndex.clear();
+        this.recvdStatusForCurrentStep = new boolean[synchronizeToTags.size()];
+    }
+
+    /**
+     * Check whether a value for every synchronize-to tag has been delivered
+     * for the step. A station without synchronize-to tags never reports
+     * ready, and waits for the Engine's input phase barrier.
+     *
+     * Only the synchronize-to tags are waited for. A value of any other tag
+     * which is delivered after the station has started a step is not seen by
+     * that step's evaluation; it is drained with the next step and stored in
+     * its channel's history at its own step.
+     *
+     * @param step the step to be evaluated
+     * @return true if the step's synchronizing data has all arrived
+     */
+    @Override
+    public boolean isReadyForStep(Step step) {
+        AtomicIntegerArray arrived = this.syncArrived;
+        if (step == null || arrived.length() == 0) {
+            return false;
+        }
+        int idx = step.getIndex();
+        for (int i = 0; i < arrived.length(); i++) {
+            if (arrived.get(i) < idx) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void notifyWhenReady(Step step, DataflowListener listener) {
+        if (step == null || listener == null) {
+            this.readyWatch.set(null);
+            return;
+        }
+        ReadyWatch watch = new ReadyWatch(step, listener);
+        this.readyWatch.set(watch);
+        this.fireIfReady(watch);
+    }
+
+    /**
+     * Call a ready listener if the station is ready for its step and no other
+     * thread has called it already.
+     *
+     * @param watch the registered step and listener
+     */
+    private void fireIfReady(ReadyWatch watch) {
+        if (this.isReadyForStep(watch.step)
+                && this.readyWatch.compareAndSet(watch, null)) {
+            watch.listener.readyForStep(this, watch.step);
+        }
+    }
+
+    /**
+     * Adds a message to the inbox and records the arrival of synchronize-to
+     * tags for #isReadyForStep, calling the ready listener (see
+     * #notifyWhenReady) when the last one for its step arrives.
+     *
+     * @param msg the message being delivered
+     */
+    @Override
+    public void addMessageToInbox(Message msg) {
+        super.addMessageToInbox(msg);
+        if (msg.getStep() == null || this.syncArrived.length() == 0) {
+            return;
+        }
+        int idx = msg.getStep().getIndex();
+        if (msg instanceof RowMessage) {
+            RowMessage row = (RowMessage) msg;
+            int[] byColumn = this.syncIndexForRow(row);
+            for (int k = 0; k < row.size(); k++) {
+                markArrived(byColumn[row.getColumn(k)], idx);
+            }
+        } else {
+            markArrived(this.syncIndexFor(msg), idx);
+        }
+    }
+
+    /**
+     * Get the synchronize-to index of a message's tag, cached by tag ID once
+     * the router has assigned one.
+     *
+     * @param msg the message
+     * @return the index in synchronizeToTags, or -1 if the tag is not one
+     */
+    private int syncIndexFor(Message msg) {
+        int id = msg.getTagId();
+        if (id < 0) {
+            Integer i = this.syncTagIndex.get(msg.getTag());
+            return i == null ? -1 : i;
+        }
+        int[] byId = this.syncIndexById;
+        if (id >= byId.length) {
+            int old = byId.length;
+            byId = Arrays.copyOf(byId, Math.max(id + 1, old * 2));
+            Arrays.fill(byId, old, byId.length, -2);
+            this.syncIndexById = byId;
+        }
+        if (byId[id] == -2) {
+            Integer i = this.syncTagIndex.get(msg.getTag());
+            byId[id] = i == null ? -1 : i;
+        }
+        return byId[id];
+    }
+
+    /**
+     * Get the synchronize-to index of each column of a row producer, caching
+     * the lookup against the producer's shared column tag array.
+     *
+     * @param row a row from the producer
+     * @return the index in synchronizeToTags for each column, -1 for columns
+     * which are not synchronize-to tags
+     */
+    private int[] syncIndexForRow(RowMessage row) {
+        String[] tags = row.getColumnTags();
+        int[] byColumn = this.rowSyncIndex.get(tags);
+        if (byColumn == null) {
+            byColumn = new int[tags.length];
+            for (int c = 0; c < tags.length; c++) {
+                Integer i = this.syncTagIndex.get(tags[c]);
+                byColumn[c] = i == null ? -1 : i;
+            }
+            this.rowSyncIndex.put(tags, byColumn);
+        }
+        return byColumn;
+    }
+
+    /**
+     * Get this station's channel for each column of a row producer, caching
+     * the lookup against the producer's shared column tag array.
+     *
+     * @param row a row from the producer
+     * @return the channel for each column, null where the station has none
+     */
+    private DataChannel[] channelsForRow(RowMessage row) {
+        String[] tags = row.getColumnTags();
+        DataChannel[] byColumn = this.rowChannels.get(tags);
+        if (byColumn == null) {
+            byColumn = new DataChannel[tags.length];
+            for (int c = 0; c < tags.length; c++) {
+                byColumn[c] = this.channels.get(tags[c]);
+            }
+            this.rowChannels.put(tags, byColumn);
+        }
+        return byColumn;
+    }
+
+    /**
+     * Get this station's channel for a message's tag. Once the router has
+     * assigned the message a tag ID, the lookup is cached in an array indexed
+     * by tag ID.
+     *
+     * @param msg the message
+     * @return the channel, or null if the station has none for the tag
+     */
+    private DataChannel channelFor(Message msg) {
+        int id = msg.getTagId();
+        if (id < 0) {
+            return this.channels.get(msg.getTag());
+        }
+        DataChannel[] byId = this.channelsById;
+        if (id >= byId.length) {
+            byId = Arrays.copyOf(byId, Math.max(id + 1, byId.length * 2));
+            this.channelsById = byId;
+        }
+        DataChannel channel = byId[id];
+        if (channel == null) {
+            channel = this.channels.get(msg.getTag());
+            byId[id] = channel;
+        }
+        return channel;
+    }
+
+    private void markArrived(int i, int idx) {
+        AtomicIntegerArray arrived = this.syncArrived;
+        if (i >= 0 && i < arrived.length() && arrived.get(i) < idx) {
+            arrived.set(i, idx);
+            ReadyWatch watch = this.readyWatch.get();
+            if (watch != null && idx >= watch.index) {
+                this.fireIfReady(watch);
+            }
+        }
+    }
+
+    /**
+     * A step and the listener waiting for the station to be ready for it.
+     */
+    private static final class ReadyWatch {
+
+        final Step step;
+        final int index;
+        final DataflowListener listener;
+
+        ReadyWatch(Step step, DataflowListener listener) {
+            this.step = step;
+            this.index = step.getIndex();
+            this.listener = listener;
+        }
     }
 
     /**
@@ -670,14 +1146,8 @@ public final class Station extends MessagableImpl implements ModelConnection {
         JSONParser parser = new JSONParser();
         try {
             HashMap config = (HashMap) parser.parse(json);
-            Step newStep = this.baseStep.getClass().newInstance();
-            newStep.setOrigin(this.baseStep.getOrigin());
-            newStep.setStepSize(this.baseStep.getStepSize());
-            newStep.setFormat(this.baseStep.getFormat());
-            newStep.setValue(this.baseStep.getValue());
             if (config.containsKey("step")) {
-                newStep.setValue((String)config.get("step"));
-                msg.setStep(newStep);
+                msg.setStep(this.getStepFactory().getStep(config.get("step")));
             }
             if (config.containsKey("tag")) {
                 msg.setTag((String) config.get("tag"));
@@ -688,13 +1158,11 @@ public final class Station extends MessagableImpl implements ModelConnection {
             if (config.containsKey("data")) {
                 msg.setData((HashMap) config.get("data"));
             }
-            this.inbox.offer(msg, timeoutValue, timeoutUnits);
+            this.inbox.offer(msg);
         } catch (ParseException ex) {
             LOG.fatal("syntax error in message , bad data was: "+json, ex);
-        } catch (InstantiationException ex) {
-            LOG.fatal("syntax error in message, bad step type?, bad data was: "+json, ex);
-        } catch (IllegalAccessException ex) {
-            LOG.fatal("syntax error in message, bad data was: "+json, ex);
+        } catch (IllegalArgumentException ex) {
+            LOG.fatal("syntax error in message, bad step value?, bad data was: "+json, ex);
         } catch (ClassCastException ex) {
             LOG.fatal("syntax error in message or missing key , bad data was: "+json, ex);
         }
@@ -718,18 +1186,16 @@ public final class Station extends MessagableImpl implements ModelConnection {
         if (this.outbox.isEmpty()) {
             return null;
         }
-        try {
-            Message msg = this.outbox.poll(timeoutValue, timeoutUnits);
-            HashMap msgMap = new HashMap();
-            msgMap.put("tag", msg.getTag());
-            msgMap.put("type", msg.getType());
-            msgMap.put("step", msg.getStep().toString());
-            msgMap.put("data", msg.getData());
-            return JSONValue.toJSONString(msgMap);
-        } catch (InterruptedException ex) {
-            java.util.logging.Logger.getLogger(Station.class.getName()).log(Level.SEVERE, null, ex);
+        Message msg = this.outbox.poll();
+        if (msg == null) {
+            return JSONValue.toJSONString(null);
         }
-        return JSONValue.toJSONString(null);
+        HashMap msgMap = new HashMap();
+        msgMap.put("tag", msg.getTag());
+        msgMap.put("type", msg.getType());
+        msgMap.put("step", msg.getStep().toString());
+        msgMap.put("data", msg.getData());
+        return JSONValue.toJSONString(msgMap);
     }
     
     /**
@@ -748,22 +1214,56 @@ public final class Station extends MessagableImpl implements ModelConnection {
             // without a step to process -- return null in that case
             return null;
         }
-        Message temp = this.inbox.peek();
-        if (temp == null) {
-            return null;
+        Message temp = this.inbox.pollUpTo(step);
+        if (temp != null) {
+            markSynchronized(temp, step);
+        }
+        return temp;
+    }
+
+    /**
+     * Drain all messages of equal or earlier step value from the inbox at
+     * once, marking status for synchronized tags exactly as
+     * #pollMessageFromInbox(Step) does.
+     *
+     * @param step the data step up to which to look for messages
+     * @param sink the collection to receive the messages
+     * @return the number of messages drained
+     */
+    @Override
+    public int drainMessagesFromInbox(Step step, Collection<? super Message> sink) {
+        if (step == null) {
+            return 0;
+        }
+        ArrayList<Message> drained = new ArrayList();
+        int count = this.inbox.drainUpTo(step, drained);
+        for (Message m : drained) {
+            markSynchronized(m, step);
         }
-        if (temp.getStep().compareTo(step) < 1) {
-            this.inbox.remove(temp);
-            if (this.synchronizeToTags.contains(temp.getTag())) {
-                if (temp.getStep().compareTo(step) == 0) {
-                    // LOG.debug("sync tag ''" + temp.name + "'' for step ''" + step + "'' found");
-                    int idx = this.synchronizeToTags.indexOf(temp.getTag());
-                    this.recvdStatusForCurrentStep[idx] = true;
+        sink.addAll(drained);
+        return count;
+    }
+
+    private void markSynchronized(Message temp, Step step) {
+        if (temp instanceof RowMessage) {
+            RowMessage row = (RowMessage) temp;
+            if (temp.getStep().compareTo(step) == 0) {
+                for (int i = 0; i < row.size(); i++) {
+                    Integer idx = this.syncTagIndex.get(row.getTag(i));
+                    if (idx != null && idx < this.recvdStatusForCurrentStep.length) {
+                        this.recvdStatusForCurrentStep[idx] = true;
+                    }
                 }
             }
-            return temp;
+            return;
+        }
+        if (this.synchronizeToTags.contains(temp.getTag())) {
+            if (temp.getStep().compareTo(step) == 0) {
+                // LOG.debug("sync tag ''" + temp.name + "'' for step ''" + step + "'' found");
+                int idx = this.synchronizeToTags.indexOf(temp.getTag());
+                this.recvdStatusForCurrentStep[idx] = true;
+            }
         }
-        return null;
     }
 
     /**
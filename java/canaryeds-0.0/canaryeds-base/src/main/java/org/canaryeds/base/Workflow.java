@@ -21,10 +21,12 @@
 package org.canaryeds.base;
 
 import gov.sandia.seme.framework.DataChannel;
+import gov.sandia.seme.framework.DataStatus;
 import gov.sandia.seme.framework.Describable;
 import gov.sandia.seme.framework.Descriptor;
 import gov.sandia.seme.framework.ConfigurationException;
 import gov.sandia.seme.framework.InitializationException;
+import gov.sandia.seme.util.LazyModulusMatrix;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -69,7 +71,30 @@ public interface Workflow extends Describable {
     public ArrayList<DataChannel> getChannels();
 
     /**
-     * Run the workflow and generate results
+     * Provide the station's shared channel history, so that the workflow can
+     * read its channels' values directly rather than through each channel.
+     *
+     * @param history the station's history matrix
+     * @param columns the matrix column of each channel, in the order of
+     * #getChannels, or -1 for a channel that keeps its own history
+     */
+    public void setHistory(LazyModulusMatrix history, int[] columns);
+
+    /**
+     * Provide the station's per-step channel statuses, so that the workflow
+     * can look up a channel's status rather than asking the channel, which
+     * checks every linked channel each time. The station updates the array in
+     * place before each call to #evaluateWorkflow.
+     *
+     * @param statuses the station's channel statuses
+     * @param positions the position of each channel in statuses, in the order
+     * of #getChannels, or -1 for a channel the station does not hold
+     */
+    public void setChannelStatuses(DataStatus[] statuses, int[] positions);
+
+    /**
+     * Run the workflow and generate results. The map returned may be reused
+     * by the next call.
      *
      * @param index step to evaluate
      * @return HashMap of results values
@@ -154,6 +179,42 @@ public interface Workflow extends Describable {
      */
     public Short[] getChannelContributed();
 
+    /**
+     * Get the raw data on a channel-by-channel basis, without boxing. The
+     * array is reused, and is overwritten by the next call to
+     * #evaluateWorkflow.
+     *
+     * @return the workflow's raw data buffer
+     */
+    public double[] rawData();
+
+    /**
+     * Get the residuals on a channel-by-channel basis, without boxing. The
+     * array is reused, and is overwritten by the next call to
+     * #evaluateWorkflow.
+     *
+     * @return the workflow's residuals buffer
+     */
+    public double[] residuals();
+
+    /**
+     * Get the control-limit violations on a channel-by-channel basis, without
+     * boxing. The array is reused, and is overwritten by the next call to
+     * #evaluateWorkflow.
+     *
+     * @return the workflow's violations buffer
+     */
+    public int[] violations();
+
+    /**
+     * Get the contributing factor settings on a channel-by-channel basis,
+     * without boxing. The array is reused, and is overwritten by the next call
+     * to #evaluateWorkflow.
+     *
+     * @return the workflow's contributing factor buffer
+     */
+    public byte[] contributed();
+
     /**
      * Get the parameters.
      *
@@ -27,6 +27,7 @@ import gov.sandia.seme.framework.ModelConnection;
 import gov.sandia.seme.framework.Step;
 import gov.sandia.seme.framework.ConfigurationException;
 import gov.sandia.seme.util.ControllerImpl;
+import java.util.Iterator;
 import java.util.concurrent.CopyOnWriteArrayList;
 import org.apache.log4j.Logger;
 
@@ -40,6 +41,16 @@ import org.apache.log4j.Logger;
  * Provides a controller for a run in a batch mode. This increments the
  * steps from a start step to a stop step with no delay.
  * 
+ * The optional stepsInFlight setting allows the Engine to pipeline the run:
+ * with a value greater than one, inputs are read for later steps while the
+ * stations and outputs are still working on earlier ones (see
+ * Engine#callPipelined). Each station still evaluates its steps in order. The
+ * default of 1 runs one step at a time. A pipelined run does not support the
+ * dataflow execution mode: stations always start once all of a step's inputs
+ * have been read, and a warning is logged if both are configured. Under the
+ * work stealing scheduler, stations are started most expensive first but are
+ * not grouped into batches.
+ * 
  * @internal
  * @author dbhart
  * @author $LastChangedBy: nprackl $
@@ -51,6 +62,11 @@ public final class Batch extends ControllerImpl {
 
     static final long serialVersionUID = 4082333680955970892L;
 
+    /**
+     * Maximum number of steps being processed by the engine at once.
+     */
+    private int stepsInFlight = 1;
+
     /**
      * Default constructor.
      */
@@ -78,6 +94,33 @@ public final class Batch extends ControllerImpl {
             throw new ConfigurationException(
                     "Batch mode runs must have a final step (stopping point) specified.");
         }
+        Object temp = desc.getOptions().get("stepsInFlight");
+        if (temp != null) {
+            if (!(temp instanceof Integer) || (Integer) temp < 1) {
+                throw new ConfigurationException(
+                        "Batch mode stepsInFlight must be a positive integer: " + temp);
+            }
+            this.stepsInFlight = (Integer) temp;
+        }
+    }
+
+    /**
+     * Get the maximum number of steps being processed at once.
+     *
+     * @return the number of steps in flight
+     */
+    public int getStepsInFlight() {
+        return stepsInFlight;
+    }
+
+    /**
+     * Set the maximum number of steps being processed at once.
+     *
+     * @param stepsInFlight the number of steps in flight (1 disables
+     * pipelining)
+     */
+    public void setStepsInFlight(int stepsInFlight) {
+        this.stepsInFlight = Math.max(1, stepsInFlight);
     }
 
     /**
@@ -126,33 +169,44 @@ public final class Batch extends ControllerImpl {
         // for thisStep between startStep and stopStep
         LOG.info("Beginning Batch run from Step(" + stepStart.toString()
                 + ") to Step(" + stepStop.toString() + ")");
-        for (int i = stepStart.getIndex(); i <= stepStop.getIndex(); i += 1) {
-            if (!running) {
-                break;
-            }
-            while (this.paused) {
-                try {
-                    Thread.currentThread().wait(pauseDelay);
-                } catch (InterruptedException ex) {
-                    LOG.error("Interrupted thread exception", ex);
+        if (stepsInFlight > 1) {
+            LOG.info("Pipelining up to " + stepsInFlight + " steps at once");
+            engine.callPipelined(new Iterator<Step>() {
+                private int i = stepStart.getIndex();
+
+                @Override
+                public boolean hasNext() {
+                    waitWhilePaused();
+                    return running && i <= stepStop.getIndex();
+                }
+
+                @Override
+                public Step next() {
+                    Step batchStep = newBatchStep(i);
+                    if (i % 1000 == 0) {
+                        LOG.info("Processing " + batchStep.toString());
+                    }
+                    i += 1;
+                    return batchStep;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("Not supported.");
+                }
+            }, stepsInFlight);
+        } else {
+            for (int i = stepStart.getIndex(); i <= stepStop.getIndex(); i += 1) {
+                if (!running) {
+                    break;
+                }
+                waitWhilePaused();
+                Step batchStep = newBatchStep(i);
+                engine.setCurrentStep(batchStep);
+                engine.call();
+                if (i % 1000 == 0) {
+                    LOG.info("Processed through " + batchStep.toString());
                 }
-            }
-            Class c = stepBase.getClass();
-            Step batchStep = null;
-            try {
-                batchStep = (Step) c.newInstance();
-            } catch (InstantiationException | IllegalAccessException ex) {
-                LOG.fatal("Failed to create new Step of type "+c.getName());
-            }
-            batchStep.setOrigin(stepBase.getOrigin());
-            batchStep.setStepSize(stepBase.getStepSize());
-            batchStep.setValue(stepBase.getOrigin());
-            batchStep.setFormat(stepBase.getFormat());
-            batchStep.setIndex(i);
-            engine.setCurrentStep(batchStep);
-            engine.call();
-            if (i % 1000 == 0) {
-                LOG.info("Processed through " + batchStep.toString());
             }
         }
         running = false;
@@ -162,6 +216,29 @@ public final class Batch extends ControllerImpl {
         CANARY.outputEventSummaries(stations);
     }
 
+    /**
+     * Block while the controller is paused.
+     */
+    private void waitWhilePaused() {
+        while (this.paused) {
+            try {
+                Thread.currentThread().wait(pauseDelay);
+            } catch (InterruptedException ex) {
+                LOG.error("Interrupted thread exception", ex);
+            }
+        }
+    }
+
+    /**
+     * Create the batch Step with a given index.
+     *
+     * @param i the step index
+     * @return new Step from the base step's StepFactory
+     */
+    private Step newBatchStep(int i) {
+        return this.getStepFactory().getStep(i);
+    }
+
     /**
      * Set the current save state. Currently unsupported.
      */
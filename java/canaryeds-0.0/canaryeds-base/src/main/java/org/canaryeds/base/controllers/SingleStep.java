@@ -25,7 +25,6 @@ import gov.sandia.seme.framework.Descriptor;
 import gov.sandia.seme.framework.Step;
 import gov.sandia.seme.framework.ConfigurationException;
 import gov.sandia.seme.util.ControllerImpl;
-import gov.sandia.seme.util.DateTimeStep;
 import org.apache.log4j.Logger;
 
 /**
@@ -108,19 +107,7 @@ public class SingleStep extends ControllerImpl {
             }
         }
         curIndex += 1;
-        Class c = stepBase.getClass();
-        Step batchStep;
-        try {
-            batchStep = (Step) c.newInstance();
-        } catch (InstantiationException | IllegalAccessException ex) {
-            LOG.fatal("Failed to create new Step of type " + c.getName());
-            batchStep = new DateTimeStep();
-        }
-        batchStep.setOrigin(stepBase.getOrigin());
-        batchStep.setStepSize(stepBase.getStepSize());
-        batchStep.setValue(stepBase.getOrigin());
-        batchStep.setFormat(stepBase.getFormat());
-        batchStep.setIndex(curIndex);
+        Step batchStep = this.getStepFactory().getStep(curIndex);
         LOG.debug("Running Step(" + batchStep.toString()
                 + ")");
         engine.setCurrentStep(batchStep);
@@ -24,9 +24,8 @@ import gov.sandia.seme.framework.ConfigurationException;
 import gov.sandia.seme.framework.Descriptor;
 import gov.sandia.seme.framework.InputConnection;
 import gov.sandia.seme.framework.Message;
-import gov.sandia.seme.framework.MessageType;
 import gov.sandia.seme.framework.Step;
-import gov.sandia.seme.util.DateTimeStep;
+import gov.sandia.seme.framework.ValueMessage;
 import gov.sandia.seme.util.MessagableImpl;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
@@ -39,6 +38,10 @@ import org.apache.log4j.Logger;
 
 /**
  * SeMe TableReader class.
+ * Each row is turned into a ValueMessage. When the quality column is enabled,
+ * the quality text is kept on the message and also reduced to a quality flag:
+ * text matching the "badQualityText" option in databaseOpts (ignoring case and
+ * surrounding whitespace, "BAD" by default) is flagged bad, anything else good.
  * @author nprackl
  */
 public class TableReader extends MessagableImpl implements InputConnection {
@@ -69,6 +72,7 @@ public class TableReader extends MessagableImpl implements InputConnection {
     private String parameterValue       = "VALUE";                              //Value column name.
     private String parameterQuality     = "QUALITY";                            //Quality column name.
     private boolean paramQualEnabled    = true;    
+    private String qualityTextBadData   = "BAD";                                //Quality column text marking bad data.
     
     private boolean limitEndStep        = false;                                //State of limiting end step.
     private Date    limitEndStepDate    = null;                                 //Date value for limiting end step.
@@ -97,6 +101,9 @@ public class TableReader extends MessagableImpl implements InputConnection {
         this.outputTable            = (String) this.databaseOpts.get("outputTable");
         this.className              = (String) this.databaseOpts.get("className");
         this.timeDrift              = (String) this.databaseOpts.get("timeDrift");
+        if(this.databaseOpts.get("badQualityText") != null){
+            this.qualityTextBadData = ((String) this.databaseOpts.get("badQualityText")).trim();
+        }
         this.promptForLogin         = (String) this.login.get("promptForLogin");
         this.username               = (String) this.login.get("username");
         this.password               = (String) this.login.get("password");
@@ -208,7 +215,6 @@ public class TableReader extends MessagableImpl implements InputConnection {
             String tag = tags.get(i);
             String whs = " WHERE " + this.parameterTag + " = `" + tag + "`";        //Query conditional statements.
             String query = this.db.selectQuery("", cols, whs );                     //Generate SQL query string.
-            String[] keys = this.getComponentFactory().getValueMessageDataKeys();   //Get the keys for generating new value message components.
             
             ///todo: Add additional support for other data values.
             ///todo: Time Shift?
@@ -224,18 +230,19 @@ public class TableReader extends MessagableImpl implements InputConnection {
                         //If the date is greater than current and less than limiting step or there is no limiting on end step.
                         if((timestep.compareTo((Date) this.getCurrentStep().getValue()) >= 0)&&((this.limitEndStep==false)||(timestep.compareTo(this.limitEndStepDate) <= 0))){   
                             //Here we generate and process our message.   
-                            HashMap<String, Object> data = new HashMap();                       //Create a HashMap to contain result data.
                             String tagname  = result.getString(parameterTag);                   //Get the tag name (should be the same, since querying by tag).
-                            Double value    = result.getDouble(parameterValue);                 //Get the parameter value.
-                            data.put(keys[2], value);                                           //Grab the value key.
+                            double value    = result.getDouble(parameterValue);                 //Get the parameter value.
+                            byte quality    = ValueMessage.QUALITY_UNKNOWN;
+                            String qual     = null;
                             if(this.paramQualEnabled){
-                                String qual = result.getString(parameterQuality);               //Get the quality row value if enabled.
-                                data.put(keys[3], qual);
+                                qual = result.getString(parameterQuality);                      //Get the quality row value if enabled.
+                                if(qual != null){
+                                    quality = qual.trim().equalsIgnoreCase(qualityTextBadData) ? ValueMessage.QUALITY_BAD : ValueMessage.QUALITY_GOOD;
+                                }
                             } 
                             //Generate messages and put in outbox.
-                            DateTimeStep ns = new DateTimeStep((DateTimeStep) this.baseStep);   //Generate the new DateTimeStep.
-                            ns.setValue(timestep);                                              //Set the new date.
-                            Message m = new Message(MessageType.VALUE, tagname, data, ns);      //Generate the actual message.                            
+                            Step ns = this.getStepFactory().getStep(timestep);                  //Generate the new Step.
+                            Message m = new ValueMessage(tagname, -1, ns, value, quality, qual);  //Generate the actual message.                            
                             this.pushMessageToOutbox(m);                                        //Push the message to the outbox.
                             messageCount++;                                                     //Increment the message counter.
                         }   
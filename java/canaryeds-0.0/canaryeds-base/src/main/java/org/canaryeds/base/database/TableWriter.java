@@ -26,8 +26,7 @@ import gov.sandia.seme.framework.Message;
 import gov.sandia.seme.framework.OutputConnection;
 import gov.sandia.seme.framework.Step;
 import gov.sandia.seme.util.MessagableImpl;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import gov.sandia.seme.util.StepFormat;
 import java.util.Date;
 import java.util.HashMap;
 import org.apache.log4j.Logger;
@@ -71,6 +70,7 @@ public class TableWriter extends MessagableImpl implements OutputConnection {
        
     private DatabaseConnectionHandler db = new DatabaseConnectionHandler();
     private static final Logger LOG = Logger.getLogger(TableReader.class);
+    private static final StepFormat DATETIME_FORMAT = StepFormat.forPattern("yyyy-MM-dd HH:mm:ss");  //Date format for DATETIME stamp.
     
     private boolean extendedFormat = false;
    
@@ -206,8 +206,7 @@ public class TableWriter extends MessagableImpl implements OutputConnection {
             
             //Query builder.            
             Date datestamp = (Date) m.getStep().getValue();
-            DateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");        //Simple date format for DATETIME stamp.
-            String ts = "'" + df.format(datestamp) + "'";                       //We need to generate the time step here.
+            String ts = "'" + DATETIME_FORMAT.format(datestamp) + "'";          //We need to generate the time step here.
             
             //Protect Data
             String tag   = m.getTag();
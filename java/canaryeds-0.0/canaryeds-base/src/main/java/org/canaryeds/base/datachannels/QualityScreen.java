@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package org.canaryeds.base.datachannels;
+
+import gov.sandia.seme.framework.DataStatus;
+import java.util.Arrays;
+
+/**
+ * Applies the data-quality checks of a SCADAChannel to a whole row of values,
+ * one value per channel, at once. The limits of every channel are held in
+ * primitive arrays, and the checks are made in a single pass over the row
+ * without calls to the channels, so that a station with many channels
+ * screens a step in one tight loop.
+ *
+ * The checks, in order of precedence, are: outside the valid range
+ * (OUT_OF_VALID_RANGE), outside the set points (OUT_OF_CTL_LIMIT), NaN
+ * (MISSING), infinite (INVALID), and for alarm channels, equal to the
+ * abnormal alarm value (FLAGGED_BAD_QUALITY). Any other value is NORMAL.
+ * The statuses of linked channels are not considered.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public final class QualityScreen {
+
+    private static final DataStatus[] STATUS = new DataStatus[]{
+        DataStatus.NORMAL, DataStatus.FLAGGED_BAD_QUALITY, DataStatus.INVALID,
+        DataStatus.MISSING, DataStatus.OUT_OF_CTL_LIMIT,
+        DataStatus.OUT_OF_VALID_RANGE};
+    private static final byte NORMAL = 0;
+    private static final byte FLAGGED = 1;
+    private static final byte INVALID = 2;
+    private static final byte MISSING = 3;
+    private static final byte OUT_OF_CTL_LIMIT = 4;
+    private static final byte OUT_OF_VALID_RANGE = 5;
+    private final double[] validLow;
+    private final double[] validHigh;
+    private final double[] setLow;
+    private final double[] setHigh;
+    private final double[] alarmValue;
+
+    /**
+     * Create a screen for a number of channels, with no limits and no alarm
+     * values.
+     *
+     * @param size the number of channels
+     */
+    public QualityScreen(int size) {
+        this.validLow = new double[size];
+        this.validHigh = new double[size];
+        this.setLow = new double[size];
+        this.setHigh = new double[size];
+        this.alarmValue = new double[size];
+        Arrays.fill(validLow, Double.NEGATIVE_INFINITY);
+        Arrays.fill(setLow, Double.NEGATIVE_INFINITY);
+        Arrays.fill(validHigh, Double.POSITIVE_INFINITY);
+        Arrays.fill(setHigh, Double.POSITIVE_INFINITY);
+        Arrays.fill(alarmValue, Double.NaN);
+    }
+
+    /**
+     * Get the number of channels screened.
+     *
+     * @return the row size
+     */
+    public int size() {
+        return alarmValue.length;
+    }
+
+    /**
+     * Set the limits of one channel.
+     *
+     * @param position the channel's position in the row
+     * @param validLow lowest valid value
+     * @param validHigh highest valid value
+     * @param setLow lowest value within the set points
+     * @param setHigh highest value within the set points
+     */
+    public void setLimits(int position, double validLow, double validHigh,
+            double setLow, double setHigh) {
+        this.validLow[position] = validLow;
+        this.validHigh[position] = validHigh;
+        this.setLow[position] = setLow;
+        this.setHigh[position] = setHigh;
+    }
+
+    /**
+     * Set the abnormal value of an alarm channel. Values are truncated to an
+     * integer before they are compared with it.
+     *
+     * @param position the channel's position in the row
+     * @param value the abnormal value, or NaN if the channel is not an alarm
+     */
+    public void setAlarmValue(int position, double value) {
+        this.alarmValue[position] = value;
+    }
+
+    /**
+     * Screen a row of values.
+     *
+     * @param values the latest value of each channel
+     * @param out the status of each channel
+     */
+    public void screen(double[] values, DataStatus[] out) {
+        int n = alarmValue.length;
+        for (int i = 0; i < n; i++) {
+            out[i] = STATUS[check(values[i], validLow[i], validHigh[i],
+                    setLow[i], setHigh[i], alarmValue[i])];
+        }
+    }
+
+    /**
+     * Screen a single value.
+     *
+     * @param value the value
+     * @param validLow lowest valid value
+     * @param validHigh highest valid value
+     * @param setLow lowest value within the set points
+     * @param setHigh highest value within the set points
+     * @param alarmValue the abnormal alarm value, or NaN
+     * @return the status of the value
+     */
+    public static DataStatus screen(double value, double validLow,
+            double validHigh, double setLow, double setHigh, double alarmValue) {
+        return STATUS[check(value, validLow, validHigh, setLow, setHigh,
+                alarmValue)];
+    }
+
+    /**
+     * Find the code of the first check a value fails.
+     */
+    private static byte check(double v, double validLow, double validHigh,
+            double setLow, double setHigh, double alarmValue) {
+        if (v > validHigh || v < validLow) {
+            return OUT_OF_VALID_RANGE;
+        } else if (v > setHigh || v < setLow) {
+            return OUT_OF_CTL_LIMIT;
+        } else if (v != v) {
+            return MISSING;
+        } else if (Double.isInfinite(v)) {
+            return INVALID;
+        } else if ((double) (int) v == alarmValue) {
+            return FLAGGED;
+        }
+        return NORMAL;
+    }
+
+}
@@ -24,13 +24,17 @@ import org.canaryeds.base.ChannelUsage;
 import gov.sandia.seme.framework.ChannelType;
 import gov.sandia.seme.framework.DataChannel;
 import gov.sandia.seme.framework.DataStatus;
+import gov.sandia.seme.framework.DataWindow;
 import gov.sandia.seme.framework.Descriptor;
 import gov.sandia.seme.framework.MissingDataPolicy;
 import gov.sandia.seme.framework.Step;
-import gov.sandia.seme.framework.DataOutOfFrameException;
 import gov.sandia.seme.util.LazyModulusArray;
+import gov.sandia.seme.util.LazyModulusMatrix;
+import gov.sandia.seme.util.SparseModulusArray;
+import gov.sandia.seme.util.ValueHistory;
 import static java.lang.Math.max;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -65,6 +69,11 @@ import org.apache.log4j.Logger;
  * <b>Units:</b> is for information purposes only; CANARY-EDS does <i>not</i>
  * do units conversion. Ever.
  *
+ * <b>Storage:</b> "dense" (the default) keeps a value for every step, in the
+ * station's shared history. "sparse" keeps only the values actually received,
+ * which suits tags that report by exception: long gaps cost nothing, and with
+ * the CHANGES new data style the last value is carried forward.
+ *
  * @internal
  * @author dbhart
  * @author $LastChangedBy: dbhart $
@@ -74,11 +83,16 @@ public class SCADAChannel implements DataChannel {
 
     private static final Logger LOG = Logger.getLogger(SCADAChannel.class);
     ArrayList<DataChannel> linkedChannels;
-    final boolean copyMissing;
+    boolean copyMissing;
     int dataFrameSize;
     int almAbnormal;
     DataStatus currentStatus;
-    LazyModulusArray dataValues;
+    double currentValue;
+    boolean statusStale;
+    ValueHistory history;
+    boolean sparse;
+    long droppedReads;
+    long droppedWrites;
     String name;
     HashMap options;
     ArrayList<String> requires;
@@ -99,8 +113,11 @@ public class SCADAChannel implements DataChannel {
         this.validRangeLow = Double.NEGATIVE_INFINITY;
         this.warnedNoStatus = false;
         this.currentStatus = DataStatus.MISSING;
+        this.currentValue = Double.NaN;
+        this.statusStale = false;
         this.almAbnormal = Integer.MAX_VALUE;
         this.copyMissing = false;
+        this.currentIndex = Integer.MIN_VALUE;
         this.metaData = new HashMap();
         this.requires = new ArrayList();
         this.linkedChannels = new ArrayList();
@@ -110,41 +127,52 @@ public class SCADAChannel implements DataChannel {
 
     @Override
     public void addNewValue(Object value, Step step) {
-        double val = ((Number) value).doubleValue();
+        this.addNewValue(((Number) value).doubleValue(), step);
+    }
+
+    @Override
+    public void addNewValue(double val, Step step) {
         int idx = step.getIndex();
-        try {
-            this.dataValues.set(idx, val);
-        } catch (DataOutOfFrameException ex) {
-            LOG.error(this.name + ": out of frame exception, "
-                    + "please set or increase the frameSize option.", ex);
+        if (!this.history.trySet(idx, val)) {
+            this.droppedWrites++;
+            this.warnOutOfFrame("load", idx, this.droppedWrites);
         }
-        this.currentIndex = max(this.dataValues.getFrameEnd(), idx);
-        double currentValue = Double.NaN;
-        try {
-            currentValue = this.dataValues.get(currentIndex);
-        } catch (DataOutOfFrameException ex) {
-            currentStatus = DataStatus.INVALID;
-        }
-        if (currentValue > this.validRangeHigh
-                || currentValue < this.validRangeLow) {
-            currentStatus = DataStatus.OUT_OF_VALID_RANGE;
-        } else if (currentValue > this.setPointHigh
-                || currentValue < this.setPointLow) {
-            currentStatus = DataStatus.OUT_OF_CTL_LIMIT;
-        } else if (Double.isNaN(currentValue)) {
-            currentStatus = DataStatus.MISSING;
-        } else if (Double.isInfinite(currentValue)) {
-            currentStatus = DataStatus.INVALID;
-        } else if (this.usage == ChannelUsage.CHANNEL_ALARM) {
-            if (((Number) value).intValue() == this.almAbnormal) {
-                this.currentStatus = DataStatus.FLAGGED_BAD_QUALITY;
-            } else {
-                this.currentStatus = DataStatus.NORMAL;
-            }
+        this.currentIndex = max(this.currentIndex, idx);
+        this.currentValue = this.history.tryGet(currentIndex, Double.NaN);
+        this.statusStale = true;
+    }
 
-        } else {
-            currentStatus = DataStatus.NORMAL;
-        }
+    /**
+     * Get the value at the highest step index loaded so far, as it was when
+     * last loaded.
+     *
+     * @return the latest value, or NaN if none has been loaded
+     */
+    public double getCurrentValue() {
+        return this.currentValue;
+    }
+
+    /**
+     * Get the abnormal value of an alarm channel.
+     *
+     * @return the abnormal value, or NaN if this is not an alarm channel
+     */
+    double getAlarmValue() {
+        return this.usage == ChannelUsage.CHANNEL_ALARM ? this.almAbnormal
+                : Double.NaN;
+    }
+
+    /**
+     * Copy this channel's limits and alarm value into a QualityScreen, so that
+     * its latest value can be screened together with other channels'.
+     *
+     * @param screen the screen
+     * @param position this channel's position in the screen's rows
+     */
+    public void copyLimitsTo(QualityScreen screen, int position) {
+        screen.setLimits(position, this.validRangeLow, this.validRangeHigh,
+                this.setPointLow, this.setPointHigh);
+        screen.setAlarmValue(position, this.getAlarmValue());
     }
 
     @Override
@@ -223,6 +251,14 @@ public class SCADAChannel implements DataChannel {
                 case "newDataStyle":
                     this.setNewDataStyle((MissingDataPolicy) options.get(key));
                     break;
+                case "storage":
+                    String storage = val.toString().trim().toLowerCase();
+                    if (!storage.equals("sparse") && !storage.equals("dense")) {
+                        LOG.warn(this.name + ": unknown storage '" + val
+                                + "'; using dense storage");
+                    }
+                    this.sparse = storage.equals("sparse");
+                    break;
                 case "value when active":
                 case "valueForAbnormalStatus":
                     this.almAbnormal = (int) ((Number) val).intValue();
@@ -293,8 +329,12 @@ public class SCADAChannel implements DataChannel {
     public void initialize() {
         LOG.debug(
                 "Initializing channel " + this.name + " / " + this.tag + " / " + this.usage);
-        this.dataValues = new LazyModulusArray(this.dataFrameSize);
-        this.dataValues.setCopyMissing(this.copyMissing);
+        if (this.sparse) {
+            this.history = new SparseModulusArray(this.dataFrameSize);
+        } else {
+            this.history = new LazyModulusArray(this.dataFrameSize);
+        }
+        this.history.setCopyMissing(this.copyMissing);
         if (this.metaData.containsKey("setPointLow")) {
             this.setPointLow = this.getDoubleOpt("setPointLow");
         }
@@ -312,6 +352,30 @@ public class SCADAChannel implements DataChannel {
         }
     }
 
+    /**
+     * Check whether this channel keeps only the values it receives (sparse
+     * storage) rather than a value for every step. Sparse channels keep their
+     * own history and are not given a column of a shared history.
+     *
+     * @return true for sparse storage
+     */
+    public boolean isSparse() {
+        return this.sparse;
+    }
+
+    /**
+     * Store this channel's values in a column of a shared history matrix,
+     * such as the one a Station keeps for all of its channels. Must be called
+     * before any data is added; the channel's own history is discarded.
+     *
+     * @param history the shared history
+     * @param column the column to use for this channel
+     */
+    public void setHistory(LazyModulusMatrix history, int column) {
+        this.history = history.column(column);
+        this.history.setCopyMissing(this.copyMissing);
+    }
+
     @Override
     public String getClassName() {
         return "SimpleChannel";
@@ -336,24 +400,88 @@ public class SCADAChannel implements DataChannel {
         //        return config;
     }
 
+    /**
+     * Count and report a value that could not be read or stored because its
+     * index has gone out of frame. Only the first is logged as an error.
+     */
+    private void warnOutOfFrame(String action, int index, long count) {
+        if (count == 1) {
+            LOG.error(this.name + ": could not " + action + " data at index "
+                    + index + ", which is out of frame; please set or increase"
+                    + " the frameSize option. Further occurrences are counted.");
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug(this.name + ": could not " + action + " data at index "
+                    + index + " (" + count + " times)");
+        }
+    }
+
+    /**
+     * Get the number of reads of values that were out of frame.
+     *
+     * @return the number of failed reads
+     */
+    public long getDroppedReads() {
+        return this.droppedReads;
+    }
+
+    /**
+     * Get the number of values that were dropped because they arrived out of
+     * frame.
+     *
+     * @return the number of dropped values
+     */
+    public long getDroppedWrites() {
+        return this.droppedWrites;
+    }
+
+    /**
+     * Check that an index can be read, counting it if not.
+     */
+    private boolean canRead(int index) {
+        if (this.history.inFrame(index)) {
+            return true;
+        }
+        this.droppedReads++;
+        this.warnOutOfFrame("read", index, this.droppedReads);
+        return false;
+    }
+
     @Override
     public double getDoubleValue(int index) {
-        try {
-            return this.dataValues.get(index);
-        } catch (DataOutOfFrameException ex) {
-            LOG.error(this.name + ": out of frame exception, "
-                    + "please set or increase the frameSize option.", ex);
+        if (this.canRead(index)) {
+            return this.history.tryGet(index,
+                    Double.NEGATIVE_INFINITY);
         }
         return Double.NEGATIVE_INFINITY;
     }
 
+    @Override
+    public void copyWindow(int fromIndex, int toIndex, double[] dest,
+            int offset) {
+        if (!this.history.tryCopyWindow(fromIndex, toIndex,
+                dest, offset)) {
+            this.droppedReads++;
+            this.warnOutOfFrame("read", fromIndex, this.droppedReads);
+            Arrays.fill(dest, offset, offset + toIndex - fromIndex + 1,
+                    Double.NEGATIVE_INFINITY);
+        }
+    }
+
+    @Override
+    public DataWindow getWindow(int fromIndex, int toIndex) {
+        DataWindow window = this.history.tryGetWindow(fromIndex, toIndex);
+        if (window == null) {
+            this.droppedReads++;
+            this.warnOutOfFrame("read", fromIndex, this.droppedReads);
+        }
+        return window;
+    }
+
     @Override
     public int getIntegerValue(int index) {
-        try {
-            return (int) this.dataValues.get(index);
-        } catch (DataOutOfFrameException ex) {
-            LOG.error(this.name + ": out of frame exception, "
-                    + "please set or increase the frameSize option.", ex);
+        if (this.canRead(index)) {
+            return (int) this.history.tryGet(index,
+                    Double.NaN);
         }
         return Integer.MIN_VALUE;
     }
@@ -376,16 +504,17 @@ public class SCADAChannel implements DataChannel {
     @Override
     public void setNewDataStyle(MissingDataPolicy style) {
         switch (style) {
-            case TYPICAL:
-                this.dataValues.setCopyMissing(false);
-                break;
             case CHANGES:
-                this.dataValues.setCopyMissing(true);
+                this.copyMissing = true;
                 break;
+            case TYPICAL:
             default:
-                this.dataValues.setCopyMissing(false);
+                this.copyMissing = false;
                 break;
         }
+        if (this.history != null) {
+            this.history.setCopyMissing(this.copyMissing);
+        }
         this.options.put("newDataStyle", style.toString());
     }
 
@@ -407,16 +536,30 @@ public class SCADAChannel implements DataChannel {
                 return DataStatus.FLAGGED_BAD_QUALITY;
             }
         }
+        return this.getValueStatus();
+    }
+
+    /**
+     * Get the status of this channel's latest value alone, without checking
+     * the linked channels (see #getStatus). The value is screened when the
+     * status is first asked for after it was loaded.
+     *
+     * @return the status of the latest value
+     */
+    public DataStatus getValueStatus() {
+        if (this.statusStale) {
+            this.currentStatus = QualityScreen.screen(this.currentValue,
+                    this.validRangeLow, this.validRangeHigh, this.setPointLow,
+                    this.setPointHigh, this.getAlarmValue());
+            this.statusStale = false;
+        }
         return this.currentStatus;
     }
 
     @Override
     public String getStringValue(int index) {
-        try {
-            return new Double(this.dataValues.get(index)).toString();
-        } catch (DataOutOfFrameException ex) {
-            LOG.error(this.name + ": out of frame exception, "
-                    + "please set or increase the frameSize option.", ex);
+        if (this.canRead(index)) {
+            return Double.toString(this.history.tryGet(index, Double.NaN));
         }
         return null;
     }
@@ -438,11 +581,8 @@ public class SCADAChannel implements DataChannel {
 
     @Override
     public Object getValue(int index) {
-        try {
-            return this.dataValues.get(index);
-        } catch (DataOutOfFrameException ex) {
-            LOG.error(this.name + ": out of frame exception,"
-                    + " please set or increase the frameSize option.", ex);
+        if (this.canRead(index)) {
+            return this.history.tryGet(index, Double.NaN);
         }
         return null;
     }
@@ -24,21 +24,19 @@ import gov.sandia.seme.framework.ConfigurationException;
 import gov.sandia.seme.framework.Descriptor;
 import gov.sandia.seme.framework.InputConnection;
 import gov.sandia.seme.framework.Message;
-import gov.sandia.seme.framework.MessageType;
+import gov.sandia.seme.framework.ValueMessage;
 import gov.sandia.seme.framework.Step;
 import gov.sandia.seme.framework.InitializationException;
-import gov.sandia.seme.util.DateTimeStep;
 import gov.sandia.seme.util.MessagableImpl;
+import gov.sandia.seme.util.StepFormat;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.PriorityQueue;
 import org.apache.log4j.Logger;
 
 /**
@@ -75,6 +73,11 @@ import org.apache.log4j.Logger;
  * <tr><td>qualityTextGoodData</td><td> </td></tr>
  * <tr><td>qualityTextBadData</td><td> </td></tr>
  * </table>
+ * <p>
+ * The file is read as Steps are requested, one line at a time, so memory use
+ * does not grow with the length of the file. Lines are expected to be in Step
+ * order; several lines may share a Step. A line for an earlier Step than one
+ * already read is sent with the next request, and a warning is logged.
  *
  * @htmlonly
  * @author dbhart
@@ -85,9 +88,15 @@ import org.apache.log4j.Logger;
 public class CSVReaderTall extends MessagableImpl implements InputConnection {
 
     private static final Logger LOG = Logger.getLogger(CSVReaderTall.class);
-    private PriorityQueue<Message> csvalues = new PriorityQueue();
+    private BufferedReader buff = null;
+    private String[] labels = null;
+    private int lineNum = -1;
+    private ArrayList<Message> pendingRow = null;
+    private Step pendingStep = null;
+    private Step lastStep = null;
     private final int format = 1;
     private String dateFormat = null;
+    private StepFormat stepFormat = null;
 
     @Override
     public void configure(Descriptor config) throws ConfigurationException {
@@ -105,6 +114,9 @@ public class CSVReaderTall extends MessagableImpl implements InputConnection {
     }
 
     /**
+     * Open the input and read the header line. Data lines are not read here;
+     * they are read as the Steps they belong to are requested.
+     *
      * @author nprackl
      * @throws InitializationException
      */
@@ -112,51 +124,18 @@ public class CSVReaderTall extends MessagableImpl implements InputConnection {
     public void initialize() throws InitializationException {
         try {
             File loc = new File(location);
-            FileReader inFile;
-            BufferedReader reader;
-            inFile = new FileReader(loc.getAbsoluteFile());
-            reader = new BufferedReader(inFile);
-            String line = null;                 //The line currently being read.
-            String[] labels = null;             //The labels from the first line.
-            int lineNum = -1;
-            int timesteps = 0;
+            buff = new BufferedReader(new FileReader(loc.getAbsoluteFile()));
+            lineNum = -1;
             if (this.getBaseStep() != null && this.dateFormat == null) {
                 this.dateFormat = this.getBaseStep().getFormat();
             }
-            while ((line = reader.readLine()) != null) {
-                lineNum++;  //Increment line number.
-                //Different formats require different processing.
-                if (lineNum == 0) {
-                    labels = line.split(",");        //Get labels for first line.
-                    LOG.debug(labels);
-                } else {                                           //Processing for all additional lines.
-                    timesteps = lineNum;
-                    String[] lineValues = line.split(",");   //Split the input string into components.
-                    Date myDate = new Date(0);
-                    try {
-                        myDate = (new SimpleDateFormat(this.dateFormat)).parse(
-                                lineValues[0]);
-                    } catch (ParseException ex) {
-                        LOG.error(
-                                "Failed to parse date \'" + lineValues[0] + "\' using format \'" + dateFormat + "\'",
-                                ex);
-                    }
-                    Step step;
-                    step = new DateTimeStep((DateTimeStep) getBaseStep());
-                    step.setValue(myDate);
-                    for (int i = 1; i < lineValues.length; i++) {  //Iterate through the internal values.
-                        if (lineValues[i].length() != 0) {
-                            HashMap val = new HashMap();
-                            val.put("value", Double.parseDouble(lineValues[i]));
-                            Message msg = new Message(MessageType.VALUE,
-                                    labels[i], val, step);
-                            csvalues.add(msg);
-                            LOG.trace(lineNum + " : " + msg);
-                        }
-                    }
-                }
+            this.stepFormat = StepFormat.forPattern(this.dateFormat);
+            String line = buff.readLine();
+            if (line != null) {
+                lineNum++;
+                labels = line.split(",");        //Get labels for first line.
+                LOG.debug(labels);
             }
-            LOG.debug("Timesteps Read: " + timesteps); //Output timesteps read in.
         } catch (FileNotFoundException ex) {
             LOG.fatal("fatal error initializing " + this.name
                     + "for input use (file not found: "
@@ -175,25 +154,86 @@ public class CSVReaderTall extends MessagableImpl implements InputConnection {
     }
 
     /**
+     * Read the next data line and convert each of its values into a message.
+     * The line's Step is left in pendingStep.
      *
-     * @param step
-     * @return
+     * @return the messages (possibly none), or null at the end of the input
+     */
+    private ArrayList<Message> readNextRow() {
+        if (buff == null || labels == null) {
+            return null;
+        }
+        try {
+            String line = buff.readLine();
+            if (line != null) {
+                lineNum++;  //Increment line number.
+                String[] lineValues = line.split(",");   //Split the input string into components.
+                long myDate = 0;
+                try {
+                    myDate = this.stepFormat.parseMillis(lineValues[0]);
+                } catch (ParseException ex) {
+                    LOG.error(
+                            "Failed to parse date \'" + lineValues[0] + "\' using format \'" + dateFormat + "\'",
+                            ex);
+                }
+                Step step = this.getStepFactory().getStepForMillis(myDate);
+                if (lastStep != null && step.compareTo(lastStep) < 0) {
+                    LOG.warn("Line " + lineNum + " of " + location
+                            + " is out of Step order (" + step + " after "
+                            + lastStep + ")");
+                } else {
+                    lastStep = step;
+                }
+                ArrayList<Message> row = new ArrayList();
+                int n = Math.min(lineValues.length, labels.length);
+                for (int i = 1; i < n; i++) {  //Iterate through the internal values.
+                    if (lineValues[i].length() != 0) {
+                        Message msg = new ValueMessage(labels[i], step,
+                                Double.parseDouble(lineValues[i]));
+                        row.add(msg);
+                        LOG.trace(lineNum + " : " + msg);
+                    }
+                }
+                pendingStep = step;
+                return row;
+            }
+        } catch (IOException ex) {
+            LOG.error("Problem reading from input file ''" + location + "''", ex);
+        }
+        LOG.debug("Timesteps Read: " + lineNum); //Output timesteps read in.
+        try {
+            buff.close();
+        } catch (IOException ex) {
+            LOG.warn("Problem closing input file ''" + location + "''", ex);
+        }
+        buff = null;
+        return null;
+    }
+
+    /**
+     * Send the values of every line up to (and including) the Step provided.
+     * All of them are sent, even past the outbox capacity, since the Step's
+     * models need them; lines for later Steps are left unread.
+     *
+     * @param step the latest Step to send
+     * @return number of messages sent
      */
     @Override
     public int readInputAndProduceMessages(Step step) {
-        Message msg = csvalues.peek();
-        LOG.trace("Peek: " + msg);
         int count = 0;
-        while (msg != null) {
-            if (msg.getStep().compareTo(step) < 1) {
-                count++;
-                msg = csvalues.poll();
-                LOG.trace("Send message: " + msg);
-                this.pushMessageToOutbox(msg);
-            } else {
+        while (true) {
+            if (pendingRow == null) {
+                pendingRow = readNextRow();
+            }
+            if (pendingRow == null || pendingStep.compareTo(step) > 0) {
                 break;
             }
-            msg = csvalues.peek();
+            for (Message msg : pendingRow) {
+                LOG.trace("Send message: " + msg);
+                this.putMessageToOutbox(msg);
+            }
+            count += pendingRow.size();
+            pendingRow = null;
         }
         LOG.debug(
                 "Read and produced " + count + " DATA messages for Step=" + step + ".");
@@ -201,16 +241,29 @@ public class CSVReaderTall extends MessagableImpl implements InputConnection {
     }
 
     /**
+     * Send the values up to the current Step, if one is set, and then read
+     * ahead until the outbox is full.
      *
-     * @return
+     * @return number of messages sent
      */
     @Override
     public int readInputAndProduceMessages() {
-        Message msg = csvalues.poll();
         int count = 0;
-        while (msg != null) {
-            count++;
-            this.pushMessageToOutbox(msg);
+        if (this.getCurrentStep() != null) {
+            count = readInputAndProduceMessages(this.getCurrentStep());
+        }
+        while (hasOutboxCapacity()) {
+            if (pendingRow == null) {
+                pendingRow = readNextRow();
+            }
+            if (pendingRow == null) {
+                break;
+            }
+            for (Message msg : pendingRow) {
+                this.pushMessageToOutbox(msg);
+            }
+            count += pendingRow.size();
+            pendingRow = null;
         }
         LOG.debug("Read and produced " + count + " DATA messages.");
         return count;
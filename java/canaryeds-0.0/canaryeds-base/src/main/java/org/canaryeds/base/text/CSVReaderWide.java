@@ -23,12 +23,11 @@ package org.canaryeds.base.text;
 import gov.sandia.seme.framework.ConfigurationException;
 import gov.sandia.seme.framework.Descriptor;
 import gov.sandia.seme.framework.InputConnection;
-import gov.sandia.seme.framework.Message;
-import gov.sandia.seme.framework.MessageType;
+import gov.sandia.seme.framework.RowMessage;
 import gov.sandia.seme.framework.Step;
 import gov.sandia.seme.framework.InitializationException;
-import gov.sandia.seme.util.DateTimeStep;
 import gov.sandia.seme.util.MessagableImpl;
+import gov.sandia.seme.util.StepFormat;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
@@ -38,10 +37,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.HashMap;
-import java.util.PriorityQueue;
 import java.util.logging.Level;
 import org.apache.log4j.Logger;
 
@@ -76,7 +72,11 @@ import org.apache.log4j.Logger;
  * <li><b>step field:</b> string or integer, defines column where the time step
  * is contained, either by name (case insensitive) or by number, starting at 1
  * for the first column; </li>
- * <li><b>key:</b> type, description</li>
+ * <li><b>queue capacity:</b> integer, the most messages held in the inbox
+ * and outbox at once; rows are read from the file only as their Steps are
+ * requested, so a long replay runs in constant memory, and reading ahead of
+ * the current Step stops once the outbox is full; the rows of the current
+ * Step are always sent in full; default is unbounded</li>
  * <li><b>key:</b> type, description</li>
  * </ul>
  * <p>
@@ -108,9 +108,16 @@ import org.apache.log4j.Logger;
 public class CSVReaderWide extends MessagableImpl implements InputConnection {
 
     private static final Logger LOG = Logger.getLogger(CSVReaderWide.class);
-    private PriorityQueue<Message> csvalues = new PriorityQueue();
+    private BufferedReader buff = null;
+    private String[] labels = null;
+    private int stepFieldNum = -1;
+    private int lineNum = -1;
+    private int timesteps = 0;
+    private int[] labelTagIds = null;
+    private RowMessage pendingRow = null;
     private final int format = 1;
     private String dateFormat = null;
+    private StepFormat stepFormat = null;
     private InputStream inStream = null;
     private InputStreamReader reader = null;
     private boolean isDynamic = false;
@@ -163,6 +170,11 @@ public class CSVReaderWide extends MessagableImpl implements InputConnection {
     }
 
     /**
+     * Open the input and read the header lines. Data rows are not read here;
+     * they are read as the Steps they belong to are requested, so memory use
+     * does not grow with the size of the file. Rows are expected to be in Step
+     * order.
+     *
      * @author nprackl
      * @throws InitializationException
      */
@@ -171,17 +183,17 @@ public class CSVReaderWide extends MessagableImpl implements InputConnection {
         try {
             reader = new InputStreamReader(inStream);
             String line = null;                 //The line currently being read.
-            String[] labels = null;             //The labels from the first line.
-            int lineNum = -1;
-            int timesteps = 0;
+            lineNum = -1;
+            timesteps = 0;
             if (this.getBaseStep() != null && this.dateFormat == null) {
                 this.dateFormat = this.getBaseStep().getFormat();
             }
+            this.stepFormat = StepFormat.forPattern(this.dateFormat);
             int numHeaderLines = 1;
             if (this.getOpt("header lines") != null) {
                 numHeaderLines = this.getIntegerOpt("header lines");
             }
-            BufferedReader buff = new BufferedReader(reader);
+            buff = new BufferedReader(reader);
             String sepCharObj = this.getStringOpt("field separator");
             if (sepCharObj != null) {
                 sepChar = sepCharObj;
@@ -192,14 +204,13 @@ public class CSVReaderWide extends MessagableImpl implements InputConnection {
                 stepFieldObj = this.getOpt("step field");
             }
             LOG.trace(stepFieldObj);
-            int stepFieldNum = -1;
+            stepFieldNum = -1;
             String stepFieldName = null;
-            while ((line = buff.readLine()) != null) {
+            while (lineNum < numHeaderLines - 1 && (line = buff.readLine()) != null) {
                 lineNum++;  //Increment line number.
-                //Different formats require different processing.
                 if (lineNum < numHeaderLines - 1) {
                     LOG.info("Skipping header line: " + line);
-                } else if (lineNum == numHeaderLines - 1) {
+                } else {
                     stepFieldNum = -1;
                     if (stepFieldObj == null) {
                         stepFieldName = "TIME_STEP";
@@ -213,6 +224,7 @@ public class CSVReaderWide extends MessagableImpl implements InputConnection {
                         }
                     }
                     labels = line.split(sepChar);        //Get labels for first line.
+                    labelTagIds = RowMessage.newTagIds(labels);
                     LOG.debug(labels);
                     if (stepFieldNum < 0) {
                         for (int iLabel = 0; iLabel < labels.length; iLabel++) {
@@ -231,51 +243,8 @@ public class CSVReaderWide extends MessagableImpl implements InputConnection {
                                     "Unable to find a step field named '" + stepFieldName + "'!");
                         }
                     }
-                } else {                                           //Processing for all additional lines.
-                    timesteps = lineNum;
-                    String[] lineValues = line.split(",");   //Split the input string into components.
-                    Date myDate = new Date(stepFieldNum);
-                    try {
-                        myDate = (new SimpleDateFormat(this.dateFormat)).parse(
-                                lineValues[stepFieldNum]);
-                    } catch (ParseException ex) {
-                        LOG.error(
-                                "Failed to parse date \'" + lineValues[stepFieldNum] + "\' using format \'" + dateFormat + "\'",
-                                ex);
-                    }
-                    Step step;
-                    step = new DateTimeStep((DateTimeStep) getBaseStep());
-                    step.setValue(myDate);
-                    boolean goodLine = false;
-                    if (isDynamic) {
-                        goodLine = true;
-                    } else if (stepStart != null && stepFinal != null) {
-                        if (step.compareTo(stepStart) >= 0 && step.compareTo(
-                                stepFinal) < 1) {
-                            goodLine = true;
-                        }
-                    } else if (stepStart == null || stepFinal == null) {
-                        goodLine = true;
-                    }
-                    if (goodLine) {
-                        for (int i = 0; i < lineValues.length; i++) {  //Iterate through the internal values.
-                            if (i == stepFieldNum) {
-                                continue;
-                            }
-                            if (lineValues[i].length() != 0) {
-                                HashMap val = new HashMap();
-                                val.put("value", Double.parseDouble(
-                                        lineValues[i]));
-                                Message msg = new Message(MessageType.VALUE,
-                                        labels[i], val, step);
-                                this.pushMessageToOutbox(msg);
-                                LOG.trace(lineNum + " : " + msg);
-                            }
-                        }
-                    }
                 }
             }
-            LOG.debug("Timesteps Read: " + timesteps); //Output timesteps read in.
         } catch (FileNotFoundException ex) {
             LOG.fatal("fatal error initializing " + this.name
                     + "for input use (file not found: "
@@ -293,34 +262,139 @@ public class CSVReaderWide extends MessagableImpl implements InputConnection {
         }
     }
 
+    /**
+     * Read data lines until one falls within the configured Step range, and
+     * convert it into a single RowMessage holding all of the line's values.
+     *
+     * @return the row (possibly with no values), or null at the end of the
+     * input
+     */
+    private RowMessage readNextRow() {
+        if (buff == null) {
+            return null;
+        }
+        try {
+            String line;
+            while ((line = buff.readLine()) != null) {
+                lineNum++;  //Increment line number.
+                timesteps = lineNum;
+                String[] lineValues = line.split(",");   //Split the input string into components.
+                long myDate = stepFieldNum;
+                try {
+                    myDate = this.stepFormat.parseMillis(
+                            lineValues[stepFieldNum]);
+                } catch (ParseException ex) {
+                    LOG.error(
+                            "Failed to parse date \'" + lineValues[stepFieldNum] + "\' using format \'" + dateFormat + "\'",
+                            ex);
+                }
+                Step step = this.getStepFactory().getStepForMillis(myDate);
+                boolean goodLine = false;
+                if (isDynamic) {
+                    goodLine = true;
+                } else if (stepStart != null && stepFinal != null) {
+                    if (step.compareTo(stepStart) >= 0 && step.compareTo(
+                            stepFinal) < 1) {
+                        goodLine = true;
+                    }
+                } else if (stepStart == null || stepFinal == null) {
+                    goodLine = true;
+                }
+                if (goodLine) {
+                    int n = Math.min(lineValues.length, labels.length);
+                    int[] columns = new int[n];
+                    double[] values = new double[n];
+                    int size = 0;
+                    for (int i = 0; i < n; i++) {  //Iterate through the internal values.
+                        if (i == stepFieldNum) {
+                            continue;
+                        }
+                        if (lineValues[i].length() != 0) {
+                            columns[size] = i;
+                            values[size] = Double.parseDouble(lineValues[i]);
+                            size++;
+                        }
+                    }
+                    RowMessage row = new RowMessage(this.name, step, labels,
+                            labelTagIds, columns, values, size);
+                    LOG.trace(lineNum + " : " + row);
+                    return row;
+                }
+            }
+        } catch (IOException ex) {
+            LOG.error("Problem reading from input file ''" + location + "''", ex);
+        }
+        LOG.debug("Timesteps Read: " + timesteps); //Output timesteps read in.
+        closeInput();
+        return null;
+    }
+
+    private void closeInput() {
+        try {
+            buff.close();
+        } catch (IOException ex) {
+            LOG.warn("Problem closing input file ''" + location + "''", ex);
+        }
+        buff = null;
+    }
+
+    /**
+     * Send the rows up to (and including) the Step provided. Every one of
+     * these rows is sent, even past the outbox capacity, since the Step's
+     * models need all of them; rows for later Steps are left unread.
+     *
+     * @param step the latest Step to send
+     * @return number of messages sent
+     */
     @Override
     public int readInputAndProduceMessages(Step step) {
-        Message msg = csvalues.peek();
-        LOG.trace("Peek: " + msg);
         int count = 0;
-        while (msg != null) {
-            if (msg.getStep().compareTo(step) < 1) {
-                count++;
-                msg = csvalues.poll();
-                LOG.trace("Send message: " + msg);
-                this.pushMessageToOutbox(msg);
-            } else {
+        while (true) {
+            if (pendingRow == null) {
+                pendingRow = readNextRow();
+            }
+            if (pendingRow == null || pendingRow.getStep().compareTo(step) > 0) {
                 break;
             }
-            msg = csvalues.peek();
+            if (pendingRow.size() > 0) {
+                LOG.trace("Send message: " + pendingRow);
+                this.putMessageToOutbox(pendingRow);
+            }
+            count += pendingRow.size();
+            pendingRow = null;
         }
         LOG.debug(
                 "Read and produced " + count + " DATA messages for Step=" + step + ".");
         return count;
     }
 
+    /**
+     * Send the rows up to the current Step, if one is set, and then read
+     * ahead until the outbox is full.
+     *
+     * @return number of messages sent
+     */
     @Override
     public int readInputAndProduceMessages() {
-        Message msg = csvalues.poll();
         int count = 0;
-        while (msg != null) {
-            count++;
-            this.pushMessageToOutbox(msg);
+        if (this.getCurrentStep() != null) {
+            count = readInputAndProduceMessages(this.getCurrentStep());
+        }
+        while (hasOutboxCapacity()) {
+            if (pendingRow == null) {
+                pendingRow = readNextRow();
+            }
+            if (pendingRow == null) {
+                break;
+            }
+            if (pendingRow.size() > 0) {
+                this.pushMessageToOutbox(pendingRow);
+            }
+            count += pendingRow.size();
+            pendingRow = null;
+        }
+        if (pendingRow != null) {
+            LOG.debug("Outbox of " + this.name + " is full; deferring remaining input.");
         }
         LOG.debug("Read and produced " + count + " DATA messages.");
         return count;
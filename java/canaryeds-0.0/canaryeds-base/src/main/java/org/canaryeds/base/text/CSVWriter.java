@@ -32,6 +32,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import org.apache.log4j.Logger;
 
@@ -92,9 +93,9 @@ public class CSVWriter extends MessagableImpl implements OutputConnection {
     @Override
     public int consumeMessagesAndWriteOutput(Step step) {
         int count = 0;
-        Message newData;
-        newData = this.pollMessageFromInbox(step);
-        while (newData != null) {
+        ArrayList<Message> received = new ArrayList();
+        this.drainMessagesFromInbox(step, received);
+        for (Message newData : received) {
             LOG.trace(newData);
             count = count + 1;
             messagesWritten += 1;
@@ -145,11 +146,6 @@ public class CSVWriter extends MessagableImpl implements OutputConnection {
                 } else if (newData.getType() == MessageType.VALUE) {
                 }
             }
-            if (step == null) {
-                newData = this.pollMessageFromInbox();
-            } else {
-                newData = this.pollMessageFromInbox(step);
-            }
         }
         LOG.debug(
                 "Consumed and wrote " + count + " RESULT messages for Step=" + step + ".");
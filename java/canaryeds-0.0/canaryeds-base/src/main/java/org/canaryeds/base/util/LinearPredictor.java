@@ -0,0 +1,207 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package org.canaryeds.base.util;
+
+import java.util.Arrays;
+import org.apache.commons.math3.linear.SingularMatrixException;
+
+/**
+ * Calculates linear prediction coefficients with the autocorrelation method,
+ * reusing its work arrays from call to call. The autocorrelation is found with
+ * a radix-2 FFT of the zero-padded series, done in place on primitive arrays,
+ * and the Toeplitz normal equations are solved by the Levinson-Durbin
+ * recursion in O(N&sup2;) time and O(N) memory for N coefficients.
+ *
+ * The arrays returned are the predictor's own and are overwritten by the next
+ * call. Not thread safe; each workflow keeps its own predictor.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public class LinearPredictor {
+
+    private int fftSize;
+    private double[] re;
+    private double[] im;
+    private double[] cos;
+    private double[] sin;
+    private double[] lags;
+    private double[] coefs;
+    private double[] work;
+
+    /**
+     * Create a predictor. Work arrays are allocated on first use and grown as
+     * needed.
+     */
+    public LinearPredictor() {
+        this.fftSize = 0;
+        this.lags = new double[0];
+        this.coefs = new double[0];
+        this.work = new double[0];
+    }
+
+    /**
+     * Calculate the autocorrelation of a series, divided by its length, for
+     * lags 0 to maxLag.
+     *
+     * @param x the series
+     * @param maxLag the highest lag needed (maxLag &lt; x.length)
+     * @return the autocorrelation, indexed by lag
+     */
+    public double[] autocorrelation(double[] x, int maxLag) {
+        int n = x.length;
+        int size = Integer.highestOneBit(Math.max(2 * n - 1, 1));
+        if (size < 2 * n - 1) {
+            size <<= 1;
+        }
+        this.prepareFFT(size);
+        System.arraycopy(x, 0, re, 0, n);
+        Arrays.fill(re, n, size, 0.0);
+        Arrays.fill(im, 0.0);
+        this.fft();
+        for (int i = 0; i < size; i++) {
+            re[i] = re[i] * re[i] + im[i] * im[i];
+            im[i] = 0.0;
+        }
+        // the power spectrum is real and even, so its inverse transform is
+        // its forward transform divided by the size
+        this.fft();
+        if (lags.length <= maxLag) {
+            lags = new double[maxLag + 1];
+        }
+        double scale = 1.0 / ((double) size * n);
+        for (int i = 0; i <= maxLag; i++) {
+            lags[i] = re[i] * scale;
+        }
+        return lags;
+    }
+
+    /**
+     * Calculate linear prediction coefficients a[0..order-1] for a series,
+     * such that x[t] is predicted by -(a[0] x[t-1] + ... + a[order-1]
+     * x[t-order]).
+     *
+     * @param x the series
+     * @param order number of coefficients (0 &lt; order &lt; x.length)
+     * @return the coefficients, in the first order entries
+     * @throws SingularMatrixException if the autocorrelation matrix is
+     * singular
+     */
+    public double[] coefficients(double[] x, int order) {
+        return this.levinson(this.autocorrelation(x, order), order);
+    }
+
+    /**
+     * Solve the Toeplitz system sum_j r[|i-j|] a[j] = -r[i+1], for i and j
+     * from 0 to order-1, by the Levinson-Durbin recursion.
+     *
+     * @param r autocorrelation, indexed by lag, with at least order+1 entries
+     * @param order number of coefficients
+     * @return the coefficients, in the first order entries
+     * @throws SingularMatrixException if the system is singular
+     */
+    public double[] levinson(double[] r, int order) {
+        if (coefs.length < order) {
+            coefs = new double[order];
+            work = new double[order];
+        }
+        double[] a = coefs;
+        double err = r[0];
+        if (!(err > 0)) {
+            throw new SingularMatrixException();
+        }
+        for (int k = 0; k < order; k++) {
+            double acc = r[k + 1];
+            for (int j = 0; j < k; j++) {
+                acc += a[j] * r[k - j];
+            }
+            double kappa = -acc / err;
+            for (int j = 0; j < k; j++) {
+                work[j] = a[j] + kappa * a[k - 1 - j];
+            }
+            System.arraycopy(work, 0, a, 0, k);
+            a[k] = kappa;
+            err *= (1.0 - kappa * kappa);
+            if (!(err > 0)) {
+                throw new SingularMatrixException();
+            }
+        }
+        return a;
+    }
+
+    private void prepareFFT(int size) {
+        if (size == fftSize) {
+            return;
+        }
+        fftSize = size;
+        re = new double[size];
+        im = new double[size];
+        cos = new double[size / 2];
+        sin = new double[size / 2];
+        for (int i = 0; i < size / 2; i++) {
+            double angle = -2.0 * Math.PI * i / size;
+            cos[i] = Math.cos(angle);
+            sin[i] = Math.sin(angle);
+        }
+    }
+
+    /**
+     * Forward transform of re + i im, in place.
+     */
+    private void fft() {
+        int n = fftSize;
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        for (int len = 2; len <= n; len <<= 1) {
+            int half = len >> 1;
+            int step = n / len;
+            for (int i = 0; i < n; i += len) {
+                for (int k = 0; k < half; k++) {
+                    double wr = cos[k * step];
+                    double wi = sin[k * step];
+                    int p = i + k;
+                    int q = p + half;
+                    double xr = re[q] * wr - im[q] * wi;
+                    double xi = re[q] * wi + im[q] * wr;
+                    re[q] = re[p] - xr;
+                    im[q] = im[p] - xi;
+                    re[p] += xr;
+                    im[p] += xi;
+                }
+            }
+        }
+    }
+
+}
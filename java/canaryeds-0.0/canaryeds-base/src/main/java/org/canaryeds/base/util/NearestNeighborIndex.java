@@ -0,0 +1,352 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package org.canaryeds.base.util;
+
+/**
+ * Finds the nearest neighbor of a point among the most recent rows of a
+ * multivariate history. Rows are added one at a time to a fixed-capacity
+ * ring, dropping the oldest row once the index is full.
+ *
+ * Queries give a weight for each dimension, the reciprocal of its scale, so
+ * that the distance between a point q and a row x is measured on
+ * (q<sub>j</sub> - x<sub>j</sub>) w<sub>j</sub>. A weight of 0 leaves the
+ * dimension out. Normalizing both points by the same mean and standard
+ * deviation gives the same differences, so the rows are stored as they are
+ * and the index stays valid as the normalization changes. A row with a NaN in
+ * any dimension used by a query is skipped. When several rows are equally
+ * near, the most recently added row is chosen.
+ *
+ * Each candidate row's partial distance is abandoned once it exceeds the
+ * nearest distance found so far. With the KD-tree option, rows are also
+ * organized in a KD-tree, split on raw values, so that whole subtrees can be
+ * passed over; axis-aligned splits remain valid under any weights. The tree
+ * is rebuilt after about sqrt(n log n) rows have been added, and rows added
+ * since the last build, or holding NaNs, are checked one by one.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public class NearestNeighborIndex {
+
+    /**
+     * The L<sub>&infin;</sub> distance, the largest difference.
+     */
+    public static final int LINF = 0;
+    /**
+     * The L<sub>1</sub> distance, the sum of the differences.
+     */
+    public static final int L1 = 1;
+    /**
+     * The L<sub>2</sub> Euclidean distance.
+     */
+    public static final int L2 = 2;
+
+    private final int dims;
+    private final int capacity;
+    private final int distanceType;
+    private final boolean useTree;
+    private final int rebuildInterval;
+    private final double[] data;
+    private final boolean[] hasNaN;
+    private long count = 0;
+    private int[] treeSlots;
+    private long[] treeSeqs;
+    private double[] treeSplits;
+    private int treeSize = 0;
+    private long[] looseSeqs;
+    private int looseCount = 0;
+    private long builtAt = 0;
+    private double[] query;
+    private double[] weights;
+    private long oldest;
+    private double best;
+    private long bestSeq;
+
+    /**
+     * Create an empty index.
+     *
+     * @param dims number of dimensions in each row
+     * @param capacity number of rows kept
+     * @param distanceType one of #LINF, #L1 or #L2
+     * @param useTree true to search with a KD-tree, false to check every row
+     */
+    public NearestNeighborIndex(int dims, int capacity, int distanceType,
+            boolean useTree) {
+        this.dims = dims;
+        this.capacity = capacity;
+        this.distanceType = distanceType;
+        this.useTree = useTree && dims > 0;
+        this.data = new double[capacity * dims];
+        this.hasNaN = new boolean[capacity];
+        double logN = Math.log(Math.max(capacity, 2)) / Math.log(2.0);
+        this.rebuildInterval = Math.max(16, (int) Math.sqrt(capacity * logN));
+        if (this.useTree) {
+            treeSlots = new int[capacity];
+            treeSeqs = new long[capacity];
+            treeSplits = new double[capacity];
+            looseSeqs = new long[capacity];
+        }
+    }
+
+    /**
+     * Check whether a KD-tree search is likely to visit fewer rows than a
+     * scan, using the rule of thumb that the number of rows should be well
+     * above 2<sup>dims</sup>.
+     *
+     * @param dims number of dimensions
+     * @param rows number of rows
+     * @return true if a tree is worth keeping
+     */
+    public static boolean isTreeWorthwhile(int dims, int rows) {
+        return dims < 25 && rows >= (32L << dims);
+    }
+
+    /**
+     * Get the number of rows held.
+     *
+     * @return the number of rows
+     */
+    public int size() {
+        return (int) Math.min(count, capacity);
+    }
+
+    /**
+     * Check whether the index searches with a KD-tree.
+     *
+     * @return true if a KD-tree is used
+     */
+    public boolean isTree() {
+        return useTree;
+    }
+
+    /**
+     * Remove every row.
+     */
+    public void clear() {
+        count = 0;
+        builtAt = 0;
+        treeSize = 0;
+        looseCount = 0;
+    }
+
+    /**
+     * Add a row, dropping the oldest row if the index is full.
+     *
+     * @param row the values, one per dimension
+     */
+    public void add(double[] row) {
+        int slot = (int) (count % capacity);
+        boolean nan = false;
+        int base = slot * dims;
+        for (int j = 0; j < dims; j++) {
+            double v = row[j];
+            nan |= Double.isNaN(v);
+            data[base + j] = v;
+        }
+        hasNaN[slot] = nan;
+        count++;
+    }
+
+    /**
+     * Find the distance from a point to the nearest row, and the weighted
+     * differences between them.
+     *
+     * @param point the point, one value per dimension; values of dimensions
+     * with a weight of 0 are ignored
+     * @param weights weight for each dimension, or 0 to leave it out
+     * @param residual array for (point - row) * weight, or null; dimensions
+     * left out are set to NaN
+     * @return the distance, or NaN if no row can be compared with the point
+     */
+    public double nearest(double[] point, double[] weights, double[] residual) {
+        this.query = point;
+        this.weights = weights;
+        this.oldest = count - size();
+        this.best = Double.POSITIVE_INFINITY;
+        this.bestSeq = -1;
+        long first = oldest;
+        if (useTree) {
+            if (count - builtAt >= rebuildInterval || builtAt < oldest) {
+                build();
+            }
+            search(0, treeSize, 0);
+            for (int i = 0; i < looseCount; i++) {
+                if (looseSeqs[i] >= oldest) {
+                    consider(looseSeqs[i]);
+                }
+            }
+            first = Math.max(builtAt, oldest);
+        }
+        for (long seq = first; seq < count; seq++) {
+            consider(seq);
+        }
+        this.query = null;
+        this.weights = null;
+        if (bestSeq < 0) {
+            return Double.NaN;
+        }
+        if (residual != null) {
+            int base = (int) (bestSeq % capacity) * dims;
+            for (int j = 0; j < dims; j++) {
+                residual[j] = weights[j] == 0 ? Double.NaN
+                        : (point[j] - data[base + j]) * weights[j];
+            }
+        }
+        return distanceType == L2 ? Math.sqrt(best) : best;
+    }
+
+    /**
+     * Compare a row with the query, abandoning it once it is farther than the
+     * best row so far. L2 distances are compared squared.
+     */
+    private void consider(long seq) {
+        int base = (int) (seq % capacity) * dims;
+        double acc = 0.0;
+        for (int j = 0; j < dims; j++) {
+            double w = weights[j];
+            if (w == 0) {
+                continue;
+            }
+            double d = (query[j] - data[base + j]) * w;
+            if (Double.isNaN(d)) {
+                return;
+            }
+            if (distanceType == L2) {
+                acc += d * d;
+            } else if (distanceType == L1) {
+                acc += Math.abs(d);
+            } else {
+                acc = Math.max(acc, Math.abs(d));
+            }
+            if (acc > best) {
+                return;
+            }
+        }
+        if (acc < best || seq > bestSeq) {
+            best = acc;
+            bestSeq = seq;
+        }
+    }
+
+    /**
+     * Search the subtree stored in [lo, hi), whose root splits on the axis
+     * for its depth.
+     */
+    private void search(int lo, int hi, int depth) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (treeSeqs[mid] >= oldest) {
+            consider(treeSeqs[mid]);
+        }
+        int axis = depth % dims;
+        double w = weights[axis];
+        double diff = w == 0 ? 0.0 : (query[axis] - treeSplits[mid]) * w;
+        if (Double.isNaN(diff)) {
+            diff = 0.0;
+        }
+        double bound = distanceType == L2 ? diff * diff : Math.abs(diff);
+        if (diff <= 0) {
+            search(lo, mid, depth + 1);
+            if (bound <= best) {
+                search(mid + 1, hi, depth + 1);
+            }
+        } else {
+            search(mid + 1, hi, depth + 1);
+            if (bound <= best) {
+                search(lo, mid, depth + 1);
+            }
+        }
+    }
+
+    /**
+     * Rebuild the tree from the rows held, setting aside rows with NaNs.
+     */
+    private void build() {
+        long first = count - size();
+        treeSize = 0;
+        looseCount = 0;
+        for (long seq = first; seq < count; seq++) {
+            int slot = (int) (seq % capacity);
+            if (hasNaN[slot]) {
+                looseSeqs[looseCount++] = seq;
+            } else {
+                treeSlots[treeSize] = slot;
+                treeSeqs[treeSize] = seq;
+                treeSize++;
+            }
+        }
+        buildRange(0, treeSize, 0);
+        builtAt = count;
+    }
+
+    private void buildRange(int lo, int hi, int depth) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        int axis = depth % dims;
+        select(lo, hi - 1, mid, axis);
+        treeSplits[mid] = data[treeSlots[mid] * dims + axis];
+        buildRange(lo, mid, depth + 1);
+        buildRange(mid + 1, hi, depth + 1);
+    }
+
+    /**
+     * Partially order the tree entries in [lo, hi] along an axis so that
+     * entry k holds the k-th smallest value.
+     */
+    private void select(int lo, int hi, int k, int axis) {
+        while (hi > lo) {
+            double pivot = data[treeSlots[(lo + hi) >>> 1] * dims + axis];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (data[treeSlots[i] * dims + axis] < pivot) {
+                    i++;
+                }
+                while (data[treeSlots[j] * dims + axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int slot = treeSlots[i];
+                    treeSlots[i] = treeSlots[j];
+                    treeSlots[j] = slot;
+                    long seq = treeSeqs[i];
+                    treeSeqs[i] = treeSeqs[j];
+                    treeSeqs[j] = seq;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+}
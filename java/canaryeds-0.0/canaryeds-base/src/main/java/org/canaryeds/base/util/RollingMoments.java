@@ -0,0 +1,170 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package org.canaryeds.base.util;
+
+import static org.apache.commons.math3.util.FastMath.sqrt;
+
+/**
+ * Keeps the mean and sample standard deviation of a sliding window of values,
+ * omitting NaNs, as NaNMath#nanmean and NaNMath#nanstd would calculate them.
+ * Each value added to or removed from the window updates the moments in
+ * constant time (Welford's method, run forwards and backwards), rather than
+ * rescanning the window.
+ *
+ * Removing values lets rounding errors build up, so after a set number of
+ * updates #isStale reports that the moments should be recalculated from the
+ * window's values with #recompute.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public class RollingMoments {
+
+    private final int recomputeInterval;
+    private int count;
+    private double mean;
+    private double sumSquares;
+    private int updates;
+
+    /**
+     * Create empty moments.
+     *
+     * @param recomputeInterval number of updates after which the moments are
+     * stale; the window size is a good choice
+     */
+    public RollingMoments(int recomputeInterval) {
+        this.recomputeInterval = recomputeInterval < 1 ? 1 : recomputeInterval;
+        this.clear();
+    }
+
+    /**
+     * Remove every value.
+     */
+    public final void clear() {
+        count = 0;
+        mean = 0;
+        sumSquares = 0;
+        updates = 0;
+    }
+
+    /**
+     * Add a value to the window. NaNs are ignored.
+     *
+     * @param value the value added
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        sumSquares += delta * (value - mean);
+        updates++;
+    }
+
+    /**
+     * Remove a value from the window. NaNs are ignored.
+     *
+     * @param value the value removed, which must have been added
+     */
+    public void remove(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        count--;
+        if (count <= 0) {
+            this.clear();
+            return;
+        }
+        double delta = value - mean;
+        mean -= delta / count;
+        sumSquares -= delta * (value - mean);
+        if (sumSquares < 0) {
+            sumSquares = 0;
+        }
+        updates++;
+    }
+
+    /**
+     * Recalculate the moments from the values in the window.
+     *
+     * @param values the values in the window
+     */
+    public void recompute(double[] values) {
+        this.clear();
+        double sum = 0;
+        for (double value : values) {
+            if (!Double.isNaN(value)) {
+                sum += value;
+                count++;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        mean = sum / count;
+        for (double value : values) {
+            if (!Double.isNaN(value)) {
+                sumSquares += (value - mean) * (value - mean);
+            }
+        }
+    }
+
+    /**
+     * Check whether enough updates have been made since the moments were
+     * last calculated from the window that they should be recomputed.
+     *
+     * @return true if #recompute should be called
+     */
+    public boolean isStale() {
+        return updates >= recomputeInterval;
+    }
+
+    /**
+     * Get the number of values in the window that are not NaN.
+     *
+     * @return the count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Get the mean of the values that are not NaN.
+     *
+     * @return the mean, or NaN if every value is NaN
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * Get the sample standard deviation of the values that are not NaN.
+     *
+     * @return the standard deviation, or 0 if there are fewer than two values
+     */
+    public double getStd() {
+        return count < 2 ? 0 : sqrt(sumSquares / (count - 1));
+    }
+
+}
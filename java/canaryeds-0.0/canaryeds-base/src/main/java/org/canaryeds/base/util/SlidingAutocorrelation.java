@@ -0,0 +1,227 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package org.canaryeds.base.util;
+
+import org.apache.commons.math3.util.ResizableDoubleArray;
+
+/**
+ * Keeps the lagged product sums and the plain sum of a sliding window of
+ * values, so that the autocorrelation of the window, normalized by any mean
+ * and standard deviation, can be found without rescanning it. When the window
+ * slides by one value, each lag gains one product and loses one, so both an
+ * update and #autocorrelation cost O(maxLag).
+ *
+ * The sums are kept about an offset, the mean of the window when they were
+ * last recomputed, to limit cancellation. Rounding errors still build up as
+ * values come and go, so after a set number of updates #isStale reports that
+ * the sums should be recalculated with #recompute. A NaN in the window makes
+ * the sums unusable (#isValid) until it has left the window and the sums are
+ * recomputed.
+ *
+ * The tracker reads the window it follows, and must be told of every change
+ * to it.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public class SlidingAutocorrelation {
+
+    private final int maxLag;
+    private final int recomputeInterval;
+    private final double[] sums;
+    private double total;
+    private double[] values;
+    private double offset;
+    private int nanCount;
+    private int updates;
+
+    /**
+     * Create a tracker for an empty window.
+     *
+     * @param maxLag the highest lag kept
+     * @param recomputeInterval number of updates after which the sums are
+     * stale; the window size is a good choice
+     */
+    public SlidingAutocorrelation(int maxLag, int recomputeInterval) {
+        this.maxLag = maxLag;
+        this.recomputeInterval = recomputeInterval < 1 ? 1 : recomputeInterval;
+        this.sums = new double[maxLag + 1];
+        this.offset = 0;
+    }
+
+    /**
+     * Get the highest lag kept.
+     *
+     * @return the highest lag
+     */
+    public int getMaxLag() {
+        return maxLag;
+    }
+
+    /**
+     * Update the sums for a value appended to the window, which grew by one.
+     *
+     * @param window the window, ending with the new value
+     */
+    public void append(ResizableDoubleArray window) {
+        int n = window.getNumElements();
+        double added = window.getElement(n - 1);
+        if (Double.isNaN(added)) {
+            nanCount++;
+        }
+        added -= offset;
+        total += added;
+        int top = Math.min(maxLag, n - 1);
+        for (int k = 0; k <= top; k++) {
+            sums[k] += added * (window.getElement(n - 1 - k) - offset);
+        }
+        updates++;
+    }
+
+    /**
+     * Update the sums for a value pushed onto the window, which dropped its
+     * oldest value.
+     *
+     * @param window the window, ending with the new value
+     * @param dropped the value dropped from the front of the window
+     */
+    public void roll(ResizableDoubleArray window, double dropped) {
+        int n = window.getNumElements();
+        double added = window.getElement(n - 1);
+        if (Double.isNaN(added)) {
+            nanCount++;
+        }
+        if (Double.isNaN(dropped) && --nanCount == 0) {
+            // the sums are still NaN from it
+            updates = recomputeInterval;
+        }
+        added -= offset;
+        dropped -= offset;
+        total += added - dropped;
+        sums[0] += added * added - dropped * dropped;
+        int top = Math.min(maxLag, n - 1);
+        for (int k = 1; k <= top; k++) {
+            sums[k] += added * (window.getElement(n - 1 - k) - offset)
+                    - dropped * (window.getElement(k - 1) - offset);
+        }
+        updates++;
+    }
+
+    /**
+     * Recalculate the sums from the values in the window.
+     *
+     * @param window the window
+     */
+    public void recompute(ResizableDoubleArray window) {
+        int n = window.getNumElements();
+        if (values == null || values.length < n) {
+            values = new double[n];
+        }
+        double sum = 0;
+        nanCount = 0;
+        for (int i = 0; i < n; i++) {
+            double value = window.getElement(i);
+            values[i] = value;
+            if (Double.isNaN(value)) {
+                nanCount++;
+            } else {
+                sum += value;
+            }
+        }
+        offset = n > nanCount ? sum / (n - nanCount) : 0;
+        total = 0;
+        for (int i = 0; i < n; i++) {
+            values[i] -= offset;
+            total += values[i];
+        }
+        int top = Math.min(maxLag, n - 1);
+        for (int k = 0; k <= maxLag; k++) {
+            double s = 0;
+            if (k <= top) {
+                for (int i = k; i < n; i++) {
+                    s += values[i] * values[i - k];
+                }
+            }
+            sums[k] = s;
+        }
+        updates = 0;
+    }
+
+    /**
+     * Check whether the sums can be used: there is no NaN in the window.
+     *
+     * @return true if #autocorrelation can be called
+     */
+    public boolean isValid() {
+        return nanCount == 0;
+    }
+
+    /**
+     * Check whether enough updates have been made since the sums were last
+     * calculated from the window that they should be recomputed.
+     *
+     * @return true if #recompute should be called
+     */
+    public boolean isStale() {
+        return updates >= recomputeInterval;
+    }
+
+    /**
+     * Calculate the autocorrelation, divided by the series length, of the
+     * window followed by one more value, after normalizing by a mean and
+     * standard deviation: the autocorrelation of (x - mean) / std.
+     *
+     * @param window the window
+     * @param value the value following the window
+     * @param mean the mean to subtract
+     * @param std the standard deviation to divide by
+     * @param order the highest lag needed (order &lt;= maxLag, and less than
+     * the number of values in the window, plus one)
+     * @param out array for the autocorrelation, indexed by lag, or null
+     * @return the autocorrelation
+     */
+    public double[] autocorrelation(ResizableDoubleArray window, double value,
+            double mean, double std, int order, double[] out) {
+        if (out == null || out.length <= order) {
+            out = new double[order + 1];
+        }
+        int w = window.getNumElements();
+        int n = w + 1;
+        double v = value - offset;
+        double m = mean - offset;
+        // head: sum of the first n-k values; tail: sum of the last n-k values
+        double head = total + v;
+        double tail = total + v;
+        double scale = 1.0 / (std * std * n);
+        for (int k = 0; k <= order; k++) {
+            if (k > 0) {
+                head -= k == 1 ? v : window.getElement(n - k) - offset;
+                tail -= window.getElement(k - 1) - offset;
+            }
+            double s = sums[k] + v * (k == 0 ? v
+                    : window.getElement(w - k) - offset);
+            out[k] = (s - m * (head + tail) + (n - k) * m * m) * scale;
+        }
+        return out;
+    }
+
+}
@@ -21,23 +21,13 @@ import org.canaryeds.base.Workflow;
 import gov.sandia.seme.framework.DataChannel;
 import gov.sandia.seme.framework.DataStatus;
 import gov.sandia.seme.framework.InitializationException;
+import gov.sandia.seme.util.LazyModulusMatrix;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import org.apache.commons.math3.complex.Complex;
 import org.apache.commons.math3.distribution.BinomialDistribution;
-import org.apache.commons.math3.linear.Array2DRowRealMatrix;
-import org.apache.commons.math3.linear.ArrayRealVector;
-import org.apache.commons.math3.linear.CholeskyDecomposition;
-import org.apache.commons.math3.linear.DecompositionSolver;
-import org.apache.commons.math3.linear.RealMatrix;
-import org.apache.commons.math3.linear.RealVector;
-import org.apache.commons.math3.stat.descriptive.summary.Sum;
-import org.apache.commons.math3.transform.DftNormalization;
-import org.apache.commons.math3.transform.FastFourierTransformer;
-import org.apache.commons.math3.transform.TransformType;
-import static org.apache.commons.math3.util.ArithmeticUtils.pow;
-import static org.apache.commons.math3.util.FastMath.abs;
+import org.apache.commons.math3.linear.SingularMatrixException;
 import org.apache.commons.math3.util.ResizableDoubleArray;
 import org.apache.log4j.Logger;
 
@@ -63,28 +53,41 @@ public abstract class WorkflowImpl implements Workflow {
     protected double bedOutlierProbability;
     protected double[] precisions;
     protected ResizableDoubleArray[] historyWindow;
+    protected RollingMoments[] historyMoments;
+    protected SlidingAutocorrelation[] historyLags;
+    private double[] lpcLags;
+    private double[] windowValues;
+    protected final LinearPredictor predictor;
     protected ResizableDoubleArray distances;
     protected ResizableDoubleArray bedWindow;
     protected BinomialDistribution BED;
     protected int ct_eventTimeout = 0;
-    protected final ArrayList<Double> rawData;
-    protected final ArrayList<Integer> violations;
-    protected final ArrayList<Short> contributed;
-    protected final ArrayList<Double> residuals;
+    protected double[] rawData;
+    protected int[] violations;
+    protected byte[] contributed;
+    protected double[] residuals;
+    protected final HashMap results;
     protected final ArrayList<String> parameters;
     protected final ArrayList<String> tags;
     protected double probability;
     protected EventStatus status;
     protected final HashMap<String, Object> metaData;
+    protected LazyModulusMatrix history;
+    protected int[] historyColumns;
+    protected double[] row;
+    protected DataStatus[] statuses;
+    protected int[] statusPositions;
 
     public WorkflowImpl() {
+        this.predictor = new LinearPredictor();
         this.metaData = new HashMap();
         this.tags = new ArrayList();
         this.parameters = new ArrayList();
-        this.residuals = new ArrayList<>();
-        this.contributed = new ArrayList<>();
-        this.violations = new ArrayList<>();
-        this.rawData = new ArrayList<>();
+        this.results = new HashMap();
+        this.residuals = new double[0];
+        this.contributed = new byte[0];
+        this.violations = new int[0];
+        this.rawData = new double[0];
         this.sz_historyWindow = -10;
         this.outlierThreshold = -1.0;
         this.eventThreshold = -1.0;
@@ -118,6 +121,89 @@ public abstract class WorkflowImpl implements Workflow {
         }
     }
 
+    @Override
+    public void setHistory(LazyModulusMatrix history, int[] columns) {
+        if (history != null && columns.length != channels.size()) {
+            LOG.warn("History columns do not match the channels of workflow "
+                    + this.name + "; reading values from the channels");
+            history = null;
+        }
+        this.history = history;
+        this.historyColumns = columns;
+    }
+
+    @Override
+    public void setChannelStatuses(DataStatus[] statuses, int[] positions) {
+        if (statuses != null && positions.length != channels.size()) {
+            LOG.warn("Status positions do not match the channels of workflow "
+                    + this.name + "; reading statuses from the channels");
+            statuses = null;
+        }
+        this.statuses = statuses;
+        this.statusPositions = positions;
+    }
+
+    /**
+     * Get the current status of a channel, from the station's per-step
+     * statuses if they were provided, otherwise from the channel.
+     *
+     * @param channel position of the channel in #channels
+     * @return the channel status
+     */
+    protected DataStatus statusOf(int channel) {
+        if (statuses != null && statusPositions[channel] >= 0) {
+            return statuses[statusPositions[channel]];
+        }
+        return channels.get(channel).getStatus();
+    }
+
+    /**
+     * Read the values of every channel at a step into #row, in channel order.
+     * Values come from the station's history, if one was provided, otherwise
+     * from each channel.
+     *
+     * @param index step to read
+     * @return the row of values
+     */
+    protected double[] readRow(int index) {
+        int n = channels.size();
+        if (row == null || row.length != n) {
+            row = new double[n];
+        }
+        boolean shared = history != null
+                && history.tryGetRow(index, historyColumns, row) != null;
+        // channels outside the history (or out of frame) report their own
+        for (int i = 0; i < n; i++) {
+            if (!shared || historyColumns[i] < 0) {
+                row[i] = channels.get(i).getDoubleValue(index);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Read the most recent values of one channel, oldest first.
+     *
+     * @param channel position of the channel in #channels
+     * @param index last step to read
+     * @param count number of steps to read
+     * @param out array to fill, or null to create a new one
+     * @return the values
+     */
+    protected double[] readWindow(int channel, int index, int count,
+            double[] out) {
+        if (out == null || out.length < count) {
+            out = new double[count];
+        }
+        if (history != null && historyColumns[channel] >= 0
+                && history.tryCopyWindow(historyColumns[channel],
+                        index - count + 1, index, out, 0)) {
+            return out;
+        }
+        channels.get(channel).copyWindow(index - count + 1, index, out, 0);
+        return out;
+    }
+
     @Override
     public String[] getChannelParameters() {
         return this.parameters.toArray(new String[parameters.size()]);
@@ -135,22 +221,82 @@ public abstract class WorkflowImpl implements Workflow {
 
     @Override
     public Short[] getChannelContributed() {
-        return this.contributed.toArray(new Short[this.contributed.size()]);
+        Short[] values = new Short[contributed.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (short) contributed[i];
+        }
+        return values;
     }
 
     @Override
     public Double[] getChannelRawData() {
-        return this.rawData.toArray(new Double[this.rawData.size()]);
+        Double[] values = new Double[rawData.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rawData[i];
+        }
+        return values;
     }
 
     @Override
     public Double[] getChannelResiduals() {
-        return this.residuals.toArray(new Double[this.residuals.size()]);
+        Double[] values = new Double[residuals.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = residuals[i];
+        }
+        return values;
     }
 
     @Override
     public Integer[] getChannelViolations() {
-        return this.violations.toArray(new Integer[this.violations.size()]);
+        Integer[] values = new Integer[violations.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = violations[i];
+        }
+        return values;
+    }
+
+    @Override
+    public double[] rawData() {
+        return rawData;
+    }
+
+    @Override
+    public double[] residuals() {
+        return residuals;
+    }
+
+    @Override
+    public int[] violations() {
+        return violations;
+    }
+
+    @Override
+    public byte[] contributed() {
+        return contributed;
+    }
+
+    /**
+     * Record a channel's control-limit violation code for its status: 1 for
+     * out of control limits, 2 for out of valid range, 3 for flagged bad
+     * quality and 0 otherwise. Any violation sets the workflow status to
+     * CHANNELS_ALARMING.
+     *
+     * @param channel position of the channel in #channels
+     * @param chanStatus the channel's status
+     */
+    protected void doCalcViolation(int channel, DataStatus chanStatus) {
+        if (chanStatus == DataStatus.OUT_OF_CTL_LIMIT) {
+            this.violations[channel] = 1;
+            this.status = EventStatus.CHANNELS_ALARMING;
+        } else if (chanStatus == DataStatus.OUT_OF_VALID_RANGE) {
+            this.violations[channel] = 2;
+            this.status = EventStatus.CHANNELS_ALARMING;
+        } else if (chanStatus == DataStatus.FLAGGED_BAD_QUALITY) {
+            this.violations[channel] = 3;
+            this.status = EventStatus.CHANNELS_ALARMING;
+        } else {
+            this.violations[channel] = 0;
+        }
     }
 
     @Override
@@ -164,62 +310,152 @@ public abstract class WorkflowImpl implements Workflow {
     }
 
     protected void doProcInitHistoryWindow(int index) {
+        double[] values = this.readRow(index);
         for (int i = 0; i < channels.size(); i++) {
-            double val = channels.get(i).getDoubleValue(index);
+            double val = values[i];
             if (!Double.isNaN(val)) {
-                historyWindow[i].addElement(val);
+                this.addHistory(i, val);
             } else {
-                historyWindow[i].addElement(historyWindow[i].getElement(
+                this.addHistory(i, historyWindow[i].getElement(
                         historyWindow[i].getNumElements() - 1));
             }
         }
-        for (DataChannel chan : channels) {
-            this.rawData.add(chan.getDoubleValue(index));
-            this.residuals.add(Double.NaN);
-            this.contributed.add((short)0);
-            if (chan.getStatus() == DataStatus.OUT_OF_CTL_LIMIT) {
-                this.violations.add(1);
-                this.status = EventStatus.CHANNELS_ALARMING;
-            } else if (chan.getStatus() == DataStatus.OUT_OF_VALID_RANGE) {
-                this.violations.add(2);
-                this.status = EventStatus.CHANNELS_ALARMING;
-            } else if (chan.getStatus() == DataStatus.FLAGGED_BAD_QUALITY) {
-                this.violations.add(3);
-                this.status = EventStatus.CHANNELS_ALARMING;
-            } else {
-                this.violations.add(0);
-            }
+        for (int i = 0; i < channels.size(); i++) {
+            this.rawData[i] = values[i];
+            this.residuals[i] = Double.NaN;
+            this.contributed[i] = 0;
+            this.doCalcViolation(i, this.statusOf(i));
         }
         this.probability = Double.NaN;
         this.status = EventStatus.UNINITIALIZED;
     }
 
     protected void doProcMissingData(int index) {
-        for (DataChannel chan : channels) {
-            this.rawData.add(chan.getDoubleValue(index));
-            this.residuals.add(Double.NaN);
-            this.contributed.add((short)0);
-            if (chan.getStatus() == DataStatus.OUT_OF_CTL_LIMIT) {
-                this.violations.add(1);
-                this.status = EventStatus.CHANNELS_ALARMING;
-            } else if (chan.getStatus() == DataStatus.OUT_OF_VALID_RANGE) {
-                this.violations.add(2);
-                this.status = EventStatus.CHANNELS_ALARMING;
-            } else if (chan.getStatus() == DataStatus.FLAGGED_BAD_QUALITY) {
-                this.violations.add(3);
-                this.status = EventStatus.CHANNELS_ALARMING;
-            } else {
-                this.violations.add(0);
-            }
+        double[] values = this.readRow(index);
+        for (int i = 0; i < channels.size(); i++) {
+            this.rawData[i] = values[i];
+            this.residuals[i] = Double.NaN;
+            this.contributed[i] = 0;
+            this.doCalcViolation(i, this.statusOf(i));
         }
         this.probability = Double.NaN;
         this.status = EventStatus.DATA_MISSING;
     }
 
+    /**
+     * Append a value to a channel's history window, which grows by one.
+     *
+     * @param channel position of the channel in #channels
+     * @param value the value
+     */
+    protected void addHistory(int channel, double value) {
+        historyWindow[channel].addElement(value);
+        historyMoments[channel].add(value);
+        if (historyLags != null) {
+            historyLags[channel].append(historyWindow[channel]);
+            if (historyLags[channel].isStale()) {
+                historyLags[channel].recompute(historyWindow[channel]);
+            }
+        }
+    }
+
+    /**
+     * Push a value onto a channel's full history window, dropping the oldest
+     * value.
+     *
+     * @param channel position of the channel in #channels
+     * @param value the value
+     */
+    protected void rollHistory(int channel, double value) {
+        double dropped = historyWindow[channel].addElementRolling(value);
+        RollingMoments moments = historyMoments[channel];
+        moments.remove(dropped);
+        moments.add(value);
+        if (moments.isStale()) {
+            int n = historyWindow[channel].getNumElements();
+            if (windowValues == null || windowValues.length != n) {
+                windowValues = new double[n];
+            }
+            for (int i = 0; i < n; i++) {
+                windowValues[i] = historyWindow[channel].getElement(i);
+            }
+            moments.recompute(windowValues);
+        }
+        if (historyLags != null) {
+            historyLags[channel].roll(historyWindow[channel], dropped);
+            if (historyLags[channel].isStale()) {
+                historyLags[channel].recompute(historyWindow[channel]);
+            }
+        }
+    }
+
+    /**
+     * Replace a channel's history window.
+     *
+     * @param channel position of the channel in #channels
+     * @param values the new window, oldest first
+     */
+    protected void resetHistory(int channel, double[] values) {
+        historyWindow[channel].clear();
+        historyWindow[channel].addElements(values);
+        historyMoments[channel].recompute(values);
+        if (historyLags != null) {
+            historyLags[channel].recompute(historyWindow[channel]);
+        }
+    }
+
+    /**
+     * Linear Predictive Coefficients of a channel's history window followed
+     * by a new value, normalized by a mean and standard deviation, using the
+     * channel's sliding autocorrelation rather than transforming the series.
+     *
+     * @param channel position of the channel in #channels
+     * @param value the new value
+     * @param mean the mean to subtract
+     * @param std the standard deviation to divide by
+     * @param order number of coefficients to create
+     * @return the coefficients, in the first order entries, or null if the
+     * channel's autocorrelation is not being kept or cannot be used
+     * @throws SingularMatrixException if the autocorrelation matrix is
+     * singular
+     */
+    protected double[] lpcHistory(int channel, double value, double mean,
+            double std, int order) {
+        if (historyLags == null || !historyLags[channel].isValid()
+                || order > historyLags[channel].getMaxLag()) {
+            return null;
+        }
+        lpcLags = historyLags[channel].autocorrelation(historyWindow[channel],
+                value, mean, std, order, lpcLags);
+        return predictor.levinson(lpcLags, order);
+    }
+
+    /**
+     * Get the mean of a channel's history window, omitting NaNs.
+     *
+     * @param channel position of the channel in #channels
+     * @return the mean, or NaN if every value is NaN
+     */
+    protected double historyMean(int channel) {
+        return historyMoments[channel].getMean();
+    }
+
+    /**
+     * Get the sample standard deviation of a channel's history window,
+     * omitting NaNs.
+     *
+     * @param channel position of the channel in #channels
+     * @return the standard deviation, or 0 if there are fewer than two values
+     */
+    protected double historyStd(int channel) {
+        return historyMoments[channel].getStd();
+    }
+
     protected int doCalcNZCount(int index) {
         int nzCount = 0;
-        for (DataChannel chan : channels) {
-            if (!Double.isNaN(chan.getDoubleValue(index)) && chan.getStatus() == DataStatus.NORMAL) {
+        double[] values = this.readRow(index);
+        for (int i = 0; i < channels.size(); i++) {
+            if (!Double.isNaN(values[i]) && this.statusOf(i) == DataStatus.NORMAL) {
                 nzCount++;
             }
         }
@@ -227,7 +463,10 @@ public abstract class WorkflowImpl implements Workflow {
     }
 
     protected double doCalcBEDProbability() {
-        double n = bedWindow.compute(new Sum());
+        double n = 0.0;
+        for (int i = 0; i < bedWindow.getNumElements(); i++) {
+            n += bedWindow.getElement(i);
+        }
         double p = BED.cumulativeProbability((int) n);
         this.probability = p;
         if (p >= eventThreshold) {
@@ -241,13 +480,10 @@ public abstract class WorkflowImpl implements Workflow {
 
     protected boolean doCalcEventTimeout(int index) {
         if (ct_eventTimeout >= sz_eventTimeout) {
+            double[] window = null;
             for (int j = 0; j < historyWindow.length; j++) {
-                historyWindow[j].clear();
-                for (int i = sz_historyWindow - 1; i >= 0; i--) {
-                    double val = channels.get(j).getDoubleValue(
-                            index - i);
-                    historyWindow[j].addElement(val);
-                }
+                window = this.readWindow(j, index, sz_historyWindow, window);
+                this.resetHistory(j, window);
             }
             bedWindow.clear();
             for (int i = 0; i < sz_bedWindow; i++) {
@@ -271,74 +507,17 @@ public abstract class WorkflowImpl implements Workflow {
 
     /**
      * Linear Predictive Coefficients. Computes the LP coefficients of the data
-     * using the autocorrelation method, using QR decomposition to solve the
-     * system of equations.
+     * using the autocorrelation method, solving the Toeplitz system of
+     * equations with the Levinson-Durbin recursion (see LinearPredictor).
      *
      * @param x time series data to use in LP coefficients calculation.
      * @param N number of coefficients to create (0 &lt; N &lt; x.length).
      * @return LP coefficients.
+     * @throws SingularMatrixException if the autocorrelation matrix is
+     * singular.
      */
     protected double[] lpc(double[] x, int N) {
-        // Verify N != 0, N < x.length
-        int s = nextpow2(2 * x.length - 1);
-        double[] xZeros = new double[pow(2, s)];
-        //        System.out.print("[");
-        for (int i = 0; i < xZeros.length; i++) {
-            xZeros[i] = (i < x.length) ? x[i] : 0;
-            //            System.out.print(xZeros[i]+", ");
-        }
-        //        System.out.println("]");
-        //        System.out.println(xZeros.length);
-        Complex[] X;
-        FastFourierTransformer fft = new FastFourierTransformer(
-                DftNormalization.STANDARD);
-        X = fft.transform(xZeros, TransformType.FORWARD);
-        double[] X2 = new double[X.length];
-        //        System.out.print("[");
-        for (int i = 0; i < X.length; i++) {
-            double tmp = X[i].abs();
-            X2[i] = tmp * tmp;
-            //            System.out.print(X2[i]+", ");
-        }
-        //        System.out.println("]");
-        Complex[] R;
-        R = fft.transform(X2, TransformType.INVERSE);
-        double[] R2 = new double[R.length];
-        //        System.out.print("[");
-        for (int i = 0; i < R.length; i++) {
-            //            System.out.print(R[i].divide(x.length)+", ");
-            double tmp = R[i].divide(x.length).getReal();
-            R2[i] = tmp;
-        }
-        //        System.out.println("]");
-        //        System.out.print("[");
-        //        for (int i = 0; i < R2.length; i++) {
-        //            System.out.print(R2[i]+", ");
-        //        }
-        //        System.out.println("]");
-        double[][] Y = new double[N][N];
-        double[] b = new double[N];
-        for (int i = 0; i < N; i++) {
-            b[i] = -R2[i + 1];
-            for (int j = 0; j < N; j++) {
-                int ri = abs(i - j);
-                Y[i][j] = R2[ri];
-            }
-        }
-        //        System.out.println(Y.length);
-        //        System.out.println(b.length);
-        /* // The following uses the JBLAS solver
-         DoubleMatrix coefficients = new DoubleMatrix(Y);
-         DoubleMatrix constants = new DoubleMatrix(b.length, 1, b);
-         DoubleMatrix solution = Solve.solveLeastSquares(coefficients, constants);
-         return solution.data;
-         */
-        // The following uses the apache commons math solver instead of JBLAS
-        RealMatrix coefficients = new Array2DRowRealMatrix(Y);
-        DecompositionSolver solver = new CholeskyDecomposition(coefficients).getSolver();
-        RealVector constants = new ArrayRealVector(b, false);
-        RealVector solution = solver.solve(constants);
-        return solution.toArray();
+        return Arrays.copyOf(predictor.coefficients(x, N), N);
     }
 
     /**
@@ -378,9 +557,11 @@ public abstract class WorkflowImpl implements Workflow {
         LOG.debug(
                 "Initializing workflow " + this.name + " with " + channels.size() + " channels.");
         historyWindow = new ResizableDoubleArray[channels.size()];
+        historyMoments = new RollingMoments[channels.size()];
         precisions = new double[channels.size()];
         for (int i = 0; i < channels.size(); i++) {
             historyWindow[i] = new ResizableDoubleArray(sz_historyWindow);
+            historyMoments[i] = new RollingMoments(sz_historyWindow);
             double stdDev;
             try {
                 stdDev = channels.get(i).getDoubleOpt("precision");
@@ -398,6 +579,10 @@ public abstract class WorkflowImpl implements Workflow {
             bedWindow.addElement(0.0);
         }
         distances = new ResizableDoubleArray(sz_historyWindow);
+        rawData = new double[channels.size()];
+        residuals = new double[channels.size()];
+        contributed = new byte[channels.size()];
+        violations = new int[channels.size()];
         BED = new BinomialDistribution(sz_bedWindow, bedOutlierProbability);
     }
 
@@ -408,6 +593,8 @@ public abstract class WorkflowImpl implements Workflow {
                 channels.remove(chan);
             }
         }
+        this.history = null;
+        this.statuses = null;
     }
 
     @Override
@@ -21,21 +21,16 @@
 package org.canaryeds.base.workflows;
 
 import org.canaryeds.base.EventStatus;
-import static org.canaryeds.base.util.NaNMath.nanmean;
-import static org.canaryeds.base.util.NaNMath.nanstd;
+import org.canaryeds.base.util.SlidingAutocorrelation;
 import org.canaryeds.base.util.WorkflowImpl;
-import gov.sandia.seme.framework.DataChannel;
 import gov.sandia.seme.framework.DataStatus;
 import gov.sandia.seme.framework.Descriptor;
 import gov.sandia.seme.framework.ConfigurationException;
 import gov.sandia.seme.framework.InitializationException;
+import java.util.Arrays;
 import java.util.HashMap;
-import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.SingularMatrixException;
-import org.apache.commons.math3.stat.descriptive.rank.Max;
 import static org.apache.commons.math3.util.FastMath.abs;
-import org.apache.commons.math3.util.MathArrays;
-import org.apache.commons.math3.util.ResizableDoubleArray;
 import org.apache.log4j.Logger;
 
 /**
@@ -75,6 +70,9 @@ import org.apache.log4j.Logger;
  * <li><b>event window save:</b> integer, defines the number of steps
  * <i>prior</i>
  * to the start of an event to save as context for the event</li>
+ * <li><b>model order:</b> integer, optional, defines the number of linear
+ * prediction coefficients to fit; by default, and if it is not less than the
+ * history window, one fewer than the number of values in the window</li>
  * </ul>
  * <p>
  * An example of the options as set out in a YAML configuration file is shown
@@ -106,6 +104,10 @@ import org.apache.log4j.Logger;
 public class LPCF_BED extends WorkflowImpl {
 
     private static final Logger LOG = Logger.getLogger(LPCF_BED.class);
+    protected int modelOrder = 0;
+    private double[] pt1;
+    private double[] pt2;
+    private double[] xNorm;
     /**
      * General constructor for LPCF_BED.
      */
@@ -164,6 +166,14 @@ public class LPCF_BED extends WorkflowImpl {
                     this.bedOutlierProbability = tempDouble;
                     this.sz_bedWindow = tempInt;
                     break;
+                case "model order":
+                    tempInt = ((Number) opts.get(k)).intValue();
+                    if (tempInt < 0) {
+                        throw new ConfigurationException(
+                                "The model order cannot be negative: " + tempInt);
+                    }
+                    this.modelOrder = tempInt;
+                    break;
                 default:
                     LOG.warn("Configuration Error - key '"+k.toString()+"' is unrecognized.");
                     break;
@@ -181,15 +191,9 @@ public class LPCF_BED extends WorkflowImpl {
      */
     @Override
     public HashMap evaluateWorkflow(int index) {
-        HashMap res = new HashMap();
-        double sum = 0.0;
+        HashMap res = this.results;
+        res.clear();
         int nzCount = this.doCalcNZCount(index);
-        distances.clear();
-        this.contributed.clear();
-        this.rawData.clear();
-        this.violations.clear();
-        this.contributed.clear();
-        this.residuals.clear();
         this.probability = Double.NaN;
         this.status = EventStatus.NORMAL;
         if (historyWindow[0].getNumElements() < sz_historyWindow) {
@@ -197,111 +201,84 @@ public class LPCF_BED extends WorkflowImpl {
         } else if (nzCount < 1) {
             this.doProcMissingData(index);
         } else {
-            double pt1[] = new double[nzCount];
-            double pt2[] = new double[nzCount];
-            double norm1[] = new double[nzCount];
-            double norm2[] = new double[nzCount];
+            double[] values = this.readRow(index);
             int ct = 0;
-            int ct2 = 0;
+            double dist = Double.NaN;
 
             // normalize data
-//            System.out.print("[");
-            for (DataChannel chan : channels) {
-                this.rawData.add(chan.getDoubleValue(index));
-                if (chan.getStatus() == DataStatus.OUT_OF_CTL_LIMIT) {
-                    this.violations.add(1);
-                    this.status = EventStatus.CHANNELS_ALARMING;
-                } else if (chan.getStatus() == DataStatus.OUT_OF_VALID_RANGE) {
-                    this.violations.add(2);
-                    this.status = EventStatus.CHANNELS_ALARMING;
-                } else if (chan.getStatus() == DataStatus.FLAGGED_BAD_QUALITY) {
-                    this.violations.add(3);
-                    this.status = EventStatus.CHANNELS_ALARMING;
-                } else {
-                    this.violations.add(0);
-                }
-                if (!Double.isNaN(chan.getDoubleValue(index)) && chan.getStatus() == DataStatus.NORMAL) {
-                    double tmpmean = nanmean(historyWindow[ct2].getElements());
-                    double tmpstd = nanstd(historyWindow[ct2].getElements(),
-                            tmpmean);
-                    norm1[ct] = tmpmean;
-                    norm2[ct] = tmpstd;
-                    if (norm2[ct] < precisions[ct2] / (outlierThreshold)) {
-                        norm2[ct] = 1.001 * precisions[ct2] / (outlierThreshold);
+            for (int ct2 = 0; ct2 < channels.size(); ct2++) {
+                DataStatus chanStatus = this.statusOf(ct2);
+                this.rawData[ct2] = values[ct2];
+                this.doCalcViolation(ct2, chanStatus);
+                if (!Double.isNaN(values[ct2]) && chanStatus == DataStatus.NORMAL) {
+                    double norm1 = this.historyMean(ct2);
+                    double norm2 = this.historyStd(ct2);
+                    if (norm2 < precisions[ct2] / (outlierThreshold)) {
+                        norm2 = 1.001 * precisions[ct2] / (outlierThreshold);
+                    }
+                    double val = values[ct2];
+                    int nw = historyWindow[ct2].getNumElements();
+                    double last = historyWindow[ct2].getElement(nw - 1);
+                    double las2 = historyWindow[ct2].getElement(nw - 2);
+                    boolean changed = ((abs(val - last) / norm2) > (precisions[ct2] + 2.0 * Double.MIN_VALUE))
+                            || ((abs(val - las2) / norm2) > (precisions[ct2] + 2.0 * Double.MIN_VALUE))
+                            || ((abs(last - las2) / norm2) > (precisions[ct2] + 2.0 * Double.MIN_VALUE));
+                    double[] a = null;
+                    int order = nw;
+                    if (modelOrder > 0 && modelOrder < order) {
+                        order = modelOrder;
                     }
-                    double val = chan.getDoubleValue(index);
-                    double last = historyWindow[ct2].getElement(
-                            historyWindow[ct2].getNumElements() - 1);
-                    double las2 = historyWindow[ct2].getElement(
-                            historyWindow[ct2].getNumElements() - 2);
-                    if (((abs(val - last) / norm2[ct]) > (precisions[ct2] + 2.0 * Double.MIN_VALUE))
-                            || ((abs(val - las2) / norm2[ct]) > (precisions[ct2] + 2.0 * Double.MIN_VALUE))
-                            || ((abs(last - las2) / norm2[ct]) > (precisions[ct2] + 2.0 * Double.MIN_VALUE))) {
-                        ResizableDoubleArray x = new ResizableDoubleArray();
-                        ResizableDoubleArray b = new ResizableDoubleArray();
-                        x.addElements(historyWindow[ct2].getElements());
-                        x.addElement(chan.getDoubleValue(index));
-                        int nx = x.getNumElements();
-                        ArrayRealVector xNorm = new ArrayRealVector(
-                                x.getElements());
-                        xNorm.mapSubtractToSelf(norm1[ct]);
-                        xNorm.mapDivideToSelf(norm2[ct]);
-                        double expected = xNorm.getEntry(nx - 1);
-                        b.addElement(1.0);
+                    if (changed) {
                         try {
-                            b.addElements(lpc(xNorm.toArray(), nx - 1));
-                            double est = predEstim(b.getElements(),
-                                    xNorm.toArray());
-                            pt1[ct] = expected;
-                            pt2[ct] = est;
-//                        System.out.print(
-//                                chan.getName() + " = " + val + ", " + (expected - est) + "; ");
+                            a = this.lpcHistory(ct2, val, norm1, norm2, order);
+                            if (a == null) {
+                                a = this.lpcWindow(ct2, val, norm1, norm2,
+                                        order);
+                            }
                         } catch (SingularMatrixException ex) {
-                            String str = "x = [";
-                            for (double el : x.getElements()) {
-                                str += " " + el + ",";
+                            if (LOG.isTraceEnabled()) {
+                                LOG.trace("Bad " + channels.get(ct2).getName()
+                                        + "- Singular Matrix: x = " + Arrays.toString(
+                                                historyWindow[ct2].getElements())
+                                        + ", " + val);
                             }
-                            str += "]";
-                            LOG.trace(
-                                    "Bad " + chan.getName() + "- Singular Matrix: " + str);//,ex);
-                            pt1[ct] = val / norm2[ct];
-                            pt2[ct] = last / norm2[ct];
+                            a = null;
                         }
+                    }
+                    if (a != null) {
+                        // predict from the window, normalized
+                        double est = 0.0;
+                        for (int i = 1; i <= order; i++) {
+                            est -= a[i - 1] * (historyWindow[ct2].getElement(
+                                    nw - i) - norm1) / norm2;
+                        }
+                        pt1[ct] = (val - norm1) / norm2;
+                        pt2[ct] = est;
                     } else {
-                        pt1[ct] = val / norm2[ct];
-                        pt2[ct] = last / norm2[ct];
+                        pt1[ct] = val / norm2;
+                        pt2[ct] = last / norm2;
                     }
                     double predErr = abs(pt2[ct] - pt1[ct]);
-                    distances.addElement(predErr);
+                    if (predErr > dist || Double.isNaN(dist)) {
+                        dist = predErr;
+                    }
                     ct++;
                 }
-                ct2++;
             }
-//            System.out.println("]");
-
-            res.put("non-zero items", MathArrays.ebeSubtract(pt1,
-                    pt2));
-            double dist = distances.compute(new Max());
 
-            ct = 0;
             if (dist < outlierThreshold) {
-                for (DataChannel chan : channels) {
-                    if (!Double.isNaN(chan.getDoubleValue(index)) && chan.getStatus() == DataStatus.NORMAL) {
-                        double val = chan.getDoubleValue(
-                                index);
-                        historyWindow[ct].addElementRolling(val);
+                for (ct = 0; ct < channels.size(); ct++) {
+                    if (!Double.isNaN(values[ct]) && this.statusOf(ct) == DataStatus.NORMAL) {
+                        this.rollHistory(ct, values[ct]);
                     } else {
-                        historyWindow[ct].addElementRolling(
-                                historyWindow[ct].getElement(
-                                        historyWindow[ct].getNumElements() - 1));
+                        this.rollHistory(ct, historyWindow[ct].getElement(
+                                historyWindow[ct].getNumElements() - 1));
                     }
-                    ct++;
                 }
                 bedWindow.addElementRolling(0);
             } else {
                 bedWindow.addElementRolling(1);
                 status = EventStatus.OUTLIER_DETECTED;
-                res.put("eventCode", EventStatus.OUTLIER_DETECTED);
             }
             /*
              * CALCULATE BED VALUES HERE
@@ -315,47 +292,63 @@ public class LPCF_BED extends WorkflowImpl {
              * DO CONTRIBUTING PARAMETER CALCULATIONS
              */
             res.put("sum", dist);
-            Object nze = res.get("non-zero items");
             ct = 0;
-            if (nze != null) {
-                double[] resids = (double[]) res.get("non-zero items");
-                for (DataChannel chan : channels) {
-                    if (!Double.isNaN(chan.getDoubleValue(index)) && chan.getStatus() == DataStatus.NORMAL) {
-                        this.residuals.add(resids[ct]);
-                        if (abs(resids[ct]) >= this.outlierThreshold) {
-                            this.contributed.add((short)1);
-                        } else {
-                            this.contributed.add((short)0);
-                        }
-                        ct++;
-                    } else if (chan.getStatus() == DataStatus.FLAGGED_BAD_QUALITY
-                            || chan.getStatus() == DataStatus.OUT_OF_CTL_LIMIT
-                            || chan.getStatus() == DataStatus.OUT_OF_VALID_RANGE) {
-                        this.residuals.add(Double.POSITIVE_INFINITY);
-                        this.contributed.add((short)2);
+            for (int i = 0; i < channels.size(); i++) {
+                DataStatus chanStatus = this.statusOf(i);
+                if (!Double.isNaN(values[i]) && chanStatus == DataStatus.NORMAL) {
+                    double resid = pt1[ct] - pt2[ct];
+                    this.residuals[i] = resid;
+                    if (abs(resid) >= this.outlierThreshold) {
+                        this.contributed[i] = 1;
                     } else {
-                        this.residuals.add(Double.NaN);
-                        this.contributed.add((short)0);
+                        this.contributed[i] = 0;
                     }
-                }
-                String resString = "[";
-                for (int jres = 0; jres < resids.length; jres++) {
-                    resString += "" + resids[jres] + ", ";
-                }
-                resString += "]";
-                res.put("non-zero items", resString);
-            } else {
-                for (DataChannel chan : channels) {
-                    this.residuals.add(Double.NaN);
-                    this.contributed.add((short)0);
+                    ct++;
+                } else if (chanStatus == DataStatus.FLAGGED_BAD_QUALITY
+                        || chanStatus == DataStatus.OUT_OF_CTL_LIMIT
+                        || chanStatus == DataStatus.OUT_OF_VALID_RANGE) {
+                    this.residuals[i] = Double.POSITIVE_INFINITY;
+                    this.contributed[i] = 2;
+                } else {
+                    this.residuals[i] = Double.NaN;
+                    this.contributed[i] = 0;
                 }
             }
+            res.put("non-zero items", this.residuals);
         }
         res.put("eventProbability", this.probability);
         res.put("eventCode", this.status);
         return res;
     }
 
+    /**
+     * Linear Predictive Coefficients of a channel's history window followed
+     * by a new value, normalized by a mean and standard deviation, found by
+     * transforming the whole series. Used when the window's sliding
+     * autocorrelation cannot be.
+     *
+     * @param channel position of the channel in #channels
+     * @param value the new value
+     * @param mean the mean to subtract
+     * @param std the standard deviation to divide by
+     * @param order number of coefficients to create
+     * @return the coefficients, in the first order entries
+     * @throws SingularMatrixException if the autocorrelation matrix is
+     * singular
+     */
+    private double[] lpcWindow(int channel, double value, double mean,
+            double std, int order) {
+        int nw = historyWindow[channel].getNumElements();
+        if (xNorm == null || xNorm.length != nw + 1) {
+            xNorm = new double[nw + 1];
+        }
+        for (int i = 0; i < nw; i++) {
+            xNorm[i] = (historyWindow[channel].getElement(i) - mean) / std;
+        }
+        xNorm[nw] = (value - mean) / std;
+        return predictor.coefficients(xNorm, order);
+    }
+
     /**
      * Initialize the LCPF with BED.
      * @throws InitializationException 
@@ -367,6 +360,17 @@ public class LPCF_BED extends WorkflowImpl {
         if (!this.checkParams()) {
             throw new InitializationException("Failed to configure all options on the workflow!");
         }        
+        int maxOrder = sz_historyWindow;
+        if (modelOrder > 0 && modelOrder < maxOrder) {
+            maxOrder = modelOrder;
+        }
+        pt1 = new double[channels.size()];
+        pt2 = new double[channels.size()];
+        historyLags = new SlidingAutocorrelation[channels.size()];
+        for (int i = 0; i < channels.size(); i++) {
+            historyLags[i] = new SlidingAutocorrelation(maxOrder,
+                    sz_historyWindow);
+        }
     }
 
     /**
@@ -21,19 +21,15 @@
 package org.canaryeds.base.workflows;
 
 import org.canaryeds.base.EventStatus;
-import static org.canaryeds.base.util.NaNMath.nanmean;
-import static org.canaryeds.base.util.NaNMath.nanstd;
+import org.canaryeds.base.util.NearestNeighborIndex;
 import org.canaryeds.base.util.WorkflowImpl;
-import gov.sandia.seme.framework.DataChannel;
 import gov.sandia.seme.framework.DataStatus;
 import gov.sandia.seme.framework.Descriptor;
 import gov.sandia.seme.framework.ConfigurationException;
 import gov.sandia.seme.framework.InitializationException;
 import java.util.HashMap;
-import org.apache.commons.math3.stat.descriptive.rank.Min;
 import static org.apache.commons.math3.util.FastMath.abs;
 import static org.apache.commons.math3.util.FastMath.max;
-import org.apache.commons.math3.util.MathArrays;
 import org.apache.log4j.Logger;
 
 /**
@@ -74,6 +70,11 @@ import org.apache.log4j.Logger;
  * calculation method. Valid strings are: {@code L1}, {@code L2} or
  * {@code Euclidean}, and {@code Linf}; see description above for meanings, if
  * omitted, the {@code Linf} method is used</li>
+ * <li><b>neighbor search:</b> string, defines how the nearest point in the
+ * history window is found. Valid strings are: {@code linear}, which checks
+ * every point; {@code kd-tree}, which keeps the history in a KD-tree; and
+ * {@code auto}, which uses a KD-tree only when the history window is long
+ * compared to the number of channels. If omitted, {@code auto} is used</li>
  * <li><b>BED:</b> mapping, of the following keys (defines the BED options,
  * which determine probability)</li>
  * <ul>
@@ -124,7 +125,12 @@ public class MVNN_BED extends WorkflowImpl {
 
     private static final Logger LOG = Logger.getLogger(MVNN_BED.class);
 
-    private int distanceType = 2;
+    private int distanceType = NearestNeighborIndex.L2;
+    private String neighborSearch = "auto";
+    private NearestNeighborIndex neighbors;
+    private double[] weights;
+    private double[] residual;
+    private double[] point;
 
     /**
      * General constructor for MVNN_BED.
@@ -182,11 +188,22 @@ public class MVNN_BED extends WorkflowImpl {
                     tempStr = (String) opts.get(k);
                     if (tempStr.equalsIgnoreCase("euclidean")
                             || tempStr.equalsIgnoreCase("L2")) {
-                        distanceType = 2;
+                        distanceType = NearestNeighborIndex.L2;
                     } else if (tempStr.equalsIgnoreCase("L1")) {
-                        distanceType = 1;
+                        distanceType = NearestNeighborIndex.L1;
                     } else {
-                        distanceType = 0;
+                        distanceType = NearestNeighborIndex.LINF;
+                    }
+                    break;
+                case "neighbor search":
+                    tempStr = ((String) opts.get(k)).toLowerCase();
+                    if (tempStr.equals("linear") || tempStr.equals("kd-tree")
+                            || tempStr.equals("auto")) {
+                        neighborSearch = tempStr;
+                    } else {
+                        LOG.warn("Unknown neighbor search '" + tempStr
+                                + "' for workflow " + this.name + "; using auto");
+                        neighborSearch = "auto";
                     }
                     break;
                 case "bed":
@@ -213,14 +230,9 @@ public class MVNN_BED extends WorkflowImpl {
      */
     @Override
     public HashMap evaluateWorkflow(int index) {
-        HashMap res = new HashMap();
-        double sum = 0.0;
+        HashMap res = this.results;
+        res.clear();
         int nzCount = this.doCalcNZCount(index);
-        distances.clear();
-        this.rawData.clear();
-        this.violations.clear();
-        this.contributed.clear();
-        this.residuals.clear();
         this.probability = Double.NaN;
         this.status = EventStatus.NORMAL;
         if (historyWindow[0].getNumElements() < sz_historyWindow) {
@@ -228,83 +240,31 @@ public class MVNN_BED extends WorkflowImpl {
         } else if (nzCount < 1) {
             this.doProcMissingData(index);
         } else {
-            double pt1[] = new double[nzCount];
-            double pt2[] = new double[nzCount];
-            double norm1[] = new double[nzCount];
-            double norm2[] = new double[nzCount];
-            int ct = 0;
-            int ct2 = 0;
-            for (DataChannel chan : channels) {
-                this.rawData.add(chan.getDoubleValue(index));
-                if (chan.getStatus() == DataStatus.OUT_OF_CTL_LIMIT) {
-                    this.violations.add(1);
-                    this.status = EventStatus.CHANNELS_ALARMING;
-                } else if (chan.getStatus() == DataStatus.OUT_OF_VALID_RANGE) {
-                    this.violations.add(2);
-                    this.status = EventStatus.CHANNELS_ALARMING;
-                } else if (chan.getStatus() == DataStatus.FLAGGED_BAD_QUALITY) {
-                    this.violations.add(3);
-                    this.status = EventStatus.CHANNELS_ALARMING;
-                } else {
-                    this.violations.add(0);
-                }
-                if (!Double.isNaN(chan.getDoubleValue(index)) && chan.getStatus() == DataStatus.NORMAL) {
-                    double tmpmean = nanmean(historyWindow[ct2].getElements());
-                    double tmpstd = nanstd(historyWindow[ct2].getElements(),
-                            tmpmean);
-                    norm1[ct] = tmpmean;
-                    norm2[ct] = tmpstd;
-                    if (norm2[ct] < precisions[ct2] / (outlierThreshold)) {
-                        norm2[ct] = 1.001 * precisions[ct2] / (outlierThreshold);
-                    }
-                    pt1[ct] = (chan.getDoubleValue(index) - norm1[ct]) / norm2[ct];
-                    ct++;
-                }
-                ct2++;
-            }
-            double curMin = Double.POSITIVE_INFINITY;
-            for (int i = 0; i < sz_historyWindow; i++) {
-                ct = 0;
-                ct2 = 0;
-
-                for (DataChannel chan : channels) {
-                    if (!Double.isNaN(chan.getDoubleValue(index)) && chan.getStatus() == DataStatus.NORMAL) {
-                        pt2[ct] = (historyWindow[ct2].getElement(i) - norm1[ct]) / norm2[ct];
-                        ct++;
-                    }
-                    ct2++;
-                }
-                double delt;
-                if (distanceType == 0) {
-                    delt = MathArrays.distanceInf(pt1, pt2);
-                } else if (distanceType == 1) {
-                    delt = MathArrays.distance1(pt1, pt2);
-                } else {
-                    delt = MathArrays.distance(pt1, pt2);
-                }
-                if (!Double.isNaN(delt)) {
-                    distances.addElement(delt);
-                    if (delt <= curMin) {
-                        curMin = delt;
-                        res.put("non-zero items", MathArrays.ebeSubtract(pt1,
-                                pt2));
+            double[] values = this.readRow(index);
+            for (int ct2 = 0; ct2 < channels.size(); ct2++) {
+                DataStatus chanStatus = this.statusOf(ct2);
+                this.rawData[ct2] = values[ct2];
+                this.doCalcViolation(ct2, chanStatus);
+                weights[ct2] = 0.0;
+                if (!Double.isNaN(values[ct2]) && chanStatus == DataStatus.NORMAL) {
+                    // the history mean cancels out of the differences
+                    double norm2 = this.historyStd(ct2);
+                    if (norm2 < precisions[ct2] / (outlierThreshold)) {
+                        norm2 = 1.001 * precisions[ct2] / (outlierThreshold);
                     }
+                    weights[ct2] = 1.0 / norm2;
                 }
             }
-            double dist = distances.compute(new Min());
-            ct = 0;
+            double dist = neighbors.nearest(values, weights, residual);
             if (dist < outlierThreshold) {
-                for (DataChannel chan : channels) {
-                    double val = chan.getDoubleValue(
-                            index);
-                    historyWindow[ct].addElementRolling(val);
-                    ct++;
+                for (int ct = 0; ct < channels.size(); ct++) {
+                    this.rollHistory(ct, values[ct]);
                 }
+                neighbors.add(values);
                 bedWindow.addElementRolling(0);
             } else {
                 bedWindow.addElementRolling(1);
                 this.status = EventStatus.OUTLIER_DETECTED;
-                res.put("eventCode", EventStatus.OUTLIER_DETECTED);
             }
 
             /*
@@ -314,50 +274,46 @@ public class MVNN_BED extends WorkflowImpl {
             /*
              * DO EVENT TIMEOUT HERE
              */
-            this.doCalcEventTimeout(index);
+            if (this.doCalcEventTimeout(index)) {
+                this.indexHistory();
+            }
             /*
              * DO CONTRIBUTING PARAMETER CALCULATIONS
              */
             res.put("sum", dist);
-            Object nze = res.get("non-zero items");
-            ct = 0;
-            if (nze != null) {
-                double[] resids = (double[]) res.get("non-zero items");
+            if (!Double.isNaN(dist)) {
                 double sumRes = 0.0;
-                for (Double r : resids) {
-                    sumRes += abs(r);
+                for (int i = 0; i < channels.size(); i++) {
+                    if (weights[i] != 0.0) {
+                        sumRes += abs(residual[i]);
+                    }
                 }
-                for (DataChannel chan : channels) {
-                    if (!Double.isNaN(chan.getDoubleValue(index)) && chan.getStatus() == DataStatus.NORMAL) {
-                        this.residuals.add(resids[ct]);
-                        if (abs(resids[ct]) >= this.outlierThreshold
-                                || (dist > outlierThreshold && abs(resids[ct]) > sumRes / (max(
+                for (int i = 0; i < channels.size(); i++) {
+                    DataStatus chanStatus = this.statusOf(i);
+                    if (weights[i] != 0.0) {
+                        this.residuals[i] = residual[i];
+                        if (abs(residual[i]) >= this.outlierThreshold
+                                || (dist > outlierThreshold && abs(residual[i]) > sumRes / (max(
                                         1.0, nzCount - 2)))) {
-                            this.contributed.add((short)1);
+                            this.contributed[i] = 1;
                         } else {
-                            this.contributed.add((short)0);
+                            this.contributed[i] = 0;
                         }
-                        ct++;
-                    } else if (chan.getStatus() == DataStatus.FLAGGED_BAD_QUALITY
-                            || chan.getStatus() == DataStatus.OUT_OF_CTL_LIMIT
-                            || chan.getStatus() == DataStatus.OUT_OF_VALID_RANGE) {
-                        this.residuals.add(Double.POSITIVE_INFINITY);
-                        this.contributed.add((short)2);
+                    } else if (chanStatus == DataStatus.FLAGGED_BAD_QUALITY
+                            || chanStatus == DataStatus.OUT_OF_CTL_LIMIT
+                            || chanStatus == DataStatus.OUT_OF_VALID_RANGE) {
+                        this.residuals[i] = Double.POSITIVE_INFINITY;
+                        this.contributed[i] = 2;
                     } else {
-                        this.residuals.add(Double.NaN);
-                        this.contributed.add((short)0);
+                        this.residuals[i] = Double.NaN;
+                        this.contributed[i] = 0;
                     }
                 }
-                String resString = "[";
-                for (int jres = 0; jres < resids.length; jres++) {
-                    resString += "" + resids[jres] + ", ";
-                }
-                resString += "]";
-                res.put("non-zero items", resString);
+                res.put("non-zero items", this.residuals);
             } else {
-                for (DataChannel chan : channels) {
-                    this.residuals.add(Double.NaN);
-                    this.contributed.add((short)0);
+                for (int i = 0; i < channels.size(); i++) {
+                    this.residuals[i] = Double.NaN;
+                    this.contributed[i] = 0;
                 }
             }
         }
@@ -386,6 +342,43 @@ public class MVNN_BED extends WorkflowImpl {
         if (!this.checkParams()) {
             throw new InitializationException("Failed to configure all options on the workflow!");
         }        
+        int nch = channels.size();
+        boolean tree = neighborSearch.equals("kd-tree")
+                || (neighborSearch.equals("auto")
+                && NearestNeighborIndex.isTreeWorthwhile(nch, sz_historyWindow));
+        neighbors = new NearestNeighborIndex(nch, sz_historyWindow,
+                distanceType, tree);
+        weights = new double[nch];
+        residual = new double[nch];
+        point = new double[nch];
+    }
+
+    @Override
+    protected void doProcInitHistoryWindow(int index) {
+        super.doProcInitHistoryWindow(index);
+        this.indexRow(historyWindow[0].getNumElements() - 1);
+    }
+
+    /**
+     * Add a row of the history windows to the neighbor index.
+     *
+     * @param i position in the history windows
+     */
+    private void indexRow(int i) {
+        for (int j = 0; j < historyWindow.length; j++) {
+            point[j] = historyWindow[j].getElement(i);
+        }
+        neighbors.add(point);
+    }
+
+    /**
+     * Rebuild the neighbor index from the history windows.
+     */
+    private void indexHistory() {
+        neighbors.clear();
+        for (int i = 0; i < historyWindow[0].getNumElements(); i++) {
+            this.indexRow(i);
+        }
     }
 
 }
@@ -23,10 +23,12 @@ package org.canaryeds.base.workflows;
 import org.canaryeds.base.EventStatus;
 import org.canaryeds.base.Workflow;
 import gov.sandia.seme.framework.DataChannel;
+import gov.sandia.seme.framework.DataStatus;
 import gov.sandia.seme.framework.Descriptor;
 import gov.sandia.seme.framework.ConfigurationException;
 import gov.sandia.seme.framework.InitializationException;
 import gov.sandia.seme.util.DescribableImpl;
+import gov.sandia.seme.util.LazyModulusMatrix;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -45,6 +47,12 @@ import java.util.HashMap;
  */
 public class SetPointProximity extends DescribableImpl implements Workflow {
 
+    // no channels are evaluated, so the result buffers stay empty
+    private final double[] rawData = new double[0];
+    private final double[] residuals = new double[0];
+    private final int[] violations = new int[0];
+    private final byte[] contributed = new byte[0];
+
     @Override
     public void addChannel(DataChannel channel) {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
@@ -55,6 +63,16 @@ public class SetPointProximity extends DescribableImpl implements Workflow {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
     }
 
+    @Override
+    public void setHistory(LazyModulusMatrix history, int[] columns) {
+        // channel values are not read from the history
+    }
+
+    @Override
+    public void setChannelStatuses(DataStatus[] statuses, int[] positions) {
+        // channel statuses are not used
+    }
+
     @Override
     public ArrayList<DataChannel> getChannels() {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
@@ -120,6 +138,26 @@ public class SetPointProximity extends DescribableImpl implements Workflow {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
     }
 
+    @Override
+    public double[] rawData() {
+        return rawData;
+    }
+
+    @Override
+    public double[] residuals() {
+        return residuals;
+    }
+
+    @Override
+    public int[] violations() {
+        return violations;
+    }
+
+    @Override
+    public byte[] contributed() {
+        return contributed;
+    }
+
     @Override
     public String[] getChannelParameters() {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.canaryeds.base;
+
+import gov.sandia.seme.framework.ConfigurationException;
+import gov.sandia.seme.framework.Controller;
+import gov.sandia.seme.framework.InitializationException;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Runs the testShortMVNN configuration in each of the optional execution
+ * modes and checks that every result written, including its event code, is
+ * the same as in the default phased run with a polling router.
+ */
+@RunWith(Parameterized.class)
+public class CANARYModesTest {
+
+    static URL stationCSV = CANARYModesTest.class.getResource(
+            "/gov/sandia/canaryeds/Tutorial_Station_B.csv");
+    static ArrayList<String> phasedResults;
+    private final String mode;
+
+    public CANARYModesTest(String mode) {
+        this.mode = mode;
+    }
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> modes() {
+        return Arrays.asList(new Object[][]{
+            {"push router"},
+            {"pipelined batch"},
+            {"work stealing"},
+            {"pipelined work stealing"},
+            {"dataflow"},
+            {"bounded queues"}
+        });
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws ConfigurationException,
+            InitializationException, IOException {
+        phasedResults = runShortMVNN(null);
+    }
+
+    /**
+     * Tests that the results match the phased run.
+     */
+    @Test
+    public void testSameResultsAsPhased() throws ConfigurationException,
+            InitializationException, IOException {
+        System.out.println("sameResultsAsPhased: " + mode);
+        ArrayList<String> results = runShortMVNN(mode);
+        assertFalse(phasedResults.isEmpty());
+        assertEquals(mode, phasedResults.size(), results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(mode, phasedResults.get(i), results.get(i));
+        }
+    }
+
+    /**
+     * Run the testShortMVNN configuration and read back its output file.
+     *
+     * @param mode the mode to switch on, or null for the defaults
+     * @return the result lines written by the CSVWriter
+     */
+    static ArrayList<String> runShortMVNN(String mode) throws
+            ConfigurationException, InitializationException, IOException {
+        File output = File.createTempFile("CANARYModesTest", ".csv");
+        output.deleteOnExit();
+        CANARY eds = new CANARY();
+        InputStream is = CANARYModesTest.class.getResource(
+                "/gov/sandia/canaryeds/testShortMVNN.yml").openStream();
+        HashMap config = eds.parseYAMLStream(is);
+        Map connections = (Map) config.get("connections");
+        HashMap stationB_In = (HashMap) ((Map) connections.get("stationb_in")).get(
+                "text.CSVReaderWide");
+        stationB_In.put("location", stationCSV);
+        HashMap stationB_Out = (HashMap) ((Map) connections.get("stationb_out")).get(
+                "text.CSVWriter");
+        stationB_Out.put("location", output.getPath());
+        HashMap stationB = (HashMap) ((Map) connections.get("StationB")).get(
+                "Station");
+        if (mode != null) {
+            switch (mode) {
+                case "push router":
+                    config.put("router mode", "push");
+                    break;
+                case "pipelined batch":
+                    HashMap batch = (HashMap) ((Map) ((Map) config.get(
+                            "controllers")).get("canary-eds")).get(
+                                    "controllers.Batch");
+                    batch.put("stepsInFlight", 3);
+                    break;
+                case "work stealing":
+                    config.put("scheduler mode", "work stealing");
+                    break;
+                case "pipelined work stealing":
+                    config.put("scheduler mode", "work stealing");
+                    HashMap stealing = (HashMap) ((Map) ((Map) config.get(
+                            "controllers")).get("canary-eds")).get(
+                                    "controllers.Batch");
+                    stealing.put("stepsInFlight", 3);
+                    break;
+                case "dataflow":
+                    config.put("execution mode", "dataflow");
+                    stationB.put("synchronize to", "all");
+                    break;
+                case "bounded queues":
+                    stationB_In.put("queue capacity", 2);
+                    stationB.put("queue capacity", 2);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown mode: " + mode);
+            }
+        }
+        eds.configure(config);
+        eds.initialize();
+        Controller ctrl = eds.getController();
+        ctrl.run();
+        eds.shutdown();
+        ArrayList<String> results = new ArrayList();
+        BufferedReader in = new BufferedReader(new FileReader(output));
+        try {
+            String line = in.readLine();
+            while (line != null) {
+                results.add(line);
+                line = in.readLine();
+            }
+        } finally {
+            in.close();
+        }
+        return results;
+    }
+
+}
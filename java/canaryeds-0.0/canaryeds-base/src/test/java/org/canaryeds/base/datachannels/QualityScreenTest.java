@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.canaryeds.base.datachannels;
+
+import gov.sandia.seme.framework.DataStatus;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class QualityScreenTest {
+
+    private static final int CHANNELS = 48;
+
+    public QualityScreenTest() {
+    }
+
+    /**
+     * The checks as made one value at a time by SCADAChannel#addNewValue.
+     */
+    private static DataStatus scalarStatus(double v, double vl, double vh,
+            double sl, double sh, boolean alarm, int abnormal) {
+        if (v > vh || v < vl) {
+            return DataStatus.OUT_OF_VALID_RANGE;
+        } else if (v > sh || v < sl) {
+            return DataStatus.OUT_OF_CTL_LIMIT;
+        } else if (Double.isNaN(v)) {
+            return DataStatus.MISSING;
+        } else if (Double.isInfinite(v)) {
+            return DataStatus.INVALID;
+        } else if (alarm && (int) v == abnormal) {
+            return DataStatus.FLAGGED_BAD_QUALITY;
+        }
+        return DataStatus.NORMAL;
+    }
+
+    private static double[] randomRow(Random rand) {
+        double[] row = new double[CHANNELS];
+        for (int i = 0; i < CHANNELS; i++) {
+            int pick = rand.nextInt(20);
+            if (pick == 0) {
+                row[i] = Double.NaN;
+            } else if (pick == 1) {
+                row[i] = rand.nextBoolean() ? Double.POSITIVE_INFINITY
+                        : Double.NEGATIVE_INFINITY;
+            } else if (pick == 2) {
+                row[i] = 1.0;
+            } else {
+                row[i] = rand.nextGaussian() * 10.0;
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Test that QualityScreen#screen gives the same statuses as the scalar
+     * checks, for a row and for single values.
+     */
+    @Test
+    public void testScreen() {
+        System.out.println("screen");
+        Random rand = new Random(3);
+        QualityScreen instance = new QualityScreen(CHANNELS);
+        double[][] limits = new double[CHANNELS][4];
+        for (int i = 0; i < CHANNELS; i++) {
+            // every fourth channel has no limits, every fifth is an alarm
+            if (i % 4 != 0) {
+                limits[i] = new double[]{-25.0, 25.0, -15.0, 15.0};
+            } else {
+                limits[i] = new double[]{Double.NEGATIVE_INFINITY,
+                    Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                    Double.POSITIVE_INFINITY};
+            }
+            instance.setLimits(i, limits[i][0], limits[i][1], limits[i][2],
+                    limits[i][3]);
+            if (i % 5 == 0) {
+                instance.setAlarmValue(i, 1.0);
+            }
+        }
+        DataStatus[] out = new DataStatus[CHANNELS];
+        for (int step = 0; step < 200; step++) {
+            double[] row = randomRow(rand);
+            instance.screen(row, out);
+            for (int i = 0; i < CHANNELS; i++) {
+                DataStatus expected = scalarStatus(row[i], limits[i][0],
+                        limits[i][1], limits[i][2], limits[i][3], i % 5 == 0, 1);
+                assertEquals(expected, out[i]);
+                assertEquals(expected, QualityScreen.screen(row[i],
+                        limits[i][0], limits[i][1], limits[i][2], limits[i][3],
+                        i % 5 == 0 ? 1.0 : Double.NaN));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.canaryeds.base.text;
+
+import gov.sandia.seme.framework.Descriptor;
+import gov.sandia.seme.framework.InputConnection;
+import gov.sandia.seme.framework.Message;
+import gov.sandia.seme.framework.MessageRouter;
+import gov.sandia.seme.framework.Step;
+import gov.sandia.seme.framework.ValueMessage;
+import gov.sandia.seme.util.DateTimeStep;
+import gov.sandia.seme.util.MessagableImpl;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import static org.junit.Assert.assertEquals;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CSVReaderQueueTest {
+
+    private static final String FORMAT = "yyyy-MM-dd HH:mm:ss";
+    private static final String[] TAGS = {"A", "B", "C", "D", "E"};
+    private static final int ROWS = 30;
+    private static File csv;
+    private static int values = 0;
+
+    public CSVReaderQueueTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        csv = File.createTempFile("CSVReaderQueueTest", ".csv");
+        SimpleDateFormat fmt = new SimpleDateFormat(FORMAT);
+        FileWriter out = new FileWriter(csv);
+        out.write("TIME_STEP");
+        for (String tag : TAGS) {
+            out.write("," + tag);
+        }
+        out.write("\n");
+        for (int r = 0; r < ROWS; r++) {
+            out.write(fmt.format(new Date(r * 60000L)));
+            for (int c = 0; c < TAGS.length; c++) {
+                // Leave a gap now and then so that rows differ in size
+                if ((r + c) % 7 == 0) {
+                    out.write(",");
+                } else {
+                    out.write("," + (r * 10 + c));
+                    values++;
+                }
+            }
+            out.write("\n");
+        }
+        out.close();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        csv.delete();
+    }
+
+    /**
+     * Test that queues smaller than one Step's fan-out deliver the same
+     * values, at the same Steps, as unbounded queues, both when the reader is
+     * asked for each Step and when it reads ahead.
+     */
+    @Test
+    public void testWideBoundedQueues() throws Exception {
+        System.out.println("CSVReaderWide bounded queues");
+        ArrayList<String> expected = replay(new CSVReaderWide(), 0, false);
+        assertEquals(values, expected.size());
+        assertEquals(expected, replay(new CSVReaderWide(), 2, false));
+        assertEquals(expected, replay(new CSVReaderWide(), 0, true));
+        assertEquals(expected, replay(new CSVReaderWide(), 2, true));
+    }
+
+    /**
+     * Test that queues smaller than one Step's fan-out deliver the same
+     * values, at the same Steps, as unbounded queues for the tall reader,
+     * which sends one message per value.
+     */
+    @Test
+    public void testTallBoundedQueues() throws Exception {
+        System.out.println("CSVReaderTall bounded queues");
+        ArrayList<String> expected = replay(new CSVReaderTall(), 0, false);
+        assertEquals(values, expected.size());
+        assertEquals(expected, replay(new CSVReaderTall(), 2, false));
+        assertEquals(expected, replay(new CSVReaderTall(), 0, true));
+        assertEquals(expected, replay(new CSVReaderTall(), 2, true));
+    }
+
+    /**
+     * Run the reader and a consumer of every tag through the router one Step
+     * at a time, as the Engine's phases do.
+     *
+     * @param reader a new reader
+     * @param capacity the queue capacity, or 0 for unbounded queues
+     * @param readAhead use the reader's read-ahead call instead of the
+     * per-Step call
+     * @return "evaluated step/message step/tag=value" for each value drained
+     */
+    private ArrayList<String> replay(InputConnection reader, int capacity,
+            boolean readAhead) throws Exception {
+        HashMap options = new HashMap();
+        options.put("location", csv.getAbsolutePath());
+        options.put("step field", "TIME_STEP");
+        if (capacity > 0) {
+            options.put("queue capacity", capacity);
+        }
+        Descriptor desc = new Descriptor("MESSAGABLE", "input",
+                reader.getClass().getSimpleName(), options);
+        Recorder sink = new Recorder();
+        for (String tag : TAGS) {
+            desc.addToProducesTags(tag);
+            sink.addConsumes(tag);
+        }
+        if (capacity > 0) {
+            sink.setQueueCapacity(capacity);
+        }
+        reader.configure(desc);
+        reader.setBaseStep(step(0));
+        reader.initialize();
+        MessageRouter router = new MessageRouter();
+        router.addNode(reader);
+        router.addNode(sink);
+        ArrayList<String> drained = new ArrayList();
+        for (int r = 0; r < ROWS; r++) {
+            Step step = step(r);
+            reader.setCurrentStep(step);
+            if (readAhead) {
+                reader.readInputAndProduceMessages();
+            } else {
+                reader.readInputAndProduceMessages(step);
+            }
+            router.setDeliveryStep(step);
+            router.run();
+            ArrayList<Message> received = new ArrayList();
+            sink.drainMessagesFromInbox(step, received);
+            for (Message m : received) {
+                drained.add(step.getIndex() + "/" + m.getStep().getIndex()
+                        + "/" + m.getTag() + "=" + ((ValueMessage) m).getValue());
+            }
+        }
+        return drained;
+    }
+
+    private static Step step(int minute) {
+        return new DateTimeStep(new Date(0), new Date(60000L),
+                new Date(minute * 60000L), FORMAT);
+    }
+
+    /**
+     * A connection which only collects what is delivered to it.
+     */
+    private static class Recorder extends MessagableImpl {
+
+        Recorder() {
+            super("sink", 0);
+        }
+    }
+}
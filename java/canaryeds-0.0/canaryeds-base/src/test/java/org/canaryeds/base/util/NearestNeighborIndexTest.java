@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.canaryeds.base.util;
+
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class NearestNeighborIndexTest {
+
+    public NearestNeighborIndexTest() {
+    }
+
+    /**
+     * Brute-force search over the normalized points, keeping the last of
+     * equally near rows, as MVNN_BED did before the index.
+     */
+    private static double scan(double[][] rows, int first, int count,
+            double[] point, double[] weights, int type, double[] residual) {
+        double curMin = Double.POSITIVE_INFINITY;
+        boolean found = false;
+        for (int i = first; i < count; i++) {
+            double acc = 0.0;
+            for (int j = 0; j < point.length; j++) {
+                if (weights[j] == 0) {
+                    continue;
+                }
+                double d = Math.abs(point[j] - rows[i][j]) * weights[j];
+                if (type == NearestNeighborIndex.L2) {
+                    acc += d * d;
+                } else if (type == NearestNeighborIndex.L1) {
+                    acc += d;
+                } else {
+                    acc = Math.max(acc, d);
+                }
+            }
+            if (type == NearestNeighborIndex.L2) {
+                acc = Math.sqrt(acc);
+            }
+            if (!Double.isNaN(acc) && acc <= curMin) {
+                curMin = acc;
+                found = true;
+                for (int j = 0; j < point.length; j++) {
+                    residual[j] = (point[j] - rows[i][j]) * weights[j];
+                }
+            }
+        }
+        return found ? curMin : Double.NaN;
+    }
+
+    private void check(int type, boolean tree) {
+        int dims = 4;
+        int size = 500;
+        Random rand = new Random(23 + type);
+        NearestNeighborIndex instance = new NearestNeighborIndex(dims, size,
+                type, tree);
+        assertEquals(tree, instance.isTree());
+        double[][] rows = new double[3000][dims];
+        double[] weights = new double[dims];
+        double[] expRes = new double[dims];
+        double[] res = new double[dims];
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < dims; j++) {
+                // coarse values so that ties occur
+                rows[i][j] = 100.0 * j + Math.round(rand.nextGaussian() * 4.0);
+            }
+            if (rand.nextInt(50) == 0) {
+                rows[i][rand.nextInt(dims)] = Double.NaN;
+            }
+            if (i > 10 && i % 7 == 0) {
+                double[] point = new double[dims];
+                for (int j = 0; j < dims; j++) {
+                    point[j] = 100.0 * j + rand.nextGaussian() * 4.0;
+                    weights[j] = 0.2 + rand.nextDouble();
+                }
+                if (rand.nextBoolean()) {
+                    weights[rand.nextInt(dims)] = 0.0;
+                    point[0] = weights[0] == 0.0 ? Double.NaN : point[0];
+                }
+                if (rand.nextInt(5) == 0) {
+                    point = rows[i - 1 - rand.nextInt(10)].clone();
+                    for (int j = 0; j < dims; j++) {
+                        if (Double.isNaN(point[j])) {
+                            point[j] = 0.0;
+                        }
+                    }
+                }
+                int first = Math.max(0, i - size);
+                double expected = scan(rows, first, i, point, weights, type,
+                        expRes);
+                double actual = instance.nearest(point, weights, res);
+                assertEquals(expected, actual, 1e-12);
+                for (int j = 0; j < dims; j++) {
+                    if (weights[j] != 0.0) {
+                        assertEquals(expRes[j], res[j], 1e-12);
+                    } else {
+                        assertTrue(Double.isNaN(res[j]));
+                    }
+                }
+            }
+            instance.add(rows[i]);
+            if (i == 2000) {
+                // reload, as after an event timeout
+                instance.clear();
+                for (int k = i + 1 - size; k <= i; k++) {
+                    instance.add(rows[k]);
+                }
+            }
+        }
+        assertEquals(size, instance.size());
+    }
+
+    /**
+     * Test that scans and KD-tree searches match a brute-force search for
+     * each distance type.
+     */
+    @Test
+    public void testNearest() {
+        System.out.println("nearest");
+        for (int type = 0; type <= 2; type++) {
+            check(type, false);
+            check(type, true);
+        }
+    }
+
+    /**
+     * Test that a point with no usable rows has no nearest neighbor.
+     */
+    @Test
+    public void testNoNeighbor() {
+        System.out.println("nearest (none)");
+        NearestNeighborIndex instance = new NearestNeighborIndex(2, 5,
+                NearestNeighborIndex.L2, true);
+        double[] weights = new double[]{1.0, 1.0};
+        assertTrue(Double.isNaN(instance.nearest(new double[]{0, 0}, weights,
+                null)));
+        instance.add(new double[]{Double.NaN, 1.0});
+        assertTrue(Double.isNaN(instance.nearest(new double[]{0, 0}, weights,
+                null)));
+        assertEquals(1.0, instance.nearest(new double[]{0, 0},
+                new double[]{0.0, 1.0}, null), 0.0);
+        assertFalse(NearestNeighborIndex.isTreeWorthwhile(8, 1440));
+        assertTrue(NearestNeighborIndex.isTreeWorthwhile(3, 1440));
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.canaryeds.base.util;
+
+import java.util.Random;
+import static org.canaryeds.base.util.NaNMath.nanmean;
+import static org.canaryeds.base.util.NaNMath.nanstd;
+import org.apache.commons.math3.util.ResizableDoubleArray;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class RollingMomentsTest {
+
+    public RollingMomentsTest() {
+    }
+
+    /**
+     * Test that rolling moments follow NaNMath#nanmean and #nanstd over a
+     * sliding window containing NaNs and an offset level.
+     */
+    @Test
+    public void testRolling() {
+        System.out.println("rolling mean/std");
+        int size = 1440;
+        Random rand = new Random(7);
+        ResizableDoubleArray window = new ResizableDoubleArray(size);
+        RollingMoments instance = new RollingMoments(size);
+        for (int i = 0; i < size; i++) {
+            double value = 1000.0 + rand.nextGaussian();
+            window.addElement(value);
+            instance.add(value);
+        }
+        for (int i = 0; i < 10 * size; i++) {
+            double value = rand.nextInt(50) == 0 ? Double.NaN
+                    : 1000.0 + rand.nextGaussian() * (1 + i / size);
+            instance.remove(window.addElementRolling(value));
+            instance.add(value);
+            if (instance.isStale()) {
+                instance.recompute(window.getElements());
+                assertFalse(instance.isStale());
+            }
+            if (i % 97 == 0) {
+                double mean = nanmean(window.getElements());
+                assertEquals(mean, instance.getMean(), 1e-9);
+                assertEquals(nanstd(window.getElements(), mean),
+                        instance.getStd(), 1e-9);
+            }
+        }
+    }
+
+    /**
+     * Test of the empty and single-value cases.
+     */
+    @Test
+    public void testFewValues() {
+        System.out.println("few values");
+        RollingMoments instance = new RollingMoments(2);
+        assertTrue(Double.isNaN(instance.getMean()));
+        instance.add(Double.NaN);
+        assertEquals(0, instance.getCount());
+        instance.add(3.0);
+        assertEquals(3.0, instance.getMean(), 0.0);
+        assertEquals(0.0, instance.getStd(), 0.0);
+        instance.add(5.0);
+        assertTrue(instance.isStale());
+        assertEquals(Math.sqrt(2.0), instance.getStd(), 1e-12);
+        instance.remove(3.0);
+        instance.remove(5.0);
+        assertTrue(Double.isNaN(instance.getMean()));
+    }
+
+}
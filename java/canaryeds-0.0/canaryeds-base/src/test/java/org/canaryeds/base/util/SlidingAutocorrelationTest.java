@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.canaryeds.base.util;
+
+import java.util.Random;
+import org.apache.commons.math3.util.ResizableDoubleArray;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class SlidingAutocorrelationTest {
+
+    public SlidingAutocorrelationTest() {
+    }
+
+    private static double[] expected(ResizableDoubleArray window, double value,
+            double mean, double std, int order) {
+        int w = window.getNumElements();
+        double[] x = new double[w + 1];
+        for (int i = 0; i < w; i++) {
+            x[i] = (window.getElement(i) - mean) / std;
+        }
+        x[w] = (value - mean) / std;
+        return new LinearPredictor().autocorrelation(x, order);
+    }
+
+    /**
+     * Test that the sliding sums give the autocorrelation of the normalized
+     * window and next value while the window slides over an offset level.
+     */
+    @Test
+    public void testRolling() {
+        System.out.println("sliding autocorrelation");
+        int size = 60;
+        int maxLag = 20;
+        Random rand = new Random(11);
+        ResizableDoubleArray window = new ResizableDoubleArray(size);
+        SlidingAutocorrelation instance = new SlidingAutocorrelation(maxLag,
+                size);
+        double[] out = null;
+        for (int i = 0; i < 1000; i++) {
+            double value = 5000.0 + 10.0 * Math.sin(i / 7.0)
+                    + rand.nextGaussian();
+            if (window.getNumElements() < size) {
+                window.addElement(value);
+                instance.append(window);
+            } else {
+                double dropped = window.addElementRolling(value);
+                instance.roll(window, dropped);
+            }
+            if (instance.isStale()) {
+                instance.recompute(window);
+            }
+            if (window.getNumElements() > maxLag && i % 13 == 0) {
+                double next = 5000.0 + 10.0 * Math.sin((i + 1) / 7.0);
+                double mean = 4990.0 + rand.nextDouble() * 20.0;
+                double std = 5.0 + rand.nextDouble();
+                for (int order : new int[]{maxLag, 3}) {
+                    out = instance.autocorrelation(window, next, mean, std,
+                            order, out);
+                    double[] r = expected(window, next, mean, std, order);
+                    for (int k = 0; k <= order; k++) {
+                        assertEquals(r[k], out[k], 1e-8 * Math.abs(r[0]));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that a NaN in the window makes the sums invalid until it has left
+     * the window.
+     */
+    @Test
+    public void testNaN() {
+        System.out.println("sliding autocorrelation (NaN)");
+        int size = 10;
+        ResizableDoubleArray window = new ResizableDoubleArray(size);
+        SlidingAutocorrelation instance = new SlidingAutocorrelation(4, 1000);
+        for (int i = 0; i < size; i++) {
+            window.addElement(i % 3);
+            instance.append(window);
+        }
+        assertTrue(instance.isValid());
+        instance.roll(window, window.addElementRolling(Double.NaN));
+        assertFalse(instance.isValid());
+        for (int i = 0; i < size - 1; i++) {
+            instance.roll(window, window.addElementRolling(i % 4));
+            assertFalse(instance.isValid());
+        }
+        instance.roll(window, window.addElementRolling(1.0));
+        assertTrue(instance.isValid());
+        assertTrue(instance.isStale());
+        instance.recompute(window);
+        assertFalse(instance.isStale());
+        double[] out = instance.autocorrelation(window, 2.0, 1.0, 1.0, 4, null);
+        double[] r = expected(window, 2.0, 1.0, 1.0, 4);
+        for (int k = 0; k <= 4; k++) {
+            assertEquals(r[k], out[k], 1e-12);
+        }
+    }
+
+}
@@ -19,10 +19,17 @@ import org.canaryeds.base.util.WorkflowImpl;
 import gov.sandia.seme.framework.Descriptor;
 import gov.sandia.seme.framework.ConfigurationException;
 import java.util.HashMap;
+import java.util.Random;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.CholeskyDecomposition;
+import org.apache.commons.math3.linear.SingularMatrixException;
 import static org.apache.commons.math3.util.FastMath.abs;
 import org.junit.After;
 import org.junit.AfterClass;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -157,6 +164,50 @@ public class WorkflowImplTest {
         }
     }
 
+    /**
+     * Test of WorkflowImpl#lpc with fewer coefficients than values, against
+     * a Cholesky solution of the autocorrelation equations, and with a series
+     * for which they are singular.
+     */
+    @Test
+    public void testLpcOrder() {
+        System.out.println("lpc (model order)");
+        Random rand = new Random(11);
+        double[] x = new double[300];
+        for (int i = 2; i < x.length; i++) {
+            x[i] = 0.6 * x[i - 1] - 0.3 * x[i - 2] + rand.nextGaussian();
+        }
+        int N = 12;
+        double[] r = new double[N + 1];
+        for (int lag = 0; lag <= N; lag++) {
+            for (int i = lag; i < x.length; i++) {
+                r[lag] += x[i] * x[i - lag];
+            }
+        }
+        double[][] Y = new double[N][N];
+        double[] b = new double[N];
+        for (int i = 0; i < N; i++) {
+            b[i] = -r[i + 1];
+            for (int j = 0; j < N; j++) {
+                Y[i][j] = r[abs(i - j)];
+            }
+        }
+        double[] expResult = new CholeskyDecomposition(
+                new Array2DRowRealMatrix(Y)).getSolver().solve(
+                        new ArrayRealVector(b)).toArray();
+        WorkflowImplImpl instance = new WorkflowImplImpl();
+        double[] result = instance.lpc(x, N);
+        assertEquals(N, result.length);
+        for (int i = 0; i < N; i++) {
+            assertEquals(expResult[i], result[i], 1e-9);
+        }
+        try {
+            instance.lpc(new double[20], 5);
+            fail("Expected a SingularMatrixException");
+        } catch (SingularMatrixException ex) {
+        }
+    }
+
     /**
      * Test of WorkflowImpl#predEstim method.
      */
@@ -234,6 +285,32 @@ public class WorkflowImplTest {
         assertEquals(expResult, result, 1e-6);
     }
 
+    /**
+     * Test that the boxed channel getters copy the primitive result buffers.
+     */
+    @Test
+    public void testResultBuffers() {
+        System.out.println("result buffers");
+        WorkflowImplImpl instance = new WorkflowImplImpl();
+        assertEquals(0, instance.getChannelResiduals().length);
+        instance.rawData = new double[]{1.5, Double.NaN};
+        instance.residuals = new double[]{0.25, Double.POSITIVE_INFINITY};
+        instance.contributed = new byte[]{1, 2};
+        instance.violations = new int[]{0, 3};
+        assertSame(instance.residuals, instance.residuals());
+        assertSame(instance.contributed, instance.contributed());
+        Double[] raw = instance.getChannelRawData();
+        Double[] resids = instance.getChannelResiduals();
+        Short[] contrib = instance.getChannelContributed();
+        Integer[] viol = instance.getChannelViolations();
+        for (int i = 0; i < 2; i++) {
+            assertEquals(instance.rawData()[i], raw[i], 0.0);
+            assertEquals(instance.residuals()[i], resids[i], 0.0);
+            assertEquals(instance.contributed()[i], contrib[i].shortValue());
+            assertEquals(instance.violations()[i], viol[i].intValue());
+        }
+    }
+
     private class WorkflowImplImpl extends WorkflowImpl {
 
         @Override
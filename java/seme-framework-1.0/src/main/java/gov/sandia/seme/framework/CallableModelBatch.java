@@ -0,0 +1,74 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import org.apache.log4j.Logger;
+
+/**
+ * A Callable class that evaluates a group of ModelConnection objects one after
+ * the other on the same worker thread, timing each one into a TaskCostModel.
+ * The Engine uses this in SchedulerMode#WORK_STEALING, where cheap models are
+ * batched so that the per-task overhead does not dominate their run time, and
+ * expensive models are run as batches of one.
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public final class CallableModelBatch implements Callable<String> {
+
+    private static final Logger LOG = Logger.getLogger(CallableModelBatch.class);
+    private final List<ModelConnection> models;
+    private final TaskCostModel costs;
+
+    /**
+     * Create a new Callable based on a list of ModelConnection objects.
+     * @param models ModelConnection objects to run, in order
+     * @param costs cost model to record the execution times into
+     */
+    public CallableModelBatch(List<ModelConnection> models, TaskCostModel costs) {
+        this.models = models;
+        this.costs = costs;
+    }
+
+    @Override
+    public final String call() throws Exception {
+        String res = "Results: ";
+        for (ModelConnection conn : this.models) {
+            long start = System.nanoTime();
+            try {
+                int status = conn.evaluateModel();
+                res += conn.getName() + "[ ";
+                for (String s : conn.parseStatusCode(status)) {
+                    res += s + " ";
+                }
+                res += "] ";
+            } catch (Exception ex) {
+                LOG.error("Error evaluating model " + conn.getName(), ex);
+                res += conn.getName() + "[ ERROR ] ";
+            }
+            this.costs.record(conn.getName(), System.nanoTime() - start);
+        }
+        return res;
+    }
+
+}
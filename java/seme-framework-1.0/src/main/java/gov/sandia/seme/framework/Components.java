@@ -21,6 +21,9 @@
 package gov.sandia.seme.framework;
 
 import gov.sandia.seme.util.ControllerImpl;
+import gov.sandia.seme.util.LazyModulusMatrix;
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.concurrent.Callable;
@@ -46,6 +49,80 @@ import org.apache.log4j.Logger;
 public class Components {
 
     private static final Logger LOG = Logger.getLogger(Components.class);
+    private HistoryStorage historyStorage = HistoryStorage.HEAP;
+    private File historyDirectory = null;
+
+    /**
+     * Get where channel histories created by #newHistory are stored.
+     *
+     * @return the history storage type
+     */
+    public HistoryStorage getHistoryStorage() {
+        return historyStorage;
+    }
+
+    /**
+     * Set where channel histories created by #newHistory are stored.
+     *
+     * @param storage the history storage type
+     */
+    public void setHistoryStorage(HistoryStorage storage) {
+        this.historyStorage = storage == null ? HistoryStorage.HEAP : storage;
+    }
+
+    /**
+     * Get the directory for HistoryStorage#MAPPED files.
+     *
+     * @return the directory, or null for the system temporary directory
+     */
+    public File getHistoryDirectory() {
+        return historyDirectory;
+    }
+
+    /**
+     * Set the directory for HistoryStorage#MAPPED files.
+     *
+     * @param directory the directory, or null for the system temporary
+     * directory
+     */
+    public void setHistoryDirectory(File directory) {
+        this.historyDirectory = directory;
+    }
+
+    /**
+     * Factory to create the shared value history for a set of data channels,
+     * using the configured HistoryStorage.
+     *
+     * @param columns the number of channels
+     * @param frameSize the number of steps held
+     * @return the new history
+     * @throws InitializationException if the storage cannot be allocated, or
+     * DIRECT storage would exceed the JVM's direct memory limit
+     */
+    public LazyModulusMatrix newHistory(int columns, int frameSize)
+            throws InitializationException {
+        if (historyStorage == HistoryStorage.DIRECT) {
+            long bytes = 8L * Math.max(columns, 1) * Math.max(frameSize, 1);
+            long limit = HistoryStorage.maxDirectMemory();
+            long used = HistoryStorage.directMemoryUsed();
+            if (used + bytes > limit) {
+                throw new InitializationException("Failed to allocate "
+                        + historyStorage + " history of " + columns
+                        + " channels by " + frameSize + " steps: " + bytes
+                        + " bytes requested, " + (limit - used) + " of the "
+                        + limit + " byte direct memory limit available"
+                        + " (see -XX:MaxDirectMemorySize)");
+            }
+        }
+        try {
+            return historyStorage.newHistory(columns, frameSize,
+                    historyDirectory);
+        } catch (IOException | IllegalArgumentException ex) {
+            throw new InitializationException("Failed to allocate "
+                    + historyStorage + " history of " + columns + " channels by "
+                    + frameSize + " steps: " + ex.getMessage());
+        }
+    }
 
     /**
      * Factory to create a new Controller. This method should be overridden by
@@ -50,6 +50,14 @@ public interface DataChannel extends Describable {
      */
     void addNewValue(Object value, Step step);
 
+    /**
+     * Add a new numeric value to the channel without boxing it.
+     *
+     * @param value the value to be added at the index provided in the step
+     * @param step the step that the value is aligned with
+     */
+    void addNewValue(double value, Step step);
+
     /**
      * Add a value to the requires array.
      *
@@ -95,6 +103,27 @@ public interface DataChannel extends Describable {
      */
     double getDoubleValue(int index);
 
+    /**
+     * Copy the double values for a range of indices into an array, oldest
+     * first. Values that are not available are copied as
+     * Double.NEGATIVE_INFINITY, as getDoubleValue would return them.
+     *
+     * @param fromIndex first Step index to copy
+     * @param toIndex last Step index to copy
+     * @param dest the array to fill
+     * @param offset position in dest of the first value
+     */
+    void copyWindow(int fromIndex, int toIndex, double[] dest, int offset);
+
+    /**
+     * Get a read-only view of the double values for a range of indices.
+     *
+     * @param fromIndex first Step index in the window
+     * @param toIndex last Step index in the window
+     * @return the window, or null if the range is no longer available
+     */
+    DataWindow getWindow(int fromIndex, int toIndex);
+
     /**
      * Get the integer value associated with an index.
      *
@@ -0,0 +1,74 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+/**
+ * Read-only view of a range of a data channel's recent values, oldest first.
+ * A window reads the channel's storage directly rather than copying it, so
+ * values that are changed while the window is held are seen through it; a
+ * window should be used straight away, before the channel moves on past its
+ * first index.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public interface DataWindow {
+
+    /**
+     * Get the Step index of the first (oldest) value.
+     *
+     * @return the first index
+     */
+    int getFirstIndex();
+
+    /**
+     * Get the Step index of the last (newest) value.
+     *
+     * @return the last index
+     */
+    int getLastIndex();
+
+    /**
+     * Get the number of values in the window.
+     *
+     * @return the number of values
+     */
+    int size();
+
+    /**
+     * Get a value by its position in the window.
+     *
+     * @param position position of the value, 0 for the oldest
+     * @return the value
+     * @throws IndexOutOfBoundsException if the position is not in the window
+     */
+    double get(int position);
+
+    /**
+     * Copy every value in the window into an array, oldest first.
+     *
+     * @param dest the array to fill
+     * @param offset position in dest of the first value
+     */
+    void copyTo(double[] dest, int offset);
+
+}
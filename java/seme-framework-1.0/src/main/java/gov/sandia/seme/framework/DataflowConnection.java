@@ -0,0 +1,63 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+/**
+ * Interface for ModelConnection objects that can tell the Engine when all of
+ * the data they need for a step has arrived. In ExecutionMode#DATAFLOW the
+ * Engine registers a DataflowListener with #notifyWhenReady at the start of
+ * each step and starts the model from the callback, rather than waiting for
+ * every input connection to finish.
+ *
+ * The connection decides what it needs for a step. Messages it does not wait
+ * for may arrive after it has started; it must not credit them to the step it
+ * has already evaluated.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public interface DataflowConnection {
+
+    /**
+     * Check whether everything required to evaluate a step has been delivered
+     * to this connection's inbox. This is called from the Engine's thread
+     * while messages are being routed, and must not block.
+     *
+     * @param step the step to be evaluated
+     * @return true if the step can be evaluated now; false if the connection
+     * should wait for the end of the input phase
+     */
+    public boolean isReadyForStep(Step step);
+
+    /**
+     * Ask to be told when this connection becomes ready for a step. The
+     * listener is called at most once: straight away, on the calling thread,
+     * if the connection is already ready, or otherwise from the thread that
+     * delivers the last message needed. A later call replaces the listener,
+     * and a null listener cancels it.
+     *
+     * @param step the step to be evaluated
+     * @param listener the listener, or null to cancel
+     */
+    public void notifyWhenReady(Step step, DataflowListener listener);
+
+}
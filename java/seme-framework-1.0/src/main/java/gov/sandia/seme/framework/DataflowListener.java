@@ -0,0 +1,45 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+/**
+ * Receives notification that a DataflowConnection has everything it needs to
+ * evaluate a step. The Engine registers a listener on each such model at the
+ * start of a step in ExecutionMode#DATAFLOW and starts the model from the
+ * callback, so that no thread has to poll for readiness.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public interface DataflowListener {
+
+    /**
+     * Called once when the connection becomes ready for the step. This is
+     * usually called on the thread delivering the last message the connection
+     * was waiting for (the router's), and must not block.
+     *
+     * @param connection the connection which is ready
+     * @param step the step it is ready to evaluate
+     */
+    public void readyForStep(DataflowConnection connection, Step step);
+
+}
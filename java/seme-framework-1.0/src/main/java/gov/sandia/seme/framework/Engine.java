@@ -23,16 +23,20 @@ package gov.sandia.seme.framework;
 import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
 
@@ -55,7 +59,11 @@ import org.apache.log4j.Logger;
  * MessageRouter class is virtually invisible to the applications that use the
  * framework; this is deliberate. In addition, the MessageRouter also has a
  * dedicated, single-thread ScheduledExecutorService (SES). The default timing
- * for this SES is a one microsecond delay between routing runs.
+ * for this SES is a one microsecond delay between routing runs; alternatively,
+ * the router can be run in RouterMode#PUSH, where it only routes when messages
+ * are posted and otherwise sleeps. The Engine does
+ * not poll the router; between phases it blocks on the task Futures and then
+ * on MessageRouter#awaitRoutingPass.
  * 
  * The worker tasks are created from Messagable *-Connection objects, and are
  * submitted to the workerService by the Engine's call() function. The call
@@ -95,15 +103,20 @@ public class Engine implements Serializable {
     private static final ResourceBundle messages = java.util.ResourceBundle.getBundle(
             "gov.sandia.seme.app");
     static final long serialVersionUID = 5022341466097556437L;
+    private static final int BATCHES_PER_THREAD = 4;
 
     protected Components componentFactory;
     protected Controller controller;
-    protected Step currentStep;
+    protected volatile Step currentStep;
     protected int maxThreads = 4;
     protected final ArrayList<Messagable> Messagables;
     protected final MessageRouter router;
     protected final ScheduledExecutorService routerService;
-    protected ScheduledFuture routerTask;
+    protected Future routerTask;
+    protected RouterMode routerMode = RouterMode.POLLING;
+    protected SchedulerMode schedulerMode = SchedulerMode.FIXED;
+    protected ExecutionMode executionMode = ExecutionMode.PHASED;
+    protected final TaskCostModel modelCosts = new TaskCostModel();
     protected String usedControllerName;
     protected ExecutorService workerService;
 
@@ -230,10 +243,8 @@ public class Engine implements Serializable {
         modelTasks = new HashMap();
         unknownTasks = new HashMap();
 
-        boolean allDone;
-        long routerExecutions;
-
         LOG.debug("Running on current step: " + currentStep);
+        this.router.setDeliveryStep(currentStep);
 
     // For each of the input connections registered in the router,
         //  set the current step
@@ -249,63 +260,35 @@ public class Engine implements Serializable {
             inputTasks.put(taskName, result);
             LOG.trace("Submitted input task: " + taskName);
         }
-        allDone = false;
-        routerExecutions = this.router.getIterations();
-    // Wait for at least one router execution after all submitted tasks have
-        //  completed execution
-        while (!allDone) {
-            allDone = true;
-            for (String key : inputTasks.keySet()) {
-                Future<String> result = inputTasks.get(key);
-                allDone = allDone && result.isDone();
-            }
-            allDone = allDone && (routerExecutions < this.router.getIterations());
-        }
-    // Read the results from each of the input tasks and log the result if
-        //  the debug level is set high enough
-        for (String key : inputTasks.keySet()) {
-            Future<String> result = inputTasks.get(key);
-            try {
-                LOG.trace("Result from input task " + key + " = " + result.get());
-            } catch (InterruptedException | ExecutionException ex) {
-                LOG.error(null, ex);
-            }
-        }
-
-    // For each of the model connections registered in the router,
-        //  set the current step
-        //  create a new model task object
-        //  submit the new model task object
-        //  register the result Future in the results map
-        for (ModelConnection task : regModels) {
-            String taskName = task.getName();
-            task.setCurrentStep(currentStep);
-            //task.step(currentStep);
-            Future<String> result;
-            result = this.workerService.submit(Components.newModelTask(task));
-            modelTasks.put(taskName, result);
-            LOG.trace("Submitted model task: " + taskName);
-        }
-        allDone = false;
-        routerExecutions = this.router.getIterations();
-    // Wait for at least one router execution after all submitted tasks have
-        //  completed execution
-        while (!allDone) {
-            allDone = true;
-            for (String key : modelTasks.keySet()) {
-                Future<String> result = modelTasks.get(key);
-                allDone = allDone && result.isDone();
-            }
-            allDone = allDone && (routerExecutions < this.router.getIterations());
-        }
-        for (String key : modelTasks.keySet()) {
-            Future<String> result = modelTasks.get(key);
-            try {
-                LOG.trace("Result from model task " + key + " = " + result.get());
-            } catch (InterruptedException | ExecutionException ex) {
-                LOG.error(null, ex);
+        if (this.executionMode == ExecutionMode.DATAFLOW) {
+            // Start each model as soon as its own inputs have arrived; the
+            //  rest are started at the input phase barrier
+            this.runModelsWhenReady(regModels, inputTasks, modelTasks);
+        } else {
+            // Block until every input task has finished and a routing pass has
+            //  delivered everything they produced
+            this.awaitPhase("input", inputTasks);
+
+        // For each of the model connections registered in the router,
+            //  set the current step
+            //  create a new model task object
+            //  submit the new model task object
+            //  register the result Future in the results map
+            if (this.schedulerMode == SchedulerMode.WORK_STEALING) {
+                this.submitModelBatches(regModels, modelTasks);
+            } else {
+                for (ModelConnection task : regModels) {
+                    String taskName = task.getName();
+                    task.setCurrentStep(currentStep);
+                    //task.step(currentStep);
+                    Future<String> result;
+                    result = this.workerService.submit(Components.newModelTask(task));
+                    modelTasks.put(taskName, result);
+                    LOG.trace("Submitted model task: " + taskName);
+                }
             }
         }
+        this.awaitPhase("model", modelTasks);
 
     // For each of the output connections registered in the router,
         //  set the current step
@@ -321,30 +304,229 @@ public class Engine implements Serializable {
             outputTasks.put(taskName, result);
             LOG.trace("Submitted output task: " + taskName);
         }
-        allDone = false;
-        routerExecutions = this.router.getIterations();
-    // Wait for at least one router execution after all submitted tasks have
-        //  completed execution
-        while (!allDone) {
-            allDone = true;
-            for (String key : outputTasks.keySet()) {
-                Future<String> result = outputTasks.get(key);
-                allDone = allDone && result.isDone();
+        this.awaitPhase("output", outputTasks);
+
+        // TODO: actually check results for success or failure
+        return true;
+    }
+
+    /**
+     * Dataflow version of the input phase barrier. Every model that implements
+     * DataflowConnection is asked to report when it is ready for the current
+     * step, and is submitted from that callback, usually on the router's
+     * thread as the last message it needs is delivered. Once all of the input
+     * tasks have finished and been routed, any models still waiting are
+     * submitted, exactly as in the phased barrier.
+     *
+     * @param regModels the registered models
+     * @param inputTasks the input tasks for the current step
+     * @param modelTasks map to receive the name and result of each model task
+     */
+    private void runModelsWhenReady(CopyOnWriteArrayList<ModelConnection> regModels,
+            HashMap<String, Future<String>> inputTasks,
+            final HashMap<String, Future<String>> modelTasks) {
+        final HashSet<Object> started = new HashSet();
+        DataflowListener listener = new DataflowListener() {
+            @Override
+            public void readyForStep(DataflowConnection connection, Step step) {
+                synchronized (modelTasks) {
+                    if (started.add(connection)) {
+                        submitModel((ModelConnection) connection, modelTasks);
+                    }
+                }
+            }
+        };
+        for (ModelConnection task : regModels) {
+            task.setCurrentStep(currentStep);
+        }
+        for (ModelConnection task : regModels) {
+            if (task instanceof DataflowConnection) {
+                ((DataflowConnection) task).notifyWhenReady(currentStep, listener);
+            }
+        }
+        this.awaitPhase("input", inputTasks);
+        synchronized (modelTasks) {
+            for (ModelConnection task : regModels) {
+                if (task instanceof DataflowConnection) {
+                    ((DataflowConnection) task).notifyWhenReady(currentStep, null);
+                }
+                if (started.add(task)) {
+                    this.submitModel(task, modelTasks);
+                }
+            }
+        }
+    }
+
+    private void submitModel(ModelConnection task,
+            HashMap<String, Future<String>> modelTasks) {
+        if (this.schedulerMode == SchedulerMode.WORK_STEALING) {
+            ArrayList<ModelConnection> single = new ArrayList();
+            single.add(task);
+            this.submitModelBatch(single, modelTasks);
+        } else {
+            Future<String> result;
+            result = this.workerService.submit(Components.newModelTask(task));
+            modelTasks.put(task.getName(), result);
+            LOG.trace("Submitted model task: " + task.getName());
+        }
+    }
+
+    /**
+     * Submit the model tasks for the current step in cost order. Models are
+     * sorted by their estimated cost, most expensive (or not yet measured)
+     * first. Any model costing at least the target grain -- an even share of
+     * the total cost across BATCHES_PER_THREAD tasks per worker thread -- is
+     * submitted on its own; the cheaper models are grouped into batches of
+     * roughly the target grain. Submitting the long tasks first keeps them off
+     * the end of the phase, and the work-stealing pool balances the rest.
+     *
+     * @param regModels the registered models
+     * @param modelTasks map to receive the name and result of each task
+     */
+    private void submitModelBatches(CopyOnWriteArrayList<ModelConnection> regModels,
+            HashMap<String, Future<String>> modelTasks) {
+        final HashMap<String, Double> cost = new HashMap();
+        ArrayList<ModelConnection> sorted = this.modelsByCost(regModels, cost);
+        double total = 0;
+        for (ModelConnection task : sorted) {
+            task.setCurrentStep(currentStep);
+            double est = cost.get(task.getName());
+            total += Double.isInfinite(est) ? 0 : est;
+        }
+        int threads = this.workerService instanceof ForkJoinPool
+                ? ((ForkJoinPool) this.workerService).getParallelism() : maxThreads;
+        double grain = total / (threads * BATCHES_PER_THREAD);
+        ArrayList<ModelConnection> batch = new ArrayList();
+        double batchCost = 0;
+        for (ModelConnection task : sorted) {
+            double est = cost.get(task.getName());
+            if (est >= grain) {
+                ArrayList<ModelConnection> single = new ArrayList();
+                single.add(task);
+                this.submitModelBatch(single, modelTasks);
+                continue;
+            }
+            batch.add(task);
+            batchCost += est;
+            if (batchCost >= grain) {
+                this.submitModelBatch(batch, modelTasks);
+                batch = new ArrayList();
+                batchCost = 0;
             }
-            allDone = allDone && (routerExecutions < this.router.getIterations());
         }
-    // Read the results from each of the input tasks and log the result if
-        //  the debug level is set high enough
-        for (String key : outputTasks.keySet()) {
-            Future<String> result = outputTasks.get(key);
+        if (!batch.isEmpty()) {
+            this.submitModelBatch(batch, modelTasks);
+        }
+    }
+
+    /**
+     * Sort models by their estimated cost, most expensive (or not yet
+     * measured) first.
+     *
+     * @param models the models to sort
+     * @param cost map to receive each model's estimated cost, with unmeasured
+     * models given an infinite cost
+     * @return a new, sorted list of the models
+     */
+    ArrayList<ModelConnection> modelsByCost(List<ModelConnection> models,
+            final HashMap<String, Double> cost) {
+        ArrayList<ModelConnection> sorted = new ArrayList(models);
+        for (ModelConnection task : sorted) {
+            double est = this.modelCosts.estimate(task.getName());
+            cost.put(task.getName(), est < 0 ? Double.POSITIVE_INFINITY : est);
+        }
+        Collections.sort(sorted, new Comparator<ModelConnection>() {
+            @Override
+            public int compare(ModelConnection a, ModelConnection b) {
+                return Double.compare(cost.get(b.getName()), cost.get(a.getName()));
+            }
+        });
+        return sorted;
+    }
+
+    private void submitModelBatch(ArrayList<ModelConnection> batch,
+            HashMap<String, Future<String>> modelTasks) {
+        String taskName = batch.get(0).getName();
+        if (batch.size() > 1) {
+            taskName += "+" + (batch.size() - 1);
+        }
+        Future<String> result;
+        result = this.workerService.submit(new CallableModelBatch(batch, this.modelCosts));
+        modelTasks.put(taskName, result);
+        LOG.trace("Submitted model task: " + taskName);
+    }
+
+    /**
+     * Phase barrier used by call. Blocks on each task's Future, logging the
+     * result if the debug level is set high enough, and then waits for a
+     * routing pass which started after the last task finished, so that every
+     * message produced during the phase has been delivered before the next
+     * phase is submitted. If the router is not scheduled on the routerService
+     * a pass is run on the calling thread instead.
+     *
+     * @param phase name of the phase, used for logging
+     * @param tasks map of task name to result Future for the phase
+     */
+    private void awaitPhase(String phase, HashMap<String, Future<String>> tasks) {
+        for (String key : tasks.keySet()) {
+            Future<String> result = tasks.get(key);
             try {
-                LOG.trace(
-                        "Result from output task " + key + " = " + result.get());
+                LOG.trace("Result from " + phase + " task " + key + " = "
+                        + result.get());
             } catch (InterruptedException | ExecutionException ex) {
                 LOG.error(null, ex);
             }
         }
+        this.awaitRouter(phase);
+    }
+
+    /**
+     * Wait for a routing pass which started after this call to complete. If
+     * the router is not scheduled on the routerService a pass is run on the
+     * calling thread instead.
+     *
+     * @param phase name of the phase that has finished, used for logging
+     */
+    void awaitRouter(String phase) {
+        if (this.routerTask == null || this.routerTask.isDone()) {
+            this.router.run();
+            return;
+        }
+        try {
+            this.router.awaitRoutingPass();
+        } catch (InterruptedException ex) {
+            LOG.error("Interrupted waiting for the " + phase + " phase", ex);
+            Thread.currentThread().interrupt();
+        }
+    }
 
+    /**
+     * Runs a sequence of Steps with up to maxStepsInFlight Steps being
+     * processed at once (see StepPipeline). Each Step goes through the same
+     * input, model and output phases as #call, and each connection still sees
+     * its Steps in order; but the phases of consecutive Steps overlap, so that
+     * inputs are read ahead while models and outputs work on earlier Steps.
+     * While running, the current step is the oldest Step which has not yet
+     * finished its output phase; afterwards it is left at the last Step
+     * processed.
+     *
+     * The pipeline always runs the models of a Step after its input phase
+     * barrier: ExecutionMode#DATAFLOW is not supported, and a warning is
+     * logged if it is set. With SchedulerMode#WORK_STEALING the models are
+     * submitted most expensive first and their costs are recorded, as in
+     * #call, but each model runs as its own task rather than in cost-sized
+     * batches.
+     *
+     * @param steps the Steps to process, in order
+     * @param maxStepsInFlight the maximum number of Steps in flight at once
+     * @return true if all tasks were successful, false if failures occurred
+     */
+    public boolean callPipelined(Iterator<Step> steps, int maxStepsInFlight) {
+        if (this.executionMode == ExecutionMode.DATAFLOW) {
+            LOG.warn("Dataflow execution is not supported with several steps in"
+                    + " flight; models will start at the input phase barrier");
+        }
+        new StepPipeline(this, maxStepsInFlight).run(steps);
         // TODO: actually check results for success or failure
         return true;
     }
@@ -412,6 +594,92 @@ public class Engine implements Serializable {
         this.maxThreads = maxThreads;
     }
 
+    /**
+     * Get the mode used to drive the MessageRouter.
+     *
+     * @return the router mode
+     */
+    public RouterMode getRouterMode() {
+        return routerMode;
+    }
+
+    /**
+     * Set the mode used to drive the MessageRouter. This must be set before
+     * the Engine is initialized.
+     *
+     * @param routerMode the new router mode
+     */
+    public void setRouterMode(RouterMode routerMode) {
+        this.routerMode = routerMode;
+    }
+
+    /**
+     * Get the mode used to schedule worker tasks.
+     *
+     * @return the scheduler mode
+     */
+    public SchedulerMode getSchedulerMode() {
+        return schedulerMode;
+    }
+
+    /**
+     * Set the mode used to schedule worker tasks. This must be set before the
+     * Engine is initialized.
+     *
+     * @param schedulerMode the new scheduler mode
+     */
+    public void setSchedulerMode(SchedulerMode schedulerMode) {
+        this.schedulerMode = schedulerMode;
+    }
+
+    /**
+     * Get where the stations' channel histories are stored.
+     *
+     * @return the history storage type
+     */
+    public HistoryStorage getHistoryStorage() {
+        return componentFactory.getHistoryStorage();
+    }
+
+    /**
+     * Set where the stations' channel histories are stored. The setting is
+     * kept by the component factory, which creates the histories, and must be
+     * made before the stations are initialized.
+     *
+     * @param storage the history storage type
+     */
+    public void setHistoryStorage(HistoryStorage storage) {
+        componentFactory.setHistoryStorage(storage);
+    }
+
+    /**
+     * Get the mode used to order tasks within a step.
+     *
+     * @return the execution mode
+     */
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Set the mode used to order tasks within a step.
+     *
+     * @param executionMode the new execution mode
+     */
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * Get the measured costs of the ModelConnection tasks. Costs are only
+     * measured in SchedulerMode#WORK_STEALING.
+     *
+     * @return the model cost model
+     */
+    public TaskCostModel getModelCosts() {
+        return modelCosts;
+    }
+
     /**
      * Get the value of usedControllerName.
      *
@@ -450,7 +718,7 @@ public class Engine implements Serializable {
             LOG.fatal("failed to register name of controller to be used");
             throw ex;
         }
-        this.workerService = Executors.newFixedThreadPool(maxThreads);
+        this.startWorkers();
         LOG.debug("Created controllers");
         String connName;
         for (Iterator<String> it = descMessagables.keySet().iterator(); it.hasNext();) {
@@ -472,8 +740,43 @@ public class Engine implements Serializable {
                 LOG.error("Registration error: ", ex);
             }
         }
-        this.routerTask = this.routerService.scheduleWithFixedDelay(router, 0, 1,
-                TimeUnit.MICROSECONDS);
+        this.startRouter();
+    }
+
+    /**
+     * Create the workerService according to the schedulerMode. In FIXED mode
+     * this is a pool of maxThreads threads; in WORK_STEALING mode it is a
+     * ForkJoinPool with one thread per available processor.
+     */
+    protected void startWorkers() {
+        if (this.schedulerMode == SchedulerMode.WORK_STEALING) {
+            this.workerService = new ForkJoinPool(
+                    Runtime.getRuntime().availableProcessors());
+        } else {
+            this.workerService = Executors.newFixedThreadPool(maxThreads);
+        }
+        LOG.debug("Started workers with " + this.schedulerMode + " scheduling");
+    }
+
+    /**
+     * Start the MessageRouter on the routerService according to the routerMode.
+     * In POLLING mode the router is run with a one microsecond delay between
+     * passes; in PUSH mode the router's push loop is started, and passes are
+     * run only when messages are posted or the Engine waits on a phase.
+     */
+    protected void startRouter() {
+        if (this.routerMode == RouterMode.PUSH) {
+            this.routerTask = this.routerService.submit(new Runnable() {
+                @Override
+                public void run() {
+                    router.runUntilStopped();
+                }
+            });
+        } else {
+            this.routerTask = this.routerService.scheduleWithFixedDelay(router,
+                    0, 1, TimeUnit.MICROSECONDS);
+        }
+        LOG.debug("Started router in " + this.routerMode + " mode");
     }
 
     /**
@@ -481,6 +784,7 @@ public class Engine implements Serializable {
      */
     public void shutdown() {
         try {
+            this.router.stopExecution();
             this.routerService.shutdown();
             this.workerService.shutdown();
             this.routerService.awaitTermination(1, TimeUnit.SECONDS);
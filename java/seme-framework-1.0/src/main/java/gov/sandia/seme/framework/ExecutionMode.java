@@ -0,0 +1,49 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+/**
+ * Defines how the Engine orders the tasks within a step. In PHASED mode every
+ * InputConnection task must finish, and its messages be routed, before any
+ * ModelConnection task is started. In DATAFLOW mode a ModelConnection that
+ * implements DataflowConnection is started as soon as it reports that its
+ * inputs for the step have arrived, while slower inputs for other models are
+ * still being read; models that do not report readiness are started at the
+ * input phase barrier as before. A model started early does not see messages
+ * it was not waiting for that arrive after it starts; these are handled with
+ * the next step, so results can differ from PHASED mode unless every input a
+ * model uses is one it waits for.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public enum ExecutionMode {
+
+    /**
+     * Global input, model and output phases.
+     */
+    PHASED, /**
+     * Models start when their own inputs are ready.
+     */
+    DATAFLOW
+
+}
@@ -0,0 +1,131 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+import gov.sandia.seme.util.LazyModulusMatrix;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Defines where the recent history of data channel values is stored. HEAP
+ * storage uses ordinary Java arrays. DIRECT storage uses direct memory
+ * outside the heap, and MAPPED storage uses memory-mapped temporary files;
+ * both keep large histories (many channels with long frames) out of the
+ * garbage collector's way.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public enum HistoryStorage {
+
+    /**
+     * Values held in Java arrays on the heap.
+     */
+    HEAP, /**
+     * Values held in direct memory.
+     */
+    DIRECT, /**
+     * Values held in memory-mapped temporary files.
+     */
+    MAPPED;
+
+    /**
+     * Create a new history of this type, with all values set to NaN.
+     *
+     * @param columns the number of channels
+     * @param frameSize the number of steps held
+     * @param directory directory for MAPPED files, or null for the system
+     * temporary directory
+     * @return the new history
+     * @throws IOException if a MAPPED file cannot be created
+     */
+    public LazyModulusMatrix newHistory(int columns, int frameSize,
+            File directory) throws IOException {
+        switch (this) {
+            case DIRECT:
+                return LazyModulusMatrix.allocateDirect(columns, frameSize);
+            case MAPPED:
+                return LazyModulusMatrix.map(columns, frameSize, directory);
+            default:
+                return new LazyModulusMatrix(columns, frameSize);
+        }
+    }
+
+    /**
+     * Get the direct memory limit of the JVM: the -XX:MaxDirectMemorySize
+     * setting, or, as the JVM does when it is not set, the maximum heap size.
+     *
+     * @return the limit in bytes
+     */
+    static long maxDirectMemory() {
+        String prefix = "-XX:MaxDirectMemorySize=";
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (arg.startsWith(prefix)) {
+                long size = parseMemorySize(arg.substring(prefix.length()));
+                if (size > 0) {
+                    return size;
+                }
+            }
+        }
+        return Runtime.getRuntime().maxMemory();
+    }
+
+    /**
+     * Get the direct memory already allocated to direct buffers.
+     *
+     * @return bytes in use, or 0 if the JVM does not report it
+     */
+    static long directMemoryUsed() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(
+                BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getTotalCapacity();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Parse a JVM memory size option value, such as "512m" or "2g".
+     *
+     * @param value the value, in bytes or with a k, m, g or t suffix
+     * @return the size in bytes, or -1 if the value cannot be parsed
+     */
+    static long parseMemorySize(String value) {
+        String v = value.trim().toLowerCase();
+        if (v.isEmpty()) {
+            return -1;
+        }
+        int shift = "kmgt".indexOf(v.charAt(v.length() - 1));
+        if (shift >= 0) {
+            v = v.substring(0, v.length() - 1);
+        }
+        try {
+            return Long.parseLong(v) << (10 * (shift + 1));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+}
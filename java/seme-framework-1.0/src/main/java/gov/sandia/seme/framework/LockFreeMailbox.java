@@ -0,0 +1,224 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Provides a Mailbox where adding a message never takes a lock. Producers push
+ * onto a shared linked stack with a single compare-and-set. The first read
+ * after a push detaches the whole stack in one atomic swap, restores arrival
+ * order, and files the messages into a private StepBucketedInbox. All reads
+ * are served from that inbox, so Step ordering and the batch drain methods
+ * behave exactly as for a SYNCHRONIZED mailbox.
+ *
+ * The private inbox is only contended when several threads read from the
+ * mailbox at once, which does not happen for inboxes (read by the owning
+ * connection) or outboxes (read by the router).
+ *
+ * The capacity check in #offer is not atomic with the push, so several
+ * producers racing for the last free places may overfill the mailbox by one
+ * message each. Inboxes and outboxes each have a single producer.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public class LockFreeMailbox extends AbstractQueue<Message> implements Mailbox {
+
+    private static final class Node {
+
+        final Message msg;
+        Node next;
+
+        Node(Message msg) {
+            this.msg = msg;
+        }
+    }
+
+    private final AtomicReference<Node> pending = new AtomicReference();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final StepBucketedInbox staged = new StepBucketedInbox();
+    private volatile int capacity = Integer.MAX_VALUE;
+
+    /**
+     * Create an empty mailbox.
+     */
+    public LockFreeMailbox() {
+    }
+
+    @Override
+    public boolean offer(Message msg) {
+        if (msg == null) {
+            throw new NullPointerException();
+        }
+        if (capacity != Integer.MAX_VALUE && size() >= capacity) {
+            return false;
+        }
+        push(msg);
+        return true;
+    }
+
+    @Override
+    public void put(Message msg) {
+        if (msg == null) {
+            throw new NullPointerException();
+        }
+        push(msg);
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        this.capacity = capacity < 1 ? 1 : capacity;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Math.max(0, capacity - size());
+    }
+
+    private void push(Message msg) {
+        Node node = new Node(msg);
+        Node head;
+        do {
+            head = pending.get();
+            node.next = head;
+        } while (!pending.compareAndSet(head, node));
+        pendingCount.incrementAndGet();
+    }
+
+    @Override
+    public Message poll() {
+        transfer();
+        return staged.poll();
+    }
+
+    @Override
+    public Message peek() {
+        transfer();
+        return staged.peek();
+    }
+
+    @Override
+    public Message pollUpTo(Step step) {
+        transfer();
+        return staged.pollUpTo(step);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Message> sink) {
+        transfer();
+        return staged.drainTo(sink);
+    }
+
+    @Override
+    public int drainUpTo(Step step, Collection<? super Message> sink) {
+        transfer();
+        return staged.drainUpTo(step, sink);
+    }
+
+    @Override
+    public int drainStep(Step step, Collection<? super Message> sink) {
+        transfer();
+        return staged.drainStep(step, sink);
+    }
+
+    /**
+     * Returns the number of messages in the mailbox. While messages are being
+     * moved from the shared stack this may briefly count them twice, but it
+     * never reports a non-empty mailbox as empty.
+     *
+     * @return the number of messages
+     */
+    @Override
+    public int size() {
+        return pendingCount.get() + staged.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return pending.get() == null && staged.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        transfer();
+        staged.clear();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        transfer();
+        return staged.contains(o);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        transfer();
+        return staged.remove(o);
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the mailbox, in #poll order.
+     *
+     * @return the snapshot iterator
+     */
+    @Override
+    public Iterator<Message> iterator() {
+        transfer();
+        return staged.iterator();
+    }
+
+    /**
+     * Detach everything pushed so far and file it into the staged inbox in
+     * arrival order.
+     */
+    private void transfer() {
+        if (pending.get() == null) {
+            return;
+        }
+        Node head = pending.getAndSet(null);
+        Node reversed = null;
+        int count = 0;
+        while (head != null) {
+            Node next = head.next;
+            head.next = reversed;
+            reversed = head;
+            head = next;
+            count++;
+        }
+        while (reversed != null) {
+            staged.offer(reversed.msg);
+            reversed = reversed.next;
+        }
+        pendingCount.addAndGet(-count);
+    }
+
+}
@@ -0,0 +1,111 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+import java.util.Collection;
+import java.util.Queue;
+
+/**
+ * Provides the queue behind a Messagable's inbox and outbox handles. Messages
+ * are returned in Step order (and arrival order within a Step), and can be
+ * taken either one at a time or in batches. The implementation used by a
+ * connection is selected with a MailboxType.
+ *
+ * A mailbox may be given a capacity, in which case #offer returns false once
+ * the mailbox holds that many messages; #put always adds the message. Senders
+ * are expected to check #remainingCapacity and hold back while it is zero.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public interface Mailbox extends Queue<Message> {
+
+    /**
+     * Add a message whether or not the mailbox is at capacity.
+     *
+     * @param msg the message to add
+     */
+    void put(Message msg);
+
+    /**
+     * Get the maximum number of messages #offer will accept.
+     *
+     * @return the capacity, Integer.MAX_VALUE if unbounded
+     */
+    int getCapacity();
+
+    /**
+     * Set the maximum number of messages #offer will accept. Messages already
+     * in the mailbox are kept even if they exceed the new capacity.
+     *
+     * @param capacity the new capacity, Integer.MAX_VALUE if unbounded
+     */
+    void setCapacity(int capacity);
+
+    /**
+     * Get the number of messages #offer will accept before the mailbox is
+     * full.
+     *
+     * @return the remaining capacity, never negative
+     */
+    int remainingCapacity();
+
+    /**
+     * Remove and return the next message whose Step index is equal to or less
+     * than that of the Step provided. Messages without a Step are always
+     * eligible.
+     *
+     * @param step the latest Step to accept
+     * @return the next message, or null if none are at or before the Step
+     */
+    Message pollUpTo(Step step);
+
+    /**
+     * Move every message into the collection, in the order #poll would return
+     * them.
+     *
+     * @param sink the collection to receive the messages
+     * @return the number of messages moved
+     */
+    int drainTo(Collection<? super Message> sink);
+
+    /**
+     * Move every message whose Step index is equal to or less than that of the
+     * Step provided into the collection, in the order #poll would return them.
+     *
+     * @param step the latest Step to accept
+     * @param sink the collection to receive the messages
+     * @return the number of messages moved
+     */
+    int drainUpTo(Step step, Collection<? super Message> sink);
+
+    /**
+     * Move every message for exactly the Step provided into the collection, in
+     * arrival order. Messages for other Steps are left in place.
+     *
+     * @param step the Step to drain
+     * @param sink the collection to receive the messages
+     * @return the number of messages moved
+     */
+    int drainStep(Step step, Collection<? super Message> sink);
+
+}
@@ -0,0 +1,59 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+/**
+ * Defines which Mailbox implementation a Messagable uses for its inbox and
+ * outbox. SYNCHRONIZED mailboxes take a lock for every operation. LOCK_FREE
+ * mailboxes let any number of threads add messages with a single
+ * compare-and-set; the messages are sorted into Step order when the owner
+ * next reads from the mailbox, which suits the router fanning out to many
+ * stations at once.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public enum MailboxType {
+
+    /**
+     * Step-bucketed mailbox guarded by its own lock.
+     */
+    SYNCHRONIZED, /**
+     * Step-bucketed mailbox with lock-free insertion.
+     */
+    LOCK_FREE;
+
+    /**
+     * Create a new, empty mailbox of this type.
+     *
+     * @return the new mailbox
+     */
+    public Mailbox newMailbox() {
+        switch (this) {
+            case LOCK_FREE:
+                return new LockFreeMailbox();
+            default:
+                return new StepBucketedInbox();
+        }
+    }
+
+}
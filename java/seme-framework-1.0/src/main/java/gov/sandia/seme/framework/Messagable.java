@@ -21,7 +21,6 @@
 package gov.sandia.seme.framework;
 
 import java.util.ArrayList;
-import java.util.concurrent.PriorityBlockingQueue;
 
 /**
  * Interface that must be satisfied for any class that will interact with the
@@ -49,6 +48,22 @@ public interface Messagable extends Describable {
      */
     public void pushMessageToOutbox(Message messagePar);
 
+    /**
+     * Get the listener that is notified when messages are posted to the
+     * outbox.
+     *
+     * @return the outbox listener, or null if none is set
+     */
+    public OutboxListener getOutboxListener();
+
+    /**
+     * Set the listener that is notified when messages are posted to the
+     * outbox. This is normally the MessageRouter the object is registered with.
+     *
+     * @param listener the new outbox listener, or null to remove it
+     */
+    public void setOutboxListener(OutboxListener listener);
+
     /**
      * Get the next message from the inbox.
      *
@@ -85,14 +100,46 @@ public interface Messagable extends Describable {
      *
      * @return the handle to the inbox
      */
-    public PriorityBlockingQueue getInboxHandle();
+    public Mailbox getInboxHandle();
 
     /**
      * Get the handle to the outbox queue.
      *
      * @return the handle to the outbox
      */
-    public PriorityBlockingQueue getOutboxHandle();
+    public Mailbox getOutboxHandle();
+
+    /**
+     * Get the type of Mailbox used for the inbox and outbox.
+     *
+     * @return the mailbox type
+     */
+    public MailboxType getMailboxType();
+
+    /**
+     * Set the type of Mailbox used for the inbox and outbox. Any messages
+     * already queued are moved to the new mailboxes. This should be called
+     * before the object is registered with a MessageRouter.
+     *
+     * @param type the new mailbox type
+     */
+    public void setMailboxType(MailboxType type);
+
+    /**
+     * Get the maximum number of messages held in the inbox and in the outbox.
+     *
+     * @return the queue capacity, Integer.MAX_VALUE if unbounded
+     */
+    public int getQueueCapacity();
+
+    /**
+     * Set the maximum number of messages held in the inbox and in the outbox.
+     * The MessageRouter will not deliver to a full inbox; it leaves the
+     * message in the sender's outbox until there is room.
+     *
+     * @param capacity the queue capacity, Integer.MAX_VALUE if unbounded
+     */
+    public void setQueueCapacity(int capacity);
 
     /**
      * Set the value of name.
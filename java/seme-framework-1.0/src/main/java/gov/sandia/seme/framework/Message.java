@@ -49,6 +49,7 @@ public class Message implements Comparable<Object>, Serializable {
     String tag;
     Step step;
     MessageType type;
+    int tagId = -1;
 
     public Message() {
         this.type = null;
@@ -135,6 +136,27 @@ public class Message implements Comparable<Object>, Serializable {
      */
     public void setTag(String tag) {
         this.tag = tag;
+        this.tagId = -1;
+    }
+
+    /**
+     * Get the dense tag ID assigned to the tag by the MessageRouter.
+     *
+     * @return the tag ID, or -1 if it has not been resolved
+     */
+    public int getTagId() {
+        return tagId;
+    }
+
+    /**
+     * Set the dense tag ID (see MessageRouter#getTagId). Producers which
+     * resolve their tag IDs once can set them here so that the router does not
+     * need to look the tag up by name.
+     *
+     * @param tagId the tag ID, or -1 to have the router resolve the tag
+     */
+    public void setTagId(int tagId) {
+        this.tagId = tagId;
     }
 
     /**
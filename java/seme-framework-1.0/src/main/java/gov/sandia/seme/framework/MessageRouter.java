@@ -22,8 +22,11 @@ package gov.sandia.seme.framework;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
 
 /**
@@ -37,19 +40,47 @@ import org.apache.log4j.Logger;
  * When a Message is withdrawn from an output queue, the tag is looked up in the
  * routing table to determine which input queues it should be copied into.
  *
+ * The routing table is kept in two forms. The tag to node-name routes are the
+ * editable description of the topology; whenever they change they are compiled
+ * into a RouteTable, where each tag has a dense integer ID that indexes an
+ * array of destination Messagable objects. The compiled table is immutable and
+ * is swapped in atomically, so the routing thread never sees a partial update
+ * and never performs a name lookup for a destination. Producers may cache a
+ * tag's ID (see #getTagId and Message#setTagId) to avoid the tag lookup too.
+ *
+ * Each call to run is a routing pass. Passes are numbered as they start, and
+ * threads which need to know that everything posted so far has been delivered
+ * (such as the Engine between its input, model and output phases) can block in
+ * #awaitRoutingPass until a pass that started after the call has completed.
+ *
+ * Connections may bound their inboxes (see Messagable#setQueueCapacity). The
+ * router then leaves a message at the head of its producer's outbox while a
+ * destination inbox is full, which throttles inputs that read ahead. Messages
+ * for Steps up to the delivery step (see #setDeliveryStep) are never held:
+ * they are needed to evaluate a Step that has already started, so they are
+ * delivered even into a full inbox. Only read-ahead for later Steps waits.
+ *
+ * The router can also be driven by its nodes instead of a schedule (see
+ * RouterMode). The router registers itself as the OutboxListener for each node
+ * it adds; when #runUntilStopped is executing on a dedicated thread, each
+ * posted message wakes that thread for a routing pass, and the thread sleeps
+ * while no messages are waiting.
+ *
  * @htmlonly
  * @author Nathanael Rackley, nprackl
  * @endhtmlonly
  */
-public final class MessageRouter implements Runnable {
+public final class MessageRouter implements Runnable, OutboxListener {
 
     private boolean debug = false;
     private static final Logger LOG = Logger.getLogger(MessageRouter.class);
     private int delay = 1;                           //The execution nodes.
-    private ArrayList<String> deletedNodes;                   //The list of nodes that have been deleted or removed.
+    private HashSet<String> deletedNodes;                     //The set of nodes that have been deleted or removed.
     private long iterations = -1;                        //Iterations variable. Used for external runs and testing.
     private String logfile = "ROUTER.log";
     private boolean messagesWaiting;
+    private int messagesHeld;                                //Outboxes held for full inboxes in the current pass.
+    private volatile Step deliveryStep = null;               //Messages up to this Step are never held.
     private HashMap<String, Messagable> nodeMap;                //The hash map of names to nodes for quick reference.
 
     //Here we declare the objects that the MessageRouter will be interacting with.
@@ -63,13 +94,23 @@ public final class MessageRouter implements Runnable {
     private ArrayList<OutputConnection> outputNodes;
     private ArrayList<ModelConnection> ModelNodes;
     private ArrayList<Messagable> unknownNodes;
+    private final Object passLock = new Object();             //Monitor for routing pass completion.
+    private long passesStarted = 0;                          //Number of routing passes started.
+    private long passesCompleted = 0;                        //Number of the last routing pass completed.
+    private final Object signalLock = new Object();           //Monitor for push mode routing requests.
+    private boolean signalled = false;                       //A routing pass has been requested.
+    private volatile boolean pushActive = false;             //Flag for a running push mode loop.
+    private final HashMap<String, Integer> tagIds = new HashMap();   //Dense integer IDs for tags.
+    private final HashMap<String, Integer> nodeIds = new HashMap();  //Dense integer IDs for nodes.
+    private volatile RouteTable table = new RouteTable(new Messagable[0],
+            new Messagable[0][], new HashMap<String, Integer>());  //Compiled routing table.
 
     /**
      * Router Generic empty constructor.
      */
     public MessageRouter() {
         this.nodes = new ArrayList();
-        this.deletedNodes = new ArrayList();
+        this.deletedNodes = new HashSet();
         this.nodeMap = new HashMap();
         this.routes = new HashMap();
         this.inputNodes = new ArrayList();
@@ -93,6 +134,7 @@ public final class MessageRouter implements Runnable {
         } else {
             this.nodes.add(node);                        //Add node to main directory
             nodeMap.put(node.getName(), node);                 //Add node to name index searcher
+            node.setOutboxListener(this);                      //Route on demand when running in push mode
             LOG.debug("Adding " + node.getName() + " to the router which now contains " + this.nodes.size() + " nodes");
       //-----
             //Signal all executing threads to pauseExecution.
@@ -101,6 +143,96 @@ public final class MessageRouter implements Runnable {
         }
     }
 
+    /**
+     * Get the dense integer ID of a node. IDs are assigned when a node is
+     * added and are not reused if the node is removed.
+     *
+     * @param name the name of the node
+     * @return the node ID, or -1 if the node has never been added
+     */
+    public synchronized int getNodeId(String name) {
+        Integer id = this.nodeIds.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Get the dense integer ID of a tag, assigning a new ID if the tag has not
+     * been seen before. Tag IDs are stable for the life of the router and index
+     * directly into the compiled routing table.
+     *
+     * @param tag the tag name
+     * @return the tag ID
+     */
+    public synchronized int getTagId(String tag) {
+        Integer id = this.tagIds.get(tag);
+        if (id == null) {
+            id = this.tagIds.size();
+            this.tagIds.put(tag, id);
+        }
+        return id;
+    }
+
+    /**
+     * Get the compiled list of destinations for a tag.
+     *
+     * @param tagId the tag ID (see #getTagId)
+     * @return the destinations, or an empty array if there are none
+     */
+    public Messagable[] getDestinations(int tagId) {
+        RouteTable t = this.table;
+        if (tagId < 0 || tagId >= t.destinations.length
+                || t.destinations[tagId] == null) {
+            return new Messagable[0];
+        }
+        return t.destinations[tagId].clone();
+    }
+
+    /**
+     * Rebuild the compiled routing table from the current nodes and routes and
+     * publish it. Routes to nodes that have been deleted are dropped from the
+     * route lists at the same time.
+     */
+    private synchronized void compileRoutes() {
+        for (Messagable node : this.nodes) {
+            if (!this.nodeIds.containsKey(node.getName())) {
+                this.nodeIds.put(node.getName(), this.nodeIds.size());
+            }
+        }
+        for (String tag : this.routes.keySet()) {
+            this.getTagId(tag);
+        }
+        Messagable[] byId = new Messagable[this.nodeIds.size()];
+        for (Messagable node : this.nodes) {
+            byId[this.nodeIds.get(node.getName())] = node;
+        }
+        ArrayList<Messagable> sources = new ArrayList();
+        for (Messagable node : byId) {
+            if (node != null) {
+                sources.add(node);
+            }
+        }
+        Messagable[][] destinations = new Messagable[this.tagIds.size()][];
+        int count = 0;
+        for (String tag : this.routes.keySet()) {
+            ArrayList<String> names = this.routes.get(tag);
+            ArrayList<Messagable> dest = new ArrayList();
+            for (Iterator<String> i = names.iterator(); i.hasNext();) {
+                String nodeName = i.next();
+                Messagable node = this.nodeMap.get(nodeName);
+                if (node != null) {
+                    dest.add(node);
+                } else if (this.deletedNodes.contains(nodeName)) {
+                    i.remove();
+                }
+            }
+            destinations[this.tagIds.get(tag)] = dest.toArray(new Messagable[dest.size()]);
+            count++;
+        }
+        this.table = new RouteTable(sources.toArray(new Messagable[sources.size()]),
+                destinations, new HashMap(this.tagIds));
+        LOG.debug("Compiled routing table: " + sources.size() + " nodes, " + count + " tags");
+    }
+
     /**
      * Returns the number of nodes currently in the MessageRouter.
      *
@@ -125,6 +257,7 @@ public final class MessageRouter implements Runnable {
      */
     public void clearRoutes() {
         this.routes = new HashMap();
+        this.compileRoutes();
     }
 
     /**
@@ -235,7 +368,11 @@ public final class MessageRouter implements Runnable {
             LOG.debug("Removing " + name + " from the router");
             this.nodeMap.remove(name);                     //Remove the node from the listing.
             this.nodes.remove(n);                        //Remove secondary reference to the node.
+            if (n.getOutboxListener() == this) {
+                n.setOutboxListener(null);
+            }
             deletedNodes.add(n.getName());
+            this.compileRoutes();
         }
     }
 
@@ -248,50 +385,164 @@ public final class MessageRouter implements Runnable {
         if (debug) {
             System.out.println("Routing message from " + name);
         }
-        if (this.nodeMap.containsKey(name)) {                  //If the system being routed from exists...
+        Messagable node = this.nodeMap.get(name);
+        if (node != null) {                          //If the system being routed from exists...
+            this.routeMessageFromNode(node, this.table);
+        } else {                                //There is nothing to be routed as there is nothing to route from.      
             if (debug) {
-                System.out.println("The key \"" + name + "\" is contained in the node map table.");
+                System.out.println("Node \"" + name + "\" does not exist in the nodeMap table.");
             }
-            Message msg = this.nodeMap.get(name).getMessageFromOutbox();    //Get message from source object.
-            if (!this.nodeMap.get(name).getOutboxHandle().isEmpty()) {
-                if (debug) {
-                    System.out.println("Non-empty outbox of " + name);
+            LOG.trace("Node \"" + name + "\" does not exist in the nodeMap table.");
+        }
+    }
+
+    /**
+     * Route a message from the outbox of a node using a compiled table. If any
+     * destination inbox is full, and the message is for a Step after the
+     * delivery step, the message is left at the head of the outbox and the
+     * node is skipped until a later pass.
+     *
+     * @param node the node to route from
+     * @param t the compiled routing table
+     */
+    private void routeMessageFromNode(Messagable node, RouteTable t) {
+        Mailbox outbox = node.getOutboxHandle();
+        Message msg = outbox.peek();                        //Look at the next message from source object.
+        if (msg == null) {
+            return;                      //Break upon null message.
+        }
+        if (msg instanceof RowMessage) {
+            this.routeRowFromNode(node, outbox, (RowMessage) msg, t);
+            return;
+        }
+        int id = msg.tagId;
+        if (id < 0 || id >= t.destinations.length) {
+            Integer known = t.tagIds.get(msg.tag);
+            id = known == null ? -1 : known;
+            msg.tagId = id;                                 //Consumers can index by ID from here on.
+        }
+        Messagable[] destinations = id < 0 ? null : t.destinations[id];
+        if (destinations != null && !this.isDue(msg)) {
+            for (Messagable destination : destinations) {
+                if (destination.getInboxHandle().remainingCapacity() <= 0) {
+                    LOG.trace("Inbox of " + destination.getName() + " is full; holding outbox of " + node.getName());
+                    this.messagesHeld++;
+                    return;
                 }
-                LOG.trace("Non-empty outbox of " + name);
-                this.messagesWaiting = true;
-            }
-            if (msg == null) {
-                return;                      //Break upon null message.
             }
-            try {
-                if (debug) {
-                    System.out.println("Attempting to route message to nodes...");
-                }
-                routeMessageToNodes(msg, this.routes.get(msg.getTag()));	// route it to all nodes waiting for a value by given input.
-                if (debug) {
-                    System.out.println(this.routes.get(msg.getTag()));
-                }
-            } catch (NullPointerException ex) {
-                if (debug) {
-                    System.out.println("Error routing: message with tag " + msg.getTag());
-                }
-                LOG.fatal("Error routing: message with tag " + msg.getTag(), ex);
+        }
+        outbox.remove(msg);                                 //Only the router takes messages from an outbox.
+        if (!outbox.isEmpty()) {
+            if (debug) {
+                System.out.println("Non-empty outbox of " + node.getName());
             }
-        } else {                                //There is nothing to be routed as there is nothing to route from.      
+            LOG.trace("Non-empty outbox of " + node.getName());
+            this.messagesWaiting = true;
+        }
+        if (destinations == null) {
             if (debug) {
-                System.out.println("Node \"" + name + "\" does not exist in the nodeMap table.");
+                System.out.println("No route for message with tag " + msg.getTag());
             }
-            LOG.trace("Node \"" + name + "\" does not exist in the nodeMap table.");
+            return;
+        }
+        for (Messagable destination : destinations) {    // route it to all nodes waiting for a value by given input.
+            destination.addMessageToInbox(msg);
+        }
+    }
+
+    /**
+     * Route a RowMessage from the head of a node's outbox. The row's values are
+     * grouped by destination; a RowMessageConsumer receives the whole row if
+     * it consumes every value, or a subset row otherwise, and any other
+     * destination receives one Message per value. As for single messages, a
+     * row for a Step after the delivery step stays in the outbox while any
+     * destination inbox is full. The
+     * grouping is planned once per producer (see RowRoute), so routing a row
+     * does not allocate anything beyond the messages delivered.
+     *
+     * @param node the node to route from
+     * @param outbox the node's outbox
+     * @param row the row at the head of the outbox
+     * @param t the compiled routing table
+     */
+    private void routeRowFromNode(Messagable node, Mailbox outbox, RowMessage row,
+            RouteTable t) {
+        RowRoute route = t.rowRoute(row);
+        RowLayout layout = route.layoutFor(row);
+        Messagable[] dests = route.destinations;
+        for (int k = 0; k < dests.length && !this.isDue(row); k++) {
+            if (layout.counts[k] > 0
+                    && dests[k].getInboxHandle().remainingCapacity() <= 0) {
+                LOG.trace("Inbox of " + dests[k].getName() + " is full; holding outbox of " + node.getName());
+                this.messagesHeld++;
+                return;
+            }
+        }
+        outbox.remove(row);                                 //Only the router takes messages from an outbox.
+        if (!outbox.isEmpty()) {
+            LOG.trace("Non-empty outbox of " + node.getName());
+            this.messagesWaiting = true;
         }
+        for (int k = 0; k < dests.length; k++) {
+            int count = layout.counts[k];
+            if (count == 0) {
+                continue;
+            }
+            Messagable destination = dests[k];
+            int[] entries = layout.entries[k];
+            if (destination instanceof RowMessageConsumer) {
+                destination.addMessageToInbox(count == row.size ? row
+                        : row.subset(entries, count));
+            } else {
+                for (int e = 0; e < count; e++) {
+                    destination.addMessageToInbox(row.toMessage(entries[e]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether a message must be delivered even if its destination inbox
+     * is full, because it is for a Step up to the delivery step.
+     *
+     * @param msg the message
+     * @return true if the message may not be held
+     */
+    private boolean isDue(Message msg) {
+        Step due = this.deliveryStep;
+        return due != null && msg.getStep() != null
+                && msg.getStep().compareTo(due) <= 0;
+    }
+
+    /**
+     * Get the latest Step whose messages are delivered even to full inboxes.
+     *
+     * @return the delivery step, or null if none has been set
+     */
+    public Step getDeliveryStep() {
+        return deliveryStep;
+    }
+
+    /**
+     * Set the latest Step whose messages are delivered even to full inboxes.
+     * The Engine sets this to the newest Step it has started, so that every
+     * message a started Step needs is delivered by the next routing pass, and
+     * only read-ahead for later Steps is held back by full inboxes. If no
+     * delivery step is set, any message may be held.
+     *
+     * @param step the delivery step, or null to allow any message to be held
+     */
+    public void setDeliveryStep(Step step) {
+        this.deliveryStep = step;
     }
 
     /**
      * Route a message from the outbox of each node into all other nodes.
      */
     public void routeMessageFromNodes() {
-        Iterator<Messagable> i = nodes.iterator();
-        while (i.hasNext()) {                          //Iterate through all nodes.
-            routeMessageFromNode(i.next().getName());              //Route messages to other nodes.
+        RouteTable t = this.table;
+        for (Messagable node : t.sources) {                  //Iterate through all nodes.
+            this.routeMessageFromNode(node, t);               //Route messages to other nodes.
         }
     }
 
@@ -333,13 +584,79 @@ public final class MessageRouter implements Runnable {
      */
     @Override
     public void run() {
+        long pass;
+        synchronized (passLock) {
+            pass = ++passesStarted;
+        }
         this.running = true;
         do {
             this.messagesWaiting = false;
+            this.messagesHeld = 0;
             this.routeMessageFromNodes();
         } while (this.messagesWaiting);
+        if (this.messagesHeld > 0) {
+            if (this.deliveryStep == null) {
+                LOG.warn("Routing pass finished with " + this.messagesHeld
+                        + " outboxes held for full inboxes and no delivery step set");
+            } else {
+                LOG.debug("Routing pass finished with " + this.messagesHeld
+                        + " outboxes held for Steps after " + this.deliveryStep);
+            }
+        }
         this.iterations++;
         this.running = false;
+        synchronized (passLock) {
+            passesCompleted = pass;
+            passLock.notifyAll();
+        }
+    }
+
+    /**
+     * Block until a routing pass which started after this call has completed.
+     * A pass only finishes once every outbox has been found empty or held for
+     * a full inbox, and messages for Steps up to the delivery step are never
+     * held; so when this returns, every message posted before the call for a
+     * Step up to the delivery step has been delivered. Messages for later
+     * Steps may still be waiting in their producers' outboxes (see
+     * #setDeliveryStep). The calling thread waits on a monitor and does not
+     * use any CPU.
+     *
+     * @throws InterruptedException the waiting thread was interrupted
+     */
+    public void awaitRoutingPass() throws InterruptedException {
+        synchronized (passLock) {
+            long target = passesStarted + 1;
+            this.requestRoutingPass();
+            while (passesCompleted < target) {
+                passLock.wait();
+            }
+        }
+    }
+
+    /**
+     * Block until a routing pass which started after this call has completed,
+     * or until the timeout expires.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the units of the timeout value
+     * @return true if a full pass completed, false if the timeout expired
+     * @throws InterruptedException the waiting thread was interrupted
+     */
+    public boolean awaitRoutingPass(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (passLock) {
+            long target = passesStarted + 1;
+            this.requestRoutingPass();
+            while (passesCompleted < target) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(passLock, remaining);
+            }
+        }
+        return true;
     }
 
     /**
@@ -347,6 +664,71 @@ public final class MessageRouter implements Runnable {
      */
     public void stopExecution() {
         this.running = false;                          //Signal this thread to end execution.
+        this.pushActive = false;
+        synchronized (signalLock) {
+            signalLock.notifyAll();
+        }
+    }
+
+    /**
+     * Wake the push mode routing thread because a node has posted a message.
+     * Does nothing unless #runUntilStopped is executing.
+     *
+     * @param source the node that posted the message
+     */
+    @Override
+    public void messagePosted(Messagable source) {
+        if (this.pushActive) {
+            this.requestRoutingPass();
+        }
+    }
+
+    /**
+     * Ask the push mode routing thread to perform a pass as soon as possible.
+     */
+    public void requestRoutingPass() {
+        synchronized (signalLock) {
+            if (!signalled) {
+                signalled = true;
+                signalLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * The push mode routing loop. Runs a routing pass each time a node posts a
+     * message or a pass is requested, and sleeps otherwise. A pass is also run
+     * if nothing has been signalled for pauseDelay milliseconds, as a guard
+     * against nodes that fill their outboxes without notifying the router.
+     * The loop exits when #stopExecution is called or the thread is
+     * interrupted. While the router is paused, requests are held until it is
+     * unpaused.
+     */
+    public void runUntilStopped() {
+        this.pushActive = true;
+        LOG.debug("Router " + routerName + " started in push mode");
+        try {
+            while (this.pushActive) {
+                synchronized (signalLock) {
+                    if (!signalled || this.paused) {
+                        signalLock.wait(pauseDelay);
+                    }
+                    if (!this.pushActive) {
+                        break;
+                    }
+                    if (this.paused) {
+                        continue;
+                    }
+                    signalled = false;
+                }
+                this.run();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.pushActive = false;
+            LOG.debug("Router " + routerName + " stopped");
+        }
     }
 
     /**
@@ -363,6 +745,9 @@ public final class MessageRouter implements Runnable {
      */
     public void unpause() {
         this.paused = false;
+        synchronized (signalLock) {
+            signalLock.notifyAll();
+        }
     }
 
     /**
@@ -371,6 +756,7 @@ public final class MessageRouter implements Runnable {
     public void updateRoutes() {
         LOG.debug("Updating messaging routes.");
         this.getRoutes();                            //Get fresh routes from all current nodes.
+        this.compileRoutes();                        //Publish the new routing table.
     }
 
     /**
@@ -532,4 +918,136 @@ public final class MessageRouter implements Runnable {
     public CopyOnWriteArrayList<Messagable> getRegisteredUnknownNodes() {
         return new CopyOnWriteArrayList(this.unknownNodes);
     }
+
+    /**
+     * Immutable compiled form of the routing table. Destination arrays are
+     * indexed by tag ID; a null entry means no node consumes the tag.
+     */
+    private static final class RouteTable {
+
+        final Messagable[] sources;
+        final Messagable[][] destinations;
+        final HashMap<String, Integer> tagIds;
+        // Keyed by each row producer's shared column tag array; arrays hash
+        // and compare by identity.
+        final ConcurrentHashMap<String[], RowRoute> rowRoutes = new ConcurrentHashMap();
+
+        RouteTable(Messagable[] sources, Messagable[][] destinations,
+                HashMap<String, Integer> tagIds) {
+            this.sources = sources;
+            this.destinations = destinations;
+            this.tagIds = tagIds;
+        }
+
+        /**
+         * Get the route for the rows of a producer, planning it the first
+         * time the producer's column tags are seen with this table.
+         *
+         * @param row a row from the producer
+         * @return the route
+         */
+        RowRoute rowRoute(RowMessage row) {
+            RowRoute route = rowRoutes.get(row.columnTags);
+            if (route == null) {
+                route = new RowRoute(row.columnTags, row.columnTagIds, this);
+                rowRoutes.put(row.columnTags, route);
+            }
+            return route;
+        }
+    }
+
+    /**
+     * The destinations of a row producer's columns under one RouteTable. Rows
+     * from a producer usually hold the same columns, so the value numbers
+     * sent to each destination are kept for the last column layout seen and
+     * reused until a row with different columns arrives.
+     */
+    private static final class RowRoute {
+
+        final Messagable[] destinations;
+        final int[][] columnDestinations;
+        private volatile RowLayout layout;
+
+        RowRoute(String[] columnTags, int[] columnTagIds, RouteTable t) {
+            ArrayList<Messagable> dests = new ArrayList();
+            columnDestinations = new int[columnTags.length][];
+            for (int col = 0; col < columnTags.length; col++) {
+                Integer id = t.tagIds.get(columnTags[col]);
+                if (id != null) {
+                    columnTagIds[col] = id;           //Tag IDs are stable, so cache them in the producer's shared array.
+                }
+                Messagable[] tagDests = id == null || id >= t.destinations.length
+                        ? null : t.destinations[id];
+                if (tagDests == null) {
+                    columnDestinations[col] = new int[0];
+                    continue;
+                }
+                columnDestinations[col] = new int[tagDests.length];
+                for (int d = 0; d < tagDests.length; d++) {
+                    int k = dests.indexOf(tagDests[d]);
+                    if (k < 0) {
+                        k = dests.size();
+                        dests.add(tagDests[d]);
+                    }
+                    columnDestinations[col][d] = k;
+                }
+            }
+            destinations = dests.toArray(new Messagable[dests.size()]);
+        }
+
+        RowLayout layoutFor(RowMessage row) {
+            RowLayout l = this.layout;
+            if (l == null || !l.matches(row)) {
+                l = new RowLayout(row, this);
+                this.layout = l;
+            }
+            return l;
+        }
+    }
+
+    /**
+     * The value numbers of a row which go to each destination of a RowRoute,
+     * for one set of columns. Immutable once built, since the entries arrays
+     * are shared by the subset rows delivered.
+     */
+    private static final class RowLayout {
+
+        final int[] columns;
+        final int[][] entries;
+        final int[] counts;
+
+        RowLayout(RowMessage row, RowRoute route) {
+            int n = row.size();
+            columns = new int[n];
+            counts = new int[route.destinations.length];
+            for (int i = 0; i < n; i++) {
+                columns[i] = row.getColumn(i);
+                for (int k : route.columnDestinations[columns[i]]) {
+                    counts[k]++;
+                }
+            }
+            entries = new int[counts.length][];
+            for (int k = 0; k < counts.length; k++) {
+                entries[k] = new int[counts[k]];
+            }
+            int[] fill = new int[counts.length];
+            for (int i = 0; i < n; i++) {
+                for (int k : route.columnDestinations[columns[i]]) {
+                    entries[k][fill[k]++] = i;
+                }
+            }
+        }
+
+        boolean matches(RowMessage row) {
+            if (row.size() != columns.length) {
+                return false;
+            }
+            for (int i = 0; i < columns.length; i++) {
+                if (row.getColumn(i) != columns[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -0,0 +1,45 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+/**
+ * Defines how the MessageRouter is driven by the Engine. In POLLING mode the
+ * router is rescheduled on its own thread with a one microsecond delay between
+ * routing passes, whether or not there are any messages waiting. In PUSH mode
+ * the router thread sleeps until a Messagable posts a message to its outbox (or
+ * the Engine asks for a pass), so the router uses no CPU while the system is
+ * idle.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public enum RouterMode {
+
+    /**
+     * Route on a fixed one microsecond schedule.
+     */
+    POLLING, /**
+     * Route only when signalled that messages are waiting.
+     */
+    PUSH
+
+}
@@ -0,0 +1,205 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+import java.util.HashMap;
+
+/**
+ * Provides a VALUE message which carries the values of many tags for a single
+ * Step, such as one row of a wide CSV file. The tags of the producer's columns
+ * are held in an array shared by every row it produces, along with a shared
+ * array of tag IDs which the MessageRouter fills in the first time it sees
+ * each column. Each row then only holds the column numbers and values that are
+ * present, as primitive arrays.
+ *
+ * The MessageRouter splits a row by destination. Destinations which implement
+ * RowMessageConsumer receive a RowMessage with just the columns they consume;
+ * any other destination receives one ValueMessage per column, so existing
+ * connections see no difference.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public class RowMessage extends Message {
+
+    private static final long serialVersionUID = -2361580437517026841L;
+
+    final String[] columnTags;
+    final int[] columnTagIds;
+    final int[] columns;
+    final double[] values;
+    final int[] entries;
+    final int size;
+
+    /**
+     * Create a new row.
+     *
+     * @param source name of the producing connection, used as the message tag
+     * @param step the Step all of the values belong to
+     * @param columnTags the tag of each column, shared by all rows of the
+     * producer
+     * @param columnTagIds the tag ID of each column, shared by all rows of the
+     * producer (see #newTagIds)
+     * @param columns the column of each value
+     * @param values the values
+     * @param size the number of values used from columns and values
+     */
+    public RowMessage(String source, Step step, String[] columnTags,
+            int[] columnTagIds, int[] columns, double[] values, int size) {
+        this(source, step, columnTags, columnTagIds, columns, values, null,
+                size);
+    }
+
+    private RowMessage(String source, Step step, String[] columnTags,
+            int[] columnTagIds, int[] columns, double[] values, int[] entries,
+            int size) {
+        super(MessageType.VALUE, source, null, step);
+        this.columnTags = columnTags;
+        this.columnTagIds = columnTagIds;
+        this.columns = columns;
+        this.values = values;
+        this.entries = entries;
+        this.size = size;
+    }
+
+    /**
+     * Create the shared tag ID array for a set of column tags. All IDs start
+     * unresolved.
+     *
+     * @param columnTags the tag of each column
+     * @return the tag ID array
+     */
+    public static int[] newTagIds(String[] columnTags) {
+        int[] ids = new int[columnTags.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = -1;
+        }
+        return ids;
+    }
+
+    /**
+     * Get the number of values in the row.
+     *
+     * @return the number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the column tags shared by all rows of the producer. Consumers can
+     * use the identity of this array to cache their own per-column lookups.
+     *
+     * @return the column tags
+     */
+    public String[] getColumnTags() {
+        return columnTags;
+    }
+
+    /**
+     * Get the column of a value.
+     *
+     * @param i the value number, from 0 to size()-1
+     * @return the column
+     */
+    public int getColumn(int i) {
+        return columns[entry(i)];
+    }
+
+    /**
+     * Get the tag of a value.
+     *
+     * @param i the value number, from 0 to size()-1
+     * @return the tag
+     */
+    public String getTag(int i) {
+        return columnTags[columns[entry(i)]];
+    }
+
+    /**
+     * Get a value.
+     *
+     * @param i the value number, from 0 to size()-1
+     * @return the value
+     */
+    public double getValue(int i) {
+        return values[entry(i)];
+    }
+
+    /**
+     * Create a row holding a subset of this row's values. The new row shares
+     * the column tags and tag IDs, and reads its values from this row's
+     * arrays through the entries array, so nothing is copied; the entries
+     * array must not be changed afterwards.
+     *
+     * @param entries the value numbers to include
+     * @param count the number of entries used
+     * @return the new row
+     */
+    public RowMessage subset(int[] entries, int count) {
+        int[] mapped = entries;
+        if (this.entries != null) {
+            mapped = new int[count];
+            for (int k = 0; k < count; k++) {
+                mapped[k] = this.entries[entries[k]];
+            }
+        }
+        return new RowMessage(tag, step, columnTags, columnTagIds, columns,
+                values, mapped, count);
+    }
+
+    /**
+     * Create a ValueMessage for one of the values.
+     *
+     * @param i the value number, from 0 to size()-1
+     * @return the message
+     */
+    public ValueMessage toMessage(int i) {
+        int e = entry(i);
+        return new ValueMessage(columnTags[columns[e]], columnTagIds[columns[e]],
+                step, values[e], ValueMessage.QUALITY_UNKNOWN);
+    }
+
+    /**
+     * Get the values as a map from tag to value. This is built on each call;
+     * consumers should use #size, #getTag and #getValue instead.
+     *
+     * @return the values by tag
+     */
+    @Override
+    public HashMap getData() {
+        HashMap map = new HashMap();
+        for (int i = 0; i < size; i++) {
+            map.put(getTag(i), getValue(i));
+        }
+        return map;
+    }
+
+    private int entry(int i) {
+        return entries == null ? i : entries[i];
+    }
+
+    @Override
+    public String toString() {
+        return "RowMessage{" + "source=" + tag + ", step=" + step + ", data=" + getData() + '}';
+    }
+}
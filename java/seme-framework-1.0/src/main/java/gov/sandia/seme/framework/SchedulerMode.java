@@ -0,0 +1,45 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+/**
+ * Defines how the Engine's workerService schedules tasks. FIXED uses a fixed
+ * pool of maxThreads threads and submits every ModelConnection as its own
+ * task. WORK_STEALING uses a java.util.concurrent.ForkJoinPool sized to the
+ * available processors and schedules the ModelConnection tasks by their
+ * measured cost (see TaskCostModel): expensive models are submitted first and
+ * on their own, and cheap models are grouped into batches.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public enum SchedulerMode {
+
+    /**
+     * Fixed thread pool, one task per connection.
+     */
+    FIXED, /**
+     * Work-stealing pool with cost-based ordering and batching of models.
+     */
+    WORK_STEALING
+
+}
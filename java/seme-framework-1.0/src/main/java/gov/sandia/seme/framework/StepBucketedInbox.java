@@ -0,0 +1,361 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Provides a Mailbox which keeps messages in per-Step buckets, keyed by
+ * Step#getIndex. The buckets live in a power-of-two ring which is sized to the
+ * span of Step indices currently held, so adding a message and draining all of
+ * the messages for a Step are both constant time operations. Messages are
+ * returned in Step order, and in arrival order within a Step.
+ *
+ * All messages in one inbox are expected to share the same Step origin and
+ * step size (the controller's base Step), so that equal indices mean equal
+ * Steps. Messages without a Step are kept in a separate queue and are returned
+ * ahead of any Step-indexed messages.
+ *
+ * All methods are synchronized on the inbox; the router adds messages from its
+ * own thread while the owning connection drains them from a worker thread.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public class StepBucketedInbox extends AbstractQueue<Message> implements Mailbox {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private ArrayDeque<Message>[] buckets;
+    private int mask;
+    private int lowIndex;
+    private int highIndex;
+    private int stepped = 0;
+    private int capacity = Integer.MAX_VALUE;
+    private final ArrayDeque<Message> unstepped = new ArrayDeque();
+
+    /**
+     * Create an empty inbox.
+     */
+    public StepBucketedInbox() {
+        this.buckets = new ArrayDeque[INITIAL_CAPACITY];
+        this.mask = INITIAL_CAPACITY - 1;
+    }
+
+    @Override
+    public synchronized boolean offer(Message msg) {
+        if (msg == null) {
+            throw new NullPointerException();
+        }
+        if (size() >= capacity) {
+            return false;
+        }
+        insert(msg);
+        return true;
+    }
+
+    @Override
+    public synchronized void put(Message msg) {
+        if (msg == null) {
+            throw new NullPointerException();
+        }
+        insert(msg);
+    }
+
+    @Override
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = capacity < 1 ? 1 : capacity;
+    }
+
+    @Override
+    public synchronized int remainingCapacity() {
+        return Math.max(0, capacity - size());
+    }
+
+    private void insert(Message msg) {
+        Step step = msg.getStep();
+        if (step == null) {
+            unstepped.addLast(msg);
+            return;
+        }
+        int idx = step.getIndex();
+        if (stepped == 0) {
+            lowIndex = idx;
+            highIndex = idx;
+        } else {
+            int low = Math.min(lowIndex, idx);
+            int high = Math.max(highIndex, idx);
+            long span = (long) high - (long) low + 1L;
+            if (span > buckets.length) {
+                grow(span);
+            }
+            lowIndex = low;
+            highIndex = high;
+        }
+        ArrayDeque<Message> bucket = buckets[idx & mask];
+        if (bucket == null) {
+            bucket = new ArrayDeque();
+            buckets[idx & mask] = bucket;
+        }
+        bucket.addLast(msg);
+        stepped++;
+    }
+
+    @Override
+    public synchronized Message poll() {
+        if (!unstepped.isEmpty()) {
+            return unstepped.pollFirst();
+        }
+        ArrayDeque<Message> bucket = lowestBucket();
+        if (bucket == null) {
+            return null;
+        }
+        return take(bucket);
+    }
+
+    @Override
+    public synchronized Message peek() {
+        if (!unstepped.isEmpty()) {
+            return unstepped.peekFirst();
+        }
+        ArrayDeque<Message> bucket = lowestBucket();
+        return bucket == null ? null : bucket.peekFirst();
+    }
+
+    @Override
+    public synchronized Message pollUpTo(Step step) {
+        if (!unstepped.isEmpty()) {
+            return unstepped.pollFirst();
+        }
+        ArrayDeque<Message> bucket = lowestBucket();
+        if (bucket == null || lowIndex > step.getIndex()) {
+            return null;
+        }
+        return take(bucket);
+    }
+
+    @Override
+    public synchronized int drainTo(Collection<? super Message> sink) {
+        int count = unstepped.size();
+        sink.addAll(unstepped);
+        unstepped.clear();
+        while (stepped > 0) {
+            count += drainBucket(lowIndex, sink);
+            lowIndex++;
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized int drainUpTo(Step step, Collection<? super Message> sink) {
+        int count = unstepped.size();
+        sink.addAll(unstepped);
+        unstepped.clear();
+        int last = step.getIndex();
+        while (stepped > 0 && lowIndex <= last) {
+            count += drainBucket(lowIndex, sink);
+            if (stepped == 0 || lowIndex == highIndex) {
+                break;
+            }
+            lowIndex++;
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized int drainStep(Step step, Collection<? super Message> sink) {
+        int idx = step.getIndex();
+        if (stepped == 0 || idx < lowIndex || idx > highIndex) {
+            return 0;
+        }
+        return drainBucket(idx, sink);
+    }
+
+    @Override
+    public synchronized int size() {
+        return stepped + unstepped.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        unstepped.clear();
+        this.buckets = new ArrayDeque[INITIAL_CAPACITY];
+        this.mask = INITIAL_CAPACITY - 1;
+        stepped = 0;
+    }
+
+    @Override
+    public synchronized boolean contains(Object o) {
+        if (!(o instanceof Message)) {
+            return false;
+        }
+        Message msg = (Message) o;
+        if (msg.getStep() == null) {
+            return unstepped.contains(msg);
+        }
+        int idx = msg.getStep().getIndex();
+        if (stepped == 0 || idx < lowIndex || idx > highIndex) {
+            return false;
+        }
+        ArrayDeque<Message> bucket = buckets[idx & mask];
+        return bucket != null && bucket.contains(msg);
+    }
+
+    @Override
+    public synchronized boolean remove(Object o) {
+        if (!(o instanceof Message)) {
+            return false;
+        }
+        Message msg = (Message) o;
+        if (msg.getStep() == null) {
+            return unstepped.remove(msg);
+        }
+        int idx = msg.getStep().getIndex();
+        if (stepped == 0 || idx < lowIndex || idx > highIndex) {
+            return false;
+        }
+        ArrayDeque<Message> bucket = buckets[idx & mask];
+        if (bucket == null || !bucket.remove(msg)) {
+            return false;
+        }
+        if (bucket.isEmpty()) {
+            buckets[idx & mask] = null;
+        }
+        stepped--;
+        return true;
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the inbox, in #poll order.
+     *
+     * @return the snapshot iterator
+     */
+    @Override
+    public synchronized Iterator<Message> iterator() {
+        final ArrayList<Message> snapshot = new ArrayList(size());
+        snapshot.addAll(unstepped);
+        if (stepped > 0) {
+            for (int i = lowIndex;; i++) {
+                ArrayDeque<Message> bucket = buckets[i & mask];
+                if (bucket != null) {
+                    snapshot.addAll(bucket);
+                }
+                if (i == highIndex) {
+                    break;
+                }
+            }
+        }
+        final Iterator<Message> it = snapshot.iterator();
+        return new Iterator<Message>() {
+            private Message last;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Message next() {
+                last = it.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                StepBucketedInbox.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    /**
+     * Find the lowest non-empty bucket, advancing lowIndex past empty ones.
+     */
+    private ArrayDeque<Message> lowestBucket() {
+        if (stepped == 0) {
+            return null;
+        }
+        ArrayDeque<Message> bucket = buckets[lowIndex & mask];
+        while (bucket == null) {
+            lowIndex++;
+            bucket = buckets[lowIndex & mask];
+        }
+        return bucket;
+    }
+
+    private Message take(ArrayDeque<Message> bucket) {
+        Message msg = bucket.pollFirst();
+        stepped--;
+        if (bucket.isEmpty()) {
+            buckets[lowIndex & mask] = null;
+        }
+        return msg;
+    }
+
+    private int drainBucket(int idx, Collection<? super Message> sink) {
+        ArrayDeque<Message> bucket = buckets[idx & mask];
+        if (bucket == null) {
+            return 0;
+        }
+        buckets[idx & mask] = null;
+        int count = bucket.size();
+        sink.addAll(bucket);
+        stepped -= count;
+        return count;
+    }
+
+    private void grow(long span) {
+        if (span > MAXIMUM_CAPACITY) {
+            throw new IllegalStateException(
+                    "Inbox Step span of " + span + " exceeds the maximum of "
+                    + MAXIMUM_CAPACITY);
+        }
+        int capacity = buckets.length;
+        while (capacity < span) {
+            capacity <<= 1;
+        }
+        ArrayDeque<Message>[] grown = new ArrayDeque[capacity];
+        int newMask = capacity - 1;
+        for (int i = lowIndex;; i++) {
+            grown[i & newMask] = buckets[i & mask];
+            if (i == highIndex) {
+                break;
+            }
+        }
+        this.buckets = grown;
+        this.mask = newMask;
+    }
+
+}
@@ -0,0 +1,265 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import org.apache.log4j.Logger;
+
+/**
+ * Runs a sequence of Steps through the Engine with several Steps in flight at
+ * once. Each Step still goes through the input, model and output phases in
+ * order, with a routing pass between phases, exactly as in Engine#call; but the
+ * input tasks for Step N+1 may run while the models evaluate Step N and the
+ * outputs write Step N-1.
+ *
+ * Every message for a Step in flight is needed to evaluate it, so the router's
+ * delivery step is kept at the newest Step in flight; bounded inboxes only hold
+ * back messages for Steps which have not yet entered the pipeline.
+ *
+ * The models of a Step are started once its input phase and routing pass are
+ * complete, whatever the Engine's ExecutionMode. With
+ * SchedulerMode#WORK_STEALING they are submitted most expensive first, each as
+ * its own CallableModelBatch so that its cost is recorded.
+ *
+ * Ordering is kept per connection: a connection never runs two tasks at the
+ * same time, and within a phase it always runs its tasks in Step order. Model
+ * and output connections read their inboxes with a Step, so messages which
+ * arrive early for a later Step are left in the inbox until that Step is
+ * evaluated.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+final class StepPipeline {
+
+    private static final Logger LOG = Logger.getLogger(StepPipeline.class);
+    private static final int INPUT = 0;
+    private static final int MODEL = 1;
+    private static final int OUTPUT = 2;
+    private static final String[] PHASE_NAMES = {"input", "model", "output"};
+
+    private final Engine engine;
+    private final int maxStepsInFlight;
+    private final ExecutorCompletionService<PhaseTask> completions;
+    private final LinkedList<StepState> inFlight = new LinkedList();
+    private final HashSet<Messagable> busy = new HashSet();
+    private int outstanding = 0;
+
+    /**
+     * Create a new pipeline for an initialized Engine.
+     *
+     * @param engine the engine whose router and worker service are used
+     * @param maxStepsInFlight the maximum number of Steps being processed at
+     * once (at least 1)
+     */
+    StepPipeline(Engine engine, int maxStepsInFlight) {
+        this.engine = engine;
+        this.maxStepsInFlight = Math.max(1, maxStepsInFlight);
+        this.completions = new ExecutorCompletionService(engine.workerService);
+    }
+
+    /**
+     * Process every Step provided by the iterator. Returns once the last Step
+     * has completed its output phase. While running, the engine's current step
+     * is kept at the oldest Step still in flight.
+     *
+     * @param steps the Steps to process, in order
+     */
+    void run(Iterator<Step> steps) {
+        while (true) {
+            while (inFlight.size() < maxStepsInFlight && steps.hasNext()) {
+                Step step = steps.next();
+                LOG.debug("Running on current step: " + step);
+                inFlight.add(new StepState(step, connectionsFor(INPUT)));
+                engine.router.setDeliveryStep(step);
+            }
+            if (inFlight.isEmpty()) {
+                break;
+            }
+            engine.currentStep = inFlight.getFirst().step;
+            if (!advance() && outstanding > 0) {
+                try {
+                    complete(completions.take());
+                    Future<PhaseTask> next = completions.poll();
+                    while (next != null) {
+                        complete(next);
+                        next = completions.poll();
+                    }
+                } catch (InterruptedException ex) {
+                    LOG.error("Interrupted while running the step pipeline", ex);
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Submit every task that is allowed to run, and move any Step whose
+     * current phase has finished on to the next phase.
+     *
+     * @return true if any Step changed phase
+     */
+    private boolean advance() {
+        boolean progressed = false;
+        HashSet<Messagable> claimed = new HashSet(busy);
+        for (Iterator<StepState> s = inFlight.iterator(); s.hasNext();) {
+            StepState state = s.next();
+            for (Iterator<Messagable> c = state.waiting.iterator(); c.hasNext();) {
+                Messagable conn = c.next();
+                if (claimed.add(conn)) {
+                    c.remove();
+                    submit(state, conn);
+                }
+            }
+            if (state.pending == 0 && state.waiting.isEmpty()) {
+                engine.awaitRouter(PHASE_NAMES[state.phase]);
+                state.phase++;
+                progressed = true;
+                if (state.phase > OUTPUT) {
+                    s.remove();
+                } else {
+                    state.waiting = connectionsFor(state.phase);
+                }
+            }
+        }
+        return progressed;
+    }
+
+    private void submit(StepState state, Messagable conn) {
+        Callable<String> task;
+        switch (state.phase) {
+            case INPUT:
+                ((InputConnection) conn).setCurrentStep(state.step);
+                task = Components.newInputTask((InputConnection) conn);
+                break;
+            case MODEL:
+                ((ModelConnection) conn).setCurrentStep(state.step);
+                if (engine.schedulerMode == SchedulerMode.WORK_STEALING) {
+                    ArrayList<ModelConnection> single = new ArrayList();
+                    single.add((ModelConnection) conn);
+                    task = new CallableModelBatch(single, engine.modelCosts);
+                } else {
+                    task = Components.newModelTask((ModelConnection) conn);
+                }
+                break;
+            default:
+                ((OutputConnection) conn).setCurrentStep(state.step);
+                task = Components.newOutputTask((OutputConnection) conn);
+                break;
+        }
+        busy.add(conn);
+        state.pending++;
+        outstanding++;
+        completions.submit(new PhaseTask(state, conn, task));
+        LOG.trace("Submitted " + PHASE_NAMES[state.phase] + " task: "
+                + conn.getName() + " for step " + state.step);
+    }
+
+    private void complete(Future<PhaseTask> future) {
+        PhaseTask done;
+        try {
+            done = future.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            LOG.error(null, ex);
+            return;
+        }
+        busy.remove(done.conn);
+        done.state.pending--;
+        outstanding--;
+        if (done.error != null) {
+            LOG.error(null, done.error);
+        } else {
+            LOG.trace("Result from " + PHASE_NAMES[done.state.phase] + " task "
+                    + done.conn.getName() + " = " + done.result);
+        }
+    }
+
+    private ArrayList<Messagable> connectionsFor(int phase) {
+        switch (phase) {
+            case INPUT:
+                return new ArrayList(engine.router.getRegisteredInputConnections());
+            case MODEL:
+                if (engine.schedulerMode == SchedulerMode.WORK_STEALING) {
+                    return engine.modelsByCost(
+                            engine.router.getRegisteredModels(), new HashMap());
+                }
+                return new ArrayList(engine.router.getRegisteredModels());
+            default:
+                return new ArrayList(engine.router.getRegisteredOutputConnections());
+        }
+    }
+
+    /**
+     * Progress of one Step through the phases.
+     */
+    private static final class StepState {
+
+        final Step step;
+        int phase = INPUT;
+        int pending = 0;
+        ArrayList<Messagable> waiting;
+
+        StepState(Step step, ArrayList<Messagable> waiting) {
+            this.step = step;
+            this.waiting = waiting;
+        }
+    }
+
+    /**
+     * Wraps a connection task so that its Step and connection are known when
+     * it completes. Exceptions are captured rather than thrown so that the
+     * connection is always released.
+     */
+    private static final class PhaseTask implements Callable<PhaseTask> {
+
+        final StepState state;
+        final Messagable conn;
+        final Callable<String> task;
+        String result;
+        Exception error;
+
+        PhaseTask(StepState state, Messagable conn, Callable<String> task) {
+            this.state = state;
+            this.conn = conn;
+            this.task = task;
+        }
+
+        @Override
+        public PhaseTask call() {
+            try {
+                result = task.call();
+            } catch (Exception ex) {
+                error = ex;
+            }
+            return this;
+        }
+    }
+}
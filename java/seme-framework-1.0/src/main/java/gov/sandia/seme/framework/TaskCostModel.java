@@ -0,0 +1,90 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a running estimate of how long each named task takes to execute. The
+ * estimate is an exponentially weighted moving average of the measured
+ * wall-clock times, so that the cost of a task follows gradual changes (such
+ * as a history window filling up) without reacting to a single slow run.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public final class TaskCostModel {
+
+    private final ConcurrentHashMap<String, Double> costs = new ConcurrentHashMap();
+    private final double weight;
+
+    /**
+     * Create a cost model with the default weight of 0.2 for new measurements.
+     */
+    public TaskCostModel() {
+        this(0.2);
+    }
+
+    /**
+     * Create a cost model.
+     *
+     * @param weight weight given to each new measurement, between 0 and 1
+     */
+    public TaskCostModel(double weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * Record a measured execution time for a task. A task is only measured by
+     * one thread at a time.
+     *
+     * @param name the task name
+     * @param nanos execution time in nanoseconds
+     */
+    public void record(String name, long nanos) {
+        Double old = costs.get(name);
+        if (old == null) {
+            costs.put(name, (double) nanos);
+        } else {
+            costs.put(name, old + weight * (nanos - old));
+        }
+    }
+
+    /**
+     * Get the estimated execution time of a task.
+     *
+     * @param name the task name
+     * @return the estimate in nanoseconds, or -1 if the task has not been
+     * measured
+     */
+    public double estimate(String name) {
+        Double cost = costs.get(name);
+        return cost == null ? -1 : cost;
+    }
+
+    /**
+     * Forget all measurements.
+     */
+    public void clear() {
+        costs.clear();
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+import java.util.HashMap;
+
+/**
+ * Provides a VALUE message for a single data point, holding the value and a
+ * quality flag as primitives rather than in a HashMap. Consumers should check
+ * for a ValueMessage and use #getValue and #getQuality directly; #getData
+ * builds a new HashMap on every call, so it is safe to call from any of the
+ * threads the message is delivered to, but it is not cheap.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public class ValueMessage extends Message {
+
+    private static final long serialVersionUID = 4102339866124510077L;
+
+    /**
+     * The quality of the value was not provided.
+     */
+    public static final byte QUALITY_UNKNOWN = -1;
+    /**
+     * The source reported the value as good.
+     */
+    public static final byte QUALITY_GOOD = 0;
+    /**
+     * The source reported the value as bad.
+     */
+    public static final byte QUALITY_BAD = 1;
+
+    final double value;
+    final byte quality;
+    final String qualityText;
+
+    /**
+     * Create a new value message with unknown quality.
+     *
+     * @param tag the tag of the value
+     * @param step the Step the value belongs to
+     * @param value the value
+     */
+    public ValueMessage(String tag, Step step, double value) {
+        this(tag, -1, step, value, QUALITY_UNKNOWN);
+    }
+
+    /**
+     * Create a new value message.
+     *
+     * @param tag the tag of the value
+     * @param tagId the tag ID (see MessageRouter#getTagId), or -1 to have the
+     * router resolve the tag
+     * @param step the Step the value belongs to
+     * @param value the value
+     * @param quality the quality flag, one of the QUALITY_ constants
+     */
+    public ValueMessage(String tag, int tagId, Step step, double value,
+            byte quality) {
+        this(tag, tagId, step, value, quality, null);
+    }
+
+    /**
+     * Create a new value message which keeps the quality text reported by the
+     * source alongside the quality flag.
+     *
+     * @param tag the tag of the value
+     * @param tagId the tag ID (see MessageRouter#getTagId), or -1 to have the
+     * router resolve the tag
+     * @param step the Step the value belongs to
+     * @param value the value
+     * @param quality the quality flag, one of the QUALITY_ constants
+     * @param qualityText the quality text from the source, or null
+     */
+    public ValueMessage(String tag, int tagId, Step step, double value,
+            byte quality, String qualityText) {
+        super(MessageType.VALUE, tag, null, step);
+        this.tagId = tagId;
+        this.value = value;
+        this.quality = quality;
+        this.qualityText = qualityText;
+    }
+
+    /**
+     * Get the value.
+     *
+     * @return the value
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Get the quality flag.
+     *
+     * @return one of the QUALITY_ constants
+     */
+    public byte getQuality() {
+        return quality;
+    }
+
+    /**
+     * Get the quality text reported by the source.
+     *
+     * @return the quality text, or null if the source did not provide any
+     */
+    public String getQualityText() {
+        return qualityText;
+    }
+
+    /**
+     * Get the index of the message's Step.
+     *
+     * @return the Step index
+     */
+    public long getStepIndex() {
+        return step.getIndex();
+    }
+
+    /**
+     * Get the value as a new map with a "value" key, and a "quality" key if
+     * the quality is known. The quality entry holds the source's quality text
+     * when there is one, and the quality flag otherwise.
+     *
+     * @return the data map
+     */
+    @Override
+    public HashMap getData() {
+        HashMap map = new HashMap();
+        map.put("value", value);
+        if (qualityText != null) {
+            map.put("quality", qualityText);
+        } else if (quality != QUALITY_UNKNOWN) {
+            map.put("quality", quality);
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "ValueMessage{" + "tag=" + tag + ", step=" + step + ", value=" + value + ", quality=" + quality + '}';
+    }
+}
@@ -112,6 +112,11 @@ public abstract class ControllerImpl implements Controller {
      */
     protected Step stepStop;
 
+    /**
+     * The StepFactory for the base Step, looked up on first use.
+     */
+    private volatile StepFactory stepFactory;
+
     public ControllerImpl() {
     }
 
@@ -320,6 +325,21 @@ public abstract class ControllerImpl implements Controller {
         stepBase = step;
     }
 
+    /**
+     * Get the shared StepFactory for the base Step, which creates the Steps
+     * handed to the engine without reflection.
+     *
+     * @return the step factory
+     */
+    public StepFactory getStepFactory() {
+        StepFactory factory = this.stepFactory;
+        if (factory == null || factory.getBaseStep() != stepBase) {
+            factory = StepFactory.forBase(stepBase);
+            this.stepFactory = factory;
+        }
+        return factory;
+    }
+
     @Override
     public Step getStepStart() {
         return stepStart;
@@ -16,9 +16,7 @@
 package gov.sandia.seme.util;
 
 import gov.sandia.seme.framework.Step;
-import static java.lang.Math.ceil;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.logging.Level;
 import org.apache.log4j.Logger;
@@ -89,14 +87,12 @@ public class DateTimeStep implements Step {
         if (value == null) {
             return;
         }
-        double tmp1, tmp2, tmp3;
-        tmp1 = value.getTime();
-        tmp2 = origin.getTime();
-        tmp3 = stepSize.getTime();
-        if (tmp3 == 0) {
+        long size = stepSize.getTime();
+        if (size == 0) {
             return;
         }
-        index = (int) ceil((tmp1 - tmp2) / tmp3);
+        index = (int) ImmutableDateTimeStep.indexOf(origin.getTime(), size,
+                value.getTime());
     }
 
     /**
@@ -159,13 +155,11 @@ public class DateTimeStep implements Step {
         if (value == null) {
             return;
         }
-        double tmp1, tmp2, tmp3;
-        tmp2 = origin.getTime();
-        tmp3 = stepSize.getTime();
-        if (tmp3 == 0) {
+        long size = stepSize.getTime();
+        if (size == 0) {
             return;
         }
-        value = new Date((long)(tmp2 + index * tmp3));
+        value = new Date(origin.getTime() + index * size);
         this.calculate();
     }
 
@@ -230,7 +224,7 @@ public class DateTimeStep implements Step {
     public void setValue(Object value) {
         if (value instanceof String) {
             try {
-                this.value = new SimpleDateFormat(format).parse((String) value);
+                this.value = StepFormat.forPattern(format).parse((String) value);
             } catch (ParseException ex) {
                 java.util.logging.Logger.getLogger(DateTimeStep.class.getName()).log(Level.SEVERE, null, ex);
             }
@@ -249,7 +243,7 @@ public class DateTimeStep implements Step {
             return this.value.toString();
         }
         if (this.value instanceof Date) {
-            return new SimpleDateFormat(format).format(this.value);
+            return StepFormat.forPattern(format).format(this.value);
         }
         return this.value.toString();
     }
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.util;
+
+import gov.sandia.seme.framework.Step;
+import java.util.Date;
+
+/**
+ * Provides an immutable Date/Time step object. The origin, step size and
+ * value are held as milliseconds, and the index is calculated once, with
+ * integer arithmetic, when the step is created. Steps from the same
+ * StepFactory are compared by index alone. Each call to #getOrigin,
+ * #getStepSize or #getValue returns a new Date, so a caller cannot change a
+ * step shared with other messages.
+ *
+ * The index must fit in an int, as required by Step#getIndex; a value more
+ * than Integer#MAX_VALUE steps from the origin is rejected when the step is
+ * created.
+ *
+ * Instances are created through a StepFactory; the setter methods throw
+ * UnsupportedOperationException.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public final class ImmutableDateTimeStep implements Step {
+
+    static final long serialVersionUID = 2774502151693893318L;
+    private final long originMillis;
+    private final long stepMillis;
+    private final long valueMillis;
+    private final int index;
+    private final String format;
+
+    /**
+     * Create a step for a value.
+     *
+     * @param originMillis value for the 0-index, in milliseconds
+     * @param stepMillis delta value between step bins, in milliseconds
+     * @param valueMillis current value of the step, in milliseconds
+     * @param format string parsing/presentation format
+     * @throws IllegalArgumentException if the index does not fit in an int
+     */
+    public ImmutableDateTimeStep(long originMillis, long stepMillis,
+            long valueMillis, String format) {
+        long idx = stepMillis == 0 ? 0 : indexOf(originMillis, stepMillis,
+                valueMillis);
+        if (idx < Integer.MIN_VALUE || idx > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Step value " + valueMillis
+                    + " is too far from the origin " + originMillis
+                    + " for an int index");
+        }
+        this.originMillis = originMillis;
+        this.stepMillis = stepMillis;
+        this.valueMillis = valueMillis;
+        this.format = format == null ? "" : format;
+        this.index = (int) idx;
+    }
+
+    /**
+     * Calculate the index of a value: the number of step bins from the
+     * origin, rounded up.
+     *
+     * @param originMillis value for the 0-index
+     * @param stepMillis delta value between step bins
+     * @param valueMillis the value
+     * @return the index
+     */
+    static long indexOf(long originMillis, long stepMillis, long valueMillis) {
+        long delta = valueMillis - originMillis;
+        long idx = delta / stepMillis;
+        if ((delta % stepMillis != 0) && ((delta > 0) == (stepMillis > 0))) {
+            idx++;
+        }
+        return idx;
+    }
+
+    /**
+     * Compare two steps. Steps sharing this step's origin and step size are
+     * compared by index; any other step is compared by value, or by index if
+     * it does not hold a Date.
+     *
+     * @param s step to be compared
+     * @return comparison (-1=less than, 0=equal, 1=greater than)
+     */
+    @Override
+    public int compareTo(Object s) {
+        if (s instanceof ImmutableDateTimeStep) {
+            ImmutableDateTimeStep o = (ImmutableDateTimeStep) s;
+            if (o.originMillis == originMillis && o.stepMillis == stepMillis) {
+                return Integer.compare(index, o.index);
+            }
+            return Long.compare(valueMillis, o.valueMillis);
+        }
+        Object other = ((Step) s).getValue();
+        if (other instanceof Date) {
+            return Long.compare(valueMillis, ((Date) other).getTime());
+        }
+        return Integer.compare(index, ((Step) s).getIndex());
+    }
+
+    @Override
+    public String getFormat() {
+        return format;
+    }
+
+    @Override
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Get the value for the 0-index in milliseconds.
+     *
+     * @return step origin
+     */
+    public long getOriginMillis() {
+        return originMillis;
+    }
+
+    /**
+     * Get the delta value between bins in milliseconds.
+     *
+     * @return bin size for steps
+     */
+    public long getStepMillis() {
+        return stepMillis;
+    }
+
+    /**
+     * Get the current value in milliseconds.
+     *
+     * @return the step value
+     */
+    public long getValueMillis() {
+        return valueMillis;
+    }
+
+    @Override
+    public Date getOrigin() {
+        return new Date(originMillis);
+    }
+
+    @Override
+    public Date getStepSize() {
+        return new Date(stepMillis);
+    }
+
+    @Override
+    public Date getValue() {
+        return new Date(valueMillis);
+    }
+
+    @Override
+    public void setFormat(String format) {
+        throw new UnsupportedOperationException(
+                "ImmutableDateTimeStep cannot be modified; use a StepFactory");
+    }
+
+    @Override
+    public void setIndex(int index) {
+        throw new UnsupportedOperationException(
+                "ImmutableDateTimeStep cannot be modified; use a StepFactory");
+    }
+
+    @Override
+    public void setOrigin(Object origin) {
+        throw new UnsupportedOperationException(
+                "ImmutableDateTimeStep cannot be modified; use a StepFactory");
+    }
+
+    @Override
+    public void setStepSize(Object stepSize) {
+        throw new UnsupportedOperationException(
+                "ImmutableDateTimeStep cannot be modified; use a StepFactory");
+    }
+
+    @Override
+    public void setValue(Object value) {
+        throw new UnsupportedOperationException(
+                "ImmutableDateTimeStep cannot be modified; use a StepFactory");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ImmutableDateTimeStep)) {
+            return false;
+        }
+        ImmutableDateTimeStep s = (ImmutableDateTimeStep) o;
+        return s.valueMillis == valueMillis && s.originMillis == originMillis
+                && s.stepMillis == stepMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (valueMillis ^ (valueMillis >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        if (this.format.contentEquals("")) {
+            return this.getValue().toString();
+        }
+        return StepFormat.forPattern(format).format(valueMillis);
+    }
+
+}
@@ -21,7 +21,10 @@
 package gov.sandia.seme.util;
 
 import gov.sandia.seme.framework.DataOutOfFrameException;
+import gov.sandia.seme.framework.DataWindow;
 import java.io.Serializable;
+import static java.lang.Math.max;
+import java.nio.DoubleBuffer;
 
 /**
  * Statically allocated, lazy evaluation on get and set, double array. Not
@@ -32,10 +35,11 @@ import java.io.Serializable;
  * @author David Hart, dbhart
  * @endhtmlonly
  */
-public class LazyModulusArray implements Serializable {
+public class LazyModulusArray implements ValueHistory, Serializable {
 
     boolean copyMissing;
     final double[] data;
+    transient DoubleBuffer buffer;
 
     final int frameSize;
     int lastIndex;
@@ -66,6 +70,24 @@ public class LazyModulusArray implements Serializable {
      * @throws DataOutOfFrameException
      */
     public double get(int index) throws DataOutOfFrameException {
+        if (!inFrame(index)) {
+            throw new DataOutOfFrameException("Attempt to read data at index "
+                    + index + " that is out of frame (current frame from Step index "
+                    + (lastIndex - frameSize + 1) + " to " + lastIndex + ")");
+        }
+        return tryGet(index, Double.NaN);
+    }
+
+    /**
+     * Get data from a specific index, without an exception if the index is
+     * out of frame.
+     *
+     * @param index the index to get data values from
+     * @param outOfFrame the value to return if the index is out of frame
+     * @return the data value at the index provided, or outOfFrame
+     */
+    @Override
+    public double tryGet(int index, double outOfFrame) {
         if (index > lastIndex) {
             // new data that shifts frame forward in time
             copyBackData(index);
@@ -75,11 +97,99 @@ public class LazyModulusArray implements Serializable {
         } else if (index > (lastIndex - frameSize)) {
             // If data in frame, we modify value
             return data[index % frameSize];
-        } else {
+        }
+        return outOfFrame;
+    }
+
+    /**
+     * Check whether an index can be read or set: it is in the frame, or after
+     * it.
+     *
+     * @param index the index
+     * @return false if the index has gone out of frame
+     */
+    @Override
+    public boolean inFrame(int index) {
+        return index > (lastIndex - frameSize);
+    }
+
+    /**
+     * Copy the values for a range of indices into an array, oldest first.
+     * The range is checked once, and the values are copied in at most two
+     * blocks.
+     *
+     * @param fromIndex the first index to copy
+     * @param toIndex the last index to copy
+     * @param dest the array to fill
+     * @param offset position in dest of the first value
+     * @throws DataOutOfFrameException if fromIndex is out of frame
+     */
+    public void copyWindow(int fromIndex, int toIndex, double[] dest,
+            int offset) throws DataOutOfFrameException {
+        if (!tryCopyWindow(fromIndex, toIndex, dest, offset)) {
             throw new DataOutOfFrameException("Attempt to read data at index "
-                    + index + " that is out of frame (current frame from Step index "
+                    + fromIndex + " that is out of frame (current frame from Step index "
+                    + (lastIndex - frameSize + 1) + " to " + lastIndex + ")");
+        }
+    }
+
+    @Override
+    public boolean tryCopyWindow(int fromIndex, int toIndex, double[] dest,
+            int offset) {
+        if (!checkWindow(fromIndex, toIndex)) {
+            return false;
+        }
+        RingWindow.copy(buffer(), null, 0, frameSize, fromIndex,
+                toIndex - fromIndex + 1, dest, offset);
+        return true;
+    }
+
+    /**
+     * Get a read-only view of the values for a range of indices.
+     *
+     * @param fromIndex the first index in the window
+     * @param toIndex the last index in the window
+     * @return the window
+     * @throws DataOutOfFrameException if fromIndex is out of frame
+     */
+    public DataWindow getWindow(int fromIndex, int toIndex)
+            throws DataOutOfFrameException {
+        DataWindow window = tryGetWindow(fromIndex, toIndex);
+        if (window == null) {
+            throw new DataOutOfFrameException("Attempt to read data at index "
+                    + fromIndex + " that is out of frame (current frame from Step index "
                     + (lastIndex - frameSize + 1) + " to " + lastIndex + ")");
         }
+        return window;
+    }
+
+    @Override
+    public DataWindow tryGetWindow(int fromIndex, int toIndex) {
+        if (!checkWindow(fromIndex, toIndex)) {
+            return null;
+        }
+        return new RingWindow(buffer(), 0, frameSize, fromIndex,
+                toIndex - fromIndex + 1);
+    }
+
+    private DoubleBuffer buffer() {
+        if (buffer == null) {
+            buffer = DoubleBuffer.wrap(data);
+        }
+        return buffer;
+    }
+
+    private boolean checkWindow(int fromIndex, int toIndex) {
+        if (toIndex < fromIndex) {
+            throw new IllegalArgumentException("Window from index " + fromIndex
+                    + " to " + toIndex + " is empty");
+        }
+        if (toIndex > lastIndex) {
+            copyBackData(toIndex);
+            lastIndex = toIndex;
+            lastModIndex = toIndex % frameSize;
+        }
+        return fromIndex > (lastIndex - frameSize);
     }
 
     /**
@@ -96,6 +206,7 @@ public class LazyModulusArray implements Serializable {
      *
      * @param value the new value for copyMissing
      */
+    @Override
     public void setCopyMissing(boolean value) {
         copyMissing = value;
     }
@@ -105,6 +216,7 @@ public class LazyModulusArray implements Serializable {
      *
      * @return the last index with data
      */
+    @Override
     public int getFrameEnd() {
         return lastIndex;
     }
@@ -114,6 +226,7 @@ public class LazyModulusArray implements Serializable {
      *
      * @return the value of frameSize
      */
+    @Override
     public int getFrameSize() {
         return frameSize;
     }
@@ -139,6 +252,23 @@ public class LazyModulusArray implements Serializable {
      * @throws DataOutOfFrameException
      */
     public void set(int index, double value) throws DataOutOfFrameException {
+        if (!trySet(index, value)) {
+            throw new DataOutOfFrameException("Attempt to load data at index "
+                    + index + " that has gone out of frame (current frame from Step index "
+                    + (lastIndex - frameSize + 1) + " to " + lastIndex + ")");
+        }
+    }
+
+    /**
+     * Add data to the array or set a value at an index, without an exception
+     * if the index is out of frame.
+     *
+     * @param index the index of the data
+     * @param value the data value
+     * @return false if the index is out of frame and the value was dropped
+     */
+    @Override
+    public boolean trySet(int index, double value) {
         if (index > lastIndex) {
             // new data that shifts frame forward in time
             copyBackData(index);
@@ -149,10 +279,9 @@ public class LazyModulusArray implements Serializable {
             // If data in frame, we modify value
             data[index % frameSize] = value;
         } else {
-            throw new DataOutOfFrameException("Attempt to load data at index "
-                    + index + " that has gone out of frame (current frame from Step index "
-                    + (lastIndex - frameSize + 1) + " to " + lastIndex + ")");
+            return false;
         }
+        return true;
     }
 
     @Override
@@ -170,14 +299,14 @@ public class LazyModulusArray implements Serializable {
     }
 
     private void copyBackData(int index) {
-        if (copyMissing) {
-            for (int i = lastIndex + 1; i <= index; i++) {
-                data[i % frameSize] = data[(i - 1) % frameSize];
-            }
-        } else {
-            for (int i = lastIndex + 1; i <= index; i++) {
-                data[i % frameSize] = Double.NaN;
-            }
+        // a gap longer than the frame only needs the frame filled
+        int first = max(lastIndex + 1, index - frameSize + 1);
+        double fill = Double.NaN;
+        if (copyMissing && lastIndex >= 0) {
+            fill = data[lastIndex % frameSize];
+        }
+        for (int i = first; i <= index; i++) {
+            data[i % frameSize] = fill;
         }
     }
 }
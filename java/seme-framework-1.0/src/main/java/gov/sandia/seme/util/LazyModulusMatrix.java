@@ -0,0 +1,590 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.util;
+
+import gov.sandia.seme.framework.DataOutOfFrameException;
+import gov.sandia.seme.framework.DataWindow;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Statically allocated, lazy evaluation on get and set, matrix of doubles
+ * holding the recent history of several data channels. This is the
+ * multi-column form of LazyModulusArray: every column shares a single frame
+ * and write cursor, so moving to a new step fills the gap for all columns at
+ * once. Each column can copy missing values forward or fill them with NaN.
+ *
+ * The values are held in one array, column by column, so the history of a
+ * column is contiguous. A row, the values of every column at one step, is
+ * gathered with #getRow. Not thread safe, but a station's channels are
+ * internal to a single thread, so not a problem.
+ *
+ * The values are normally held on the heap. Large deployments can hold them
+ * outside the heap instead, in direct memory (#allocateDirect) or in a
+ * memory-mapped file (#map), so that channel history does not add to
+ * garbage collection work.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public class LazyModulusMatrix implements Serializable {
+
+    static final long serialVersionUID = 4418705163330960371L;
+    final boolean[] copyMissing;
+    transient DoubleBuffer data;
+    transient DoubleBuffer view;
+    final int columns;
+    final int frameSize;
+    int lastIndex;
+
+    /**
+     * Create a matrix with all values set to NaN.
+     *
+     * @param columns the number of columns (channels)
+     * @param size the frame size (number of steps held)
+     */
+    public LazyModulusMatrix(int columns, int size) {
+        this(columns, size, null);
+    }
+
+    /**
+     * Create a matrix using the buffer provided, with all values set to NaN.
+     *
+     * @param columns the number of columns (channels)
+     * @param size the frame size (number of steps held)
+     * @param buffer storage of at least columns * size values, or null to
+     * hold the values on the heap
+     */
+    protected LazyModulusMatrix(int columns, int size, DoubleBuffer buffer) {
+        if (size < 1) {
+            size = 1;
+        }
+        if (columns < 1) {
+            columns = 1;
+        }
+        this.columns = columns;
+        this.frameSize = size;
+        this.lastIndex = -1;
+        this.copyMissing = new boolean[columns];
+        if (buffer == null) {
+            buffer = DoubleBuffer.wrap(new double[capacity(columns, size)]);
+        }
+        this.data = buffer;
+        for (int i = 0; i < columns * size; i++) {
+            this.data.put(i, Double.NaN);
+        }
+    }
+
+    /**
+     * Create a matrix held in direct memory, outside the heap.
+     *
+     * @param columns the number of columns (channels)
+     * @param size the frame size (number of steps held)
+     * @return the new matrix
+     */
+    public static LazyModulusMatrix allocateDirect(int columns, int size) {
+        int n = capacity(max1(columns), max1(size));
+        DoubleBuffer buffer = ByteBuffer.allocateDirect(n * 8).order(
+                ByteOrder.nativeOrder()).asDoubleBuffer();
+        return new LazyModulusMatrix(columns, size, buffer);
+    }
+
+    /**
+     * Create a matrix held in a memory-mapped temporary file, outside the
+     * heap. The file is deleted when the JVM exits.
+     *
+     * @param columns the number of columns (channels)
+     * @param size the frame size (number of steps held)
+     * @param directory directory for the file, or null for the system
+     * temporary directory
+     * @return the new matrix
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public static LazyModulusMatrix map(int columns, int size, File directory)
+            throws IOException {
+        int n = capacity(max1(columns), max1(size));
+        File file = File.createTempFile("history", ".dat", directory);
+        file.deleteOnExit();
+        DoubleBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    n * 8L).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        }
+        return new LazyModulusMatrix(columns, size, buffer);
+    }
+
+    private static int max1(int value) {
+        return value < 1 ? 1 : value;
+    }
+
+    private static int capacity(int columns, int size) {
+        long n = (long) columns * size;
+        if (n * 8 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("History of " + columns
+                    + " columns by " + size + " steps is too large");
+        }
+        return (int) n;
+    }
+
+    /**
+     * Check whether the values are held outside the heap.
+     *
+     * @return true if the values are in direct memory or a mapped file
+     */
+    public boolean isDirect() {
+        return data.isDirect();
+    }
+
+    /**
+     * Get data from a column at a specific index.
+     *
+     * @param column the column
+     * @param index the index to get data values from
+     * @return the data value at the index provided
+     * @throws DataOutOfFrameException
+     */
+    public double get(int column, int index) throws DataOutOfFrameException {
+        if (!inFrame(index)) {
+            throw outOfFrame("read", index);
+        }
+        return tryGet(column, index, Double.NaN);
+    }
+
+    /**
+     * Get data from a column at a specific index, without an exception if
+     * the index is out of frame.
+     *
+     * @param column the column
+     * @param index the index to get data values from
+     * @param outOfFrame the value to return if the index is out of frame
+     * @return the data value at the index provided, or outOfFrame
+     */
+    public double tryGet(int column, int index, double outOfFrame) {
+        if (index > lastIndex) {
+            advance(index);
+        } else if (index <= (lastIndex - frameSize)) {
+            return outOfFrame;
+        }
+        return data.get(column * frameSize + index % frameSize);
+    }
+
+    /**
+     * Check whether an index can be read or set: it is in the frame, or after
+     * it.
+     *
+     * @param index the index
+     * @return false if the index has gone out of frame
+     */
+    public boolean inFrame(int index) {
+        return index > (lastIndex - frameSize);
+    }
+
+    /**
+     * Add data to a column or set a value at an index.
+     *
+     * @param column the column
+     * @param index the index of the data
+     * @param value the data value
+     * @throws DataOutOfFrameException
+     */
+    public void set(int column, int index, double value)
+            throws DataOutOfFrameException {
+        if (!trySet(column, index, value)) {
+            throw outOfFrame("load", index);
+        }
+    }
+
+    /**
+     * Add data to a column or set a value at an index, without an exception
+     * if the index is out of frame.
+     *
+     * @param column the column
+     * @param index the index of the data
+     * @param value the data value
+     * @return false if the index is out of frame and the value was dropped
+     */
+    public boolean trySet(int column, int index, double value) {
+        if (index > lastIndex) {
+            advance(index);
+        } else if (index <= (lastIndex - frameSize)) {
+            return false;
+        }
+        data.put(column * frameSize + index % frameSize, value);
+        return true;
+    }
+
+    /**
+     * Move the frame forward to an index, filling every column for the new
+     * steps by copying the previous value or setting NaN. Does nothing if the
+     * index is already in the frame.
+     *
+     * @param index the new last index
+     */
+    public void advance(int index) {
+        if (index <= lastIndex) {
+            return;
+        }
+        int first = lastIndex + 1;
+        if (index - first >= frameSize) {
+            // the whole frame is replaced
+            first = index - frameSize + 1;
+        }
+        for (int c = 0; c < columns; c++) {
+            int base = c * frameSize;
+            boolean copy = copyMissing[c] && lastIndex >= 0;
+            double prev = copy ? data.get(base + lastIndex % frameSize) : Double.NaN;
+            for (int i = first; i <= index; i++) {
+                data.put(base + i % frameSize, prev);
+            }
+        }
+        lastIndex = index;
+    }
+
+    /**
+     * Get the values of several columns at an index.
+     *
+     * @param index the index to get data values from
+     * @param cols the columns to read, or null for all columns; positions
+     * with a column less than 0 are left unchanged in out
+     * @param out the array to fill, or null to create a new one
+     * @return the values, in the order of cols
+     * @throws DataOutOfFrameException
+     */
+    public double[] getRow(int index, int[] cols, double[] out)
+            throws DataOutOfFrameException {
+        if (!inFrame(index)) {
+            throw outOfFrame("read", index);
+        }
+        return tryGetRow(index, cols, out);
+    }
+
+    /**
+     * Get the values of several columns at an index, without an exception if
+     * the index is out of frame.
+     *
+     * @param index the index to get data values from
+     * @param cols the columns to read, or null for all columns; positions
+     * with a column less than 0 are left unchanged in out
+     * @param out the array to fill, or null to create a new one
+     * @return the values, in the order of cols, or null if the index is out
+     * of frame
+     */
+    public double[] tryGetRow(int index, int[] cols, double[] out) {
+        int n = cols == null ? columns : cols.length;
+        if (out == null || out.length < n) {
+            out = new double[n];
+        }
+        if (index > lastIndex) {
+            advance(index);
+        } else if (index <= (lastIndex - frameSize)) {
+            return null;
+        }
+        int slot = index % frameSize;
+        for (int i = 0; i < n; i++) {
+            int c = cols == null ? i : cols[i];
+            if (c >= 0) {
+                out[i] = data.get(c * frameSize + slot);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Get the values of a column for a range of indices, oldest first.
+     *
+     * @param column the column
+     * @param firstIndex the first index to read
+     * @param count the number of values to read
+     * @param out the array to fill, or null to create a new one
+     * @return the values
+     * @throws DataOutOfFrameException
+     */
+    public double[] getColumn(int column, int firstIndex, int count,
+            double[] out) throws DataOutOfFrameException {
+        if (out == null || out.length < count) {
+            out = new double[count];
+        }
+        copyWindow(column, firstIndex, firstIndex + count - 1, out, 0);
+        return out;
+    }
+
+    /**
+     * Copy the values of a column for a range of indices into an array,
+     * oldest first.
+     *
+     * @param column the column
+     * @param fromIndex the first index to copy
+     * @param toIndex the last index to copy
+     * @param dest the array to fill
+     * @param offset position in dest of the first value
+     * @throws DataOutOfFrameException if fromIndex is out of frame
+     */
+    public void copyWindow(int column, int fromIndex, int toIndex,
+            double[] dest, int offset) throws DataOutOfFrameException {
+        if (!tryCopyWindow(column, fromIndex, toIndex, dest, offset)) {
+            throw outOfFrame("read", fromIndex);
+        }
+    }
+
+    /**
+     * Copy the values of a column for a range of indices into an array,
+     * without an exception if the range is out of frame.
+     *
+     * @param column the column
+     * @param fromIndex the first index to copy
+     * @param toIndex the last index to copy
+     * @param dest the array to fill
+     * @param offset position in dest of the first value
+     * @return false if fromIndex is out of frame and nothing was copied
+     */
+    public boolean tryCopyWindow(int column, int fromIndex, int toIndex,
+            double[] dest, int offset) {
+        if (!checkWindow(fromIndex, toIndex)) {
+            return false;
+        }
+        if (view == null) {
+            view = data.duplicate();
+        }
+        RingWindow.copy(data, view, column * frameSize, frameSize, fromIndex,
+                toIndex - fromIndex + 1, dest, offset);
+        return true;
+    }
+
+    /**
+     * Get a read-only view of the values of a column for a range of indices.
+     *
+     * @param column the column
+     * @param fromIndex the first index in the window
+     * @param toIndex the last index in the window
+     * @return the window
+     * @throws DataOutOfFrameException if fromIndex is out of frame
+     */
+    public DataWindow getWindow(int column, int fromIndex, int toIndex)
+            throws DataOutOfFrameException {
+        DataWindow window = tryGetWindow(column, fromIndex, toIndex);
+        if (window == null) {
+            throw outOfFrame("read", fromIndex);
+        }
+        return window;
+    }
+
+    /**
+     * Get a read-only view of the values of a column for a range of indices,
+     * without an exception if the range is out of frame.
+     *
+     * @param column the column
+     * @param fromIndex the first index in the window
+     * @param toIndex the last index in the window
+     * @return the window, or null if fromIndex is out of frame
+     */
+    public DataWindow tryGetWindow(int column, int fromIndex, int toIndex) {
+        if (!checkWindow(fromIndex, toIndex)) {
+            return null;
+        }
+        return new RingWindow(data, column * frameSize, frameSize, fromIndex,
+                toIndex - fromIndex + 1);
+    }
+
+    /**
+     * Check a range of indices, moving the frame forward to its end if needed.
+     *
+     * @return false if fromIndex is out of frame
+     */
+    private boolean checkWindow(int fromIndex, int toIndex) {
+        if (toIndex < fromIndex) {
+            throw new IllegalArgumentException("Window from index " + fromIndex
+                    + " to " + toIndex + " is empty");
+        }
+        if (toIndex > lastIndex) {
+            advance(toIndex);
+        }
+        return fromIndex > (lastIndex - frameSize);
+    }
+
+    private DataOutOfFrameException outOfFrame(String action, int index) {
+        return new DataOutOfFrameException("Attempt to " + action
+                + " data at index " + index + " that is out of frame (current frame from Step index "
+                + (lastIndex - frameSize + 1) + " to " + lastIndex + ")");
+    }
+
+    /**
+     * Get a column as the ValueHistory of a single channel. The column shares
+     * this matrix's frame.
+     *
+     * @param column the column
+     * @return the column's history
+     */
+    public ValueHistory column(int column) {
+        if (column < 0 || column >= columns) {
+            throw new IndexOutOfBoundsException("Column " + column
+                    + " is not in a matrix of " + columns + " columns");
+        }
+        return new Column(column);
+    }
+
+    /**
+     * A single column of the matrix.
+     */
+    private final class Column implements ValueHistory {
+
+        private final int column;
+
+        Column(int column) {
+            this.column = column;
+        }
+
+        @Override
+        public boolean inFrame(int index) {
+            return LazyModulusMatrix.this.inFrame(index);
+        }
+
+        @Override
+        public double tryGet(int index, double outOfFrame) {
+            return LazyModulusMatrix.this.tryGet(column, index, outOfFrame);
+        }
+
+        @Override
+        public boolean trySet(int index, double value) {
+            return LazyModulusMatrix.this.trySet(column, index, value);
+        }
+
+        @Override
+        public boolean tryCopyWindow(int fromIndex, int toIndex, double[] dest,
+                int offset) {
+            return LazyModulusMatrix.this.tryCopyWindow(column, fromIndex,
+                    toIndex, dest, offset);
+        }
+
+        @Override
+        public DataWindow tryGetWindow(int fromIndex, int toIndex) {
+            return LazyModulusMatrix.this.tryGetWindow(column, fromIndex,
+                    toIndex);
+        }
+
+        @Override
+        public void setCopyMissing(boolean value) {
+            LazyModulusMatrix.this.setCopyMissing(column, value);
+        }
+
+        @Override
+        public int getFrameEnd() {
+            return lastIndex;
+        }
+
+        @Override
+        public int getFrameSize() {
+            return frameSize;
+        }
+    }
+
+    /**
+     * Get the setting for copyMissing for a column.
+     *
+     * @param column the column
+     * @return the value of copyMissing
+     */
+    public boolean getCopyMissing(int column) {
+        return copyMissing[column];
+    }
+
+    /**
+     * Set the value for copyMissing for a column.
+     *
+     * @param column the column
+     * @param value the new value for copyMissing
+     */
+    public void setCopyMissing(int column, boolean value) {
+        copyMissing[column] = value;
+    }
+
+    /**
+     * Get the number of columns.
+     *
+     * @return the number of columns
+     */
+    public int getColumnCount() {
+        return columns;
+    }
+
+    /**
+     * Get the last index of the matrix.
+     *
+     * @return the last index with data
+     */
+    public int getFrameEnd() {
+        return lastIndex;
+    }
+
+    /**
+     * Get the frame size.
+     *
+     * @return the value of frameSize
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * Get the first index in the matrix.
+     *
+     * @return the first index of the matrix
+     */
+    public int getFrameStart() {
+        int start = lastIndex - frameSize + 1;
+        if (start < 0) {
+            return 0;
+        }
+        return start;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        for (int i = 0; i < columns * frameSize; i++) {
+            out.writeDouble(data.get(i));
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        double[] values = new double[columns * frameSize];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readDouble();
+        }
+        data = DoubleBuffer.wrap(values);
+    }
+
+    @Override
+    public String toString() {
+        return "LazyModulusMatrix{" + "columns=" + columns + ", frameSize="
+                + frameSize + ", lastIndex=" + lastIndex + ", direct=" + isDirect() + '}';
+    }
+
+}
@@ -21,13 +21,17 @@
 package gov.sandia.seme.util;
 
 import gov.sandia.seme.framework.InitializationException;
+import gov.sandia.seme.framework.Mailbox;
+import gov.sandia.seme.framework.MailboxType;
 import gov.sandia.seme.framework.Components;
 import gov.sandia.seme.framework.ConfigurationException;
 import gov.sandia.seme.framework.Descriptor;
 import gov.sandia.seme.framework.Messagable;
 import gov.sandia.seme.framework.Message;
+import gov.sandia.seme.framework.OutboxListener;
 import gov.sandia.seme.framework.Step;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.PriorityBlockingQueue;
@@ -95,19 +99,29 @@ public abstract class MessagableImpl implements Messagable {
     protected volatile boolean running;			//Set default flag for running.
 
     /**
-     * A buffer in case the inbox or outbox fills.
+     * A buffer in case the outbox fills.
      */
     protected PriorityBlockingQueue<Message> buffer = new PriorityBlockingQueue();			//Output Buffer
 
     /**
-     * The inbox for messages to be consumed.
+     * The type of mailbox used for the inbox and outbox.
      */
-    protected PriorityBlockingQueue<Message> inbox = new PriorityBlockingQueue();			//Input Queue
+    protected MailboxType mailboxType = MailboxType.SYNCHRONIZED;
+
+    /**
+     * The inbox for messages to be consumed, bucketed by Step index.
+     */
+    protected Mailbox inbox = mailboxType.newMailbox();			//Input Queue
 
     /**
      * The output for messages which have been produced.
      */
-    protected PriorityBlockingQueue<Message> outbox = new PriorityBlockingQueue();			//Output Queue
+    protected Mailbox outbox = mailboxType.newMailbox();			//Output Queue
+
+    /**
+     * Listener notified when a message is posted to the outbox.
+     */
+    protected volatile OutboxListener outboxListener;
 
     /**
      * A list of processed Steps.
@@ -129,6 +143,11 @@ public abstract class MessagableImpl implements Messagable {
      */
     protected Step baseStep;
 
+    /**
+     * The StepFactory for the base Step, looked up on first use.
+     */
+    private volatile StepFactory stepFactory;
+
     /**
      * Does this connection run if a null Step is passed to it?.
      */
@@ -261,7 +280,7 @@ public abstract class MessagableImpl implements Messagable {
     }
 
     @Override
-    public PriorityBlockingQueue getInboxHandle() {
+    public Mailbox getInboxHandle() {
         return this.inbox;
     }
 
@@ -271,10 +290,31 @@ public abstract class MessagableImpl implements Messagable {
     }
 
     @Override
-    public PriorityBlockingQueue getOutboxHandle() {
+    public Mailbox getOutboxHandle() {
         return this.outbox;
     }
 
+    @Override
+    public MailboxType getMailboxType() {
+        return this.mailboxType;
+    }
+
+    @Override
+    public void setMailboxType(MailboxType type) {
+        if (type == null || type == this.mailboxType) {
+            return;
+        }
+        Mailbox newInbox = type.newMailbox();
+        Mailbox newOutbox = type.newMailbox();
+        this.inbox.drainTo(newInbox);
+        this.outbox.drainTo(newOutbox);
+        newInbox.setCapacity(this.inbox.getCapacity());
+        newOutbox.setCapacity(this.outbox.getCapacity());
+        this.inbox = newInbox;
+        this.outbox = newOutbox;
+        this.mailboxType = type;
+    }
+
     @Override
     public ArrayList<String> getProduces() {
         return this.produces;
@@ -299,29 +339,103 @@ public abstract class MessagableImpl implements Messagable {
 //      }
         } else {																//Message generated.
             //If a message is generated, we attempt to push to the buffer/output queue.
-            if (this.buffer.isEmpty()) {										//If the buffer is empty...
-                if (!this.outbox.offer(m)) {									//Try to add to outbox.
-                    this.buffer.put(m);										//Put message in buffer if outbox is full. Wait if necessary.
-                }
-            } else {															//If the buffer is NOT empty...
-                this.buffer.put(m);											//Add current item to buffer. Wait if necessary.
-                //Attempt to dump all items from buffer into the outbox.
-                //A note to future generations: This method should probably be optimized in the future.
-                Message tm = this.buffer.peek();							//Grab pointer to first message in buffer.
-                while ((this.outbox.offer(tm)) && (!this.buffer.isEmpty())) {	//Try to add to outbox if buffer isn't empty.
-                    this.buffer.remove();									//If successful, remove first message in buffer.
-                    if (!this.buffer.isEmpty()) {							//If buffer isn't empty....
-                        tm = this.buffer.peek();							//Grab pointer to first message in buffer.
-                    }
-                }
+            if (!this.buffer.isEmpty() || !this.outbox.offer(m)) {			//If the buffer is in use or the outbox is full...
+                this.buffer.put(m);											//Add current item to buffer.
+                flushOutboxBuffer();										//Move as much of the buffer as fits into the outbox.
             }
       //Thread debug output with buffer sizes and message contents.
             //if (debug) {
             //  System.out.println("Node \"" + getName() + "\n Message Contents: " + m.data.toString() + "\n" + " Inbox Size: " + this.inbox.size() + "\n" + " Outbox Size: " + this.outbox.size() + "\n" + " Buffer Size: " + this.buffer.size());
             //}
+            OutboxListener listener = this.outboxListener;
+            if (listener != null) {
+                listener.messagePosted(this);
+            }
+        }
+    }
+
+    /**
+     * Push a message to the outbox even if the outbox is full. Input
+     * connections use this for the messages of the Step they have been asked
+     * to read, which must all reach the router before that Step's models run;
+     * the outbox capacity (see #hasOutboxCapacity) only throttles reading ahead
+     * of it. Anything waiting in the overflow buffer is moved to the outbox
+     * first, so the messages stay in order.
+     *
+     * @param m the message to send
+     */
+    protected void putMessageToOutbox(Message m) {
+        if (m == null) {
+            return;
+        }
+        synchronized (this.buffer) {
+            Message tm = this.buffer.poll();
+            while (tm != null) {
+                this.outbox.put(tm);
+                tm = this.buffer.poll();
+            }
+            this.outbox.put(m);
+        }
+        OutboxListener listener = this.outboxListener;
+        if (listener != null) {
+            listener.messagePosted(this);
+        }
+    }
+
+    /**
+     * Move buffered messages into the outbox until the outbox is full or the
+     * buffer is empty.
+     */
+    protected void flushOutboxBuffer() {
+        synchronized (this.buffer) {
+            Message tm = this.buffer.peek();
+            while (tm != null && this.outbox.offer(tm)) {
+                this.buffer.poll();
+                tm = this.buffer.peek();
+            }
         }
     }
 
+    /**
+     * Check whether the outbox can take more messages. Input connections which
+     * read ahead of the current Step call this before producing each batch of
+     * read-ahead messages, and stop (leaving the rest of their input for a
+     * later call) when it returns false. This is what throttles inputs when
+     * the connections downstream fall behind: the router holds messages for
+     * later Steps in an outbox while their destination inboxes are full, so
+     * the outbox fills in turn. Messages for the current Step are sent with
+     * #putMessageToOutbox whatever this returns.
+     *
+     * @return true if the overflow buffer is empty and the outbox has room
+     */
+    public boolean hasOutboxCapacity() {
+        if (!this.buffer.isEmpty()) {
+            flushOutboxBuffer();
+        }
+        return this.buffer.isEmpty() && this.outbox.remainingCapacity() > 0;
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return this.outbox.getCapacity();
+    }
+
+    @Override
+    public void setQueueCapacity(int capacity) {
+        this.inbox.setCapacity(capacity);
+        this.outbox.setCapacity(capacity);
+    }
+
+    @Override
+    public OutboxListener getOutboxListener() {
+        return this.outboxListener;
+    }
+
+    @Override
+    public void setOutboxListener(OutboxListener listener) {
+        this.outboxListener = listener;
+    }
+
     @Override
     public void removeConsumes(String name) {
         //TODO: Fixme. Add null removal handling.
@@ -358,6 +472,24 @@ public abstract class MessagableImpl implements Messagable {
             for (Object key : options.keySet()) {
                 this.setOpt((String) key, options.get(key));
             }
+            Object capacity = options.get("queue capacity");
+            if (capacity != null) {
+                if (!(capacity instanceof Number) || ((Number) capacity).intValue() < 1) {
+                    throw new ConfigurationException("Invalid queue capacity '" + capacity
+                            + "' for " + this.name + " (use a positive integer)");
+                }
+                setQueueCapacity(((Number) capacity).intValue());
+            }
+            Object mailbox = options.get("mailbox");
+            if (mailbox != null) {
+                try {
+                    setMailboxType(MailboxType.valueOf(String.valueOf(mailbox)
+                            .trim().toUpperCase().replace(' ', '_').replace('-', '_')));
+                } catch (IllegalArgumentException ex) {
+                    throw new ConfigurationException("Invalid mailbox '" + mailbox
+                            + "' for " + this.name + " (use 'synchronized' or 'lock free')");
+                }
+            }
         }
     }
 
@@ -368,18 +500,30 @@ public abstract class MessagableImpl implements Messagable {
             // without a step to process -- return null in that case
             return null;
         }
-        Message temp = this.inbox.peek();
-        if (temp == null) {
-            return null;
+        if (step == null) {
+            return this.inbox.poll();
         }
+        return this.inbox.pollUpTo(step);
+    }
+
+    /**
+     * Move every message with a step value equal to (or less than) the Step
+     * provided from the inbox into the collection, in Step order. This is the
+     * bulk equivalent of calling #pollMessageFromInbox(Step) until it returns
+     * null.
+     *
+     * @param step the step to use for comparison
+     * @param sink the collection to receive the messages
+     * @return the number of messages moved
+     */
+    public int drainMessagesFromInbox(Step step, Collection<? super Message> sink) {
         if (step == null) {
-            this.inbox.remove(temp);
-            return temp;
-        } else if (temp.getStep().compareTo(step) < 1) { //Is this correct? I thought compareTo referenced a zero.
-            this.inbox.remove(temp);
-            return temp;
+            if (!this.nullStepOkay) {
+                return 0;
+            }
+            return this.inbox.drainTo(sink);
         }
-        return null;
+        return this.inbox.drainUpTo(step, sink);
     }
 
     @Override
@@ -392,6 +536,21 @@ public abstract class MessagableImpl implements Messagable {
         this.baseStep = baseStep;
     }
 
+    /**
+     * Get the shared StepFactory for the base Step, for creating Steps without
+     * copying the base Step through reflection.
+     *
+     * @return the step factory
+     */
+    public StepFactory getStepFactory() {
+        StepFactory factory = this.stepFactory;
+        if (factory == null || factory.getBaseStep() != baseStep) {
+            factory = StepFactory.forBase(baseStep);
+            this.stepFactory = factory;
+        }
+        return factory;
+    }
+
     @Override
     public String[] parseStatusCode(int code) {
         if (code == 0) {
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.util;
+
+import gov.sandia.seme.framework.DataWindow;
+import java.nio.DoubleBuffer;
+
+/**
+ * Provides a DataWindow onto a range of a ring buffer, such as a
+ * LazyModulusArray or a column of a LazyModulusMatrix. The window handles
+ * the ring wrapping around, and copies values in at most two blocks.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public final class RingWindow implements DataWindow {
+
+    private final DoubleBuffer data;
+    private final int base;
+    private final int frameSize;
+    private final int firstIndex;
+    private final int count;
+
+    /**
+     * Create a window.
+     *
+     * @param data the ring storage
+     * @param base position in data of the start of the ring
+     * @param frameSize the ring size
+     * @param firstIndex Step index of the first value
+     * @param count number of values, no more than frameSize
+     */
+    RingWindow(DoubleBuffer data, int base, int frameSize, int firstIndex,
+            int count) {
+        this.data = data;
+        this.base = base;
+        this.frameSize = frameSize;
+        this.firstIndex = firstIndex;
+        this.count = count;
+    }
+
+    @Override
+    public int getFirstIndex() {
+        return firstIndex;
+    }
+
+    @Override
+    public int getLastIndex() {
+        return firstIndex + count - 1;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public double get(int position) {
+        if (position < 0 || position >= count) {
+            throw new IndexOutOfBoundsException("Position " + position
+                    + " is not in a window of " + count + " values");
+        }
+        return data.get(base + (firstIndex + position) % frameSize);
+    }
+
+    @Override
+    public void copyTo(double[] dest, int offset) {
+        copy(data, null, base, frameSize, firstIndex, count, dest, offset);
+    }
+
+    /**
+     * Copy a range of a ring into an array, in at most two blocks. A view,
+     * a duplicate of data, is only needed for direct buffers; if null, one is
+     * created.
+     */
+    static void copy(DoubleBuffer data, DoubleBuffer view, int base,
+            int frameSize, int firstIndex, int count, double[] dest,
+            int offset) {
+        int slot = firstIndex % frameSize;
+        int run = Math.min(count, frameSize - slot);
+        if (data.hasArray()) {
+            double[] array = data.array();
+            int start = data.arrayOffset() + base;
+            System.arraycopy(array, start + slot, dest, offset, run);
+            if (run < count) {
+                System.arraycopy(array, start, dest, offset + run, count - run);
+            }
+        } else {
+            if (view == null) {
+                view = data.duplicate();
+            }
+            view.position(base + slot);
+            view.get(dest, offset, run);
+            if (run < count) {
+                view.position(base);
+                view.get(dest, offset + run, count - run);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RingWindow{" + "firstIndex=" + firstIndex + ", count=" + count
+                + '}';
+    }
+
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.util;
+
+import gov.sandia.seme.framework.DataWindow;
+import java.io.Serializable;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+/**
+ * Gap-aware storage for a channel that reports only some of its values, such
+ * as a SCADA tag that reports by exception. Only the values actually set are
+ * kept, as (index, value) points in index order; moving the frame forward
+ * costs nothing however long the gap, and steps without a point read as NaN
+ * or, with copyMissing, as the last value set before them. One point from
+ * before the frame is kept so that the last value can be carried forward
+ * into it.
+ *
+ * Points are found by binary search, so a read costs O(log n) for n points in
+ * the frame; appending a new point costs amortized O(1). Not thread safe, but
+ * data channels are internal to a single thread, so not a problem.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public class SparseModulusArray implements ValueHistory, Serializable {
+
+    static final long serialVersionUID = 2146208370711542309L;
+    boolean copyMissing;
+    final int frameSize;
+    int lastIndex;
+    int[] indices;
+    double[] values;
+    int head;
+    int end;
+
+    /**
+     * Create an empty array.
+     *
+     * @param size the frame size (number of steps held)
+     */
+    public SparseModulusArray(int size) {
+        if (size < 1) {
+            size = 1;
+        }
+        this.frameSize = size;
+        this.lastIndex = -1;
+        this.copyMissing = false;
+        int capacity = Math.min(size + 1, 16);
+        this.indices = new int[capacity];
+        this.values = new double[capacity];
+        this.head = 0;
+        this.end = 0;
+    }
+
+    @Override
+    public boolean inFrame(int index) {
+        return index > (lastIndex - frameSize);
+    }
+
+    @Override
+    public double tryGet(int index, double outOfFrame) {
+        if (index > lastIndex) {
+            advance(index);
+        } else if (index <= (lastIndex - frameSize)) {
+            return outOfFrame;
+        }
+        return valueAt(index, find(index));
+    }
+
+    @Override
+    public boolean trySet(int index, double value) {
+        if (index > lastIndex) {
+            advance(index);
+            append(index, value);
+            return true;
+        } else if (index <= (lastIndex - frameSize)) {
+            return false;
+        }
+        int pos = find(index);
+        if (pos >= 0 && indices[pos] == index) {
+            values[pos] = value;
+        } else {
+            insert(pos < 0 ? head : pos + 1, index, value);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean tryCopyWindow(int fromIndex, int toIndex, double[] dest,
+            int offset) {
+        if (toIndex < fromIndex) {
+            throw new IllegalArgumentException("Window from index " + fromIndex
+                    + " to " + toIndex + " is empty");
+        }
+        if (toIndex > lastIndex) {
+            advance(toIndex);
+        }
+        if (fromIndex <= (lastIndex - frameSize)) {
+            return false;
+        }
+        int pos = find(fromIndex);
+        int next = pos < 0 ? head : pos + 1;
+        for (int i = fromIndex; i <= toIndex; i++) {
+            while (next < end && indices[next] <= i) {
+                pos = next++;
+            }
+            dest[offset + i - fromIndex] = valueAt(i, pos);
+        }
+        return true;
+    }
+
+    /**
+     * Get a read-only view of the values for a range of indices. The values
+     * are copied into the window when it is created, so later changes are
+     * not seen through it.
+     *
+     * @param fromIndex the first index in the window
+     * @param toIndex the last index in the window
+     * @return the window, or null if fromIndex is out of frame
+     */
+    @Override
+    public DataWindow tryGetWindow(int fromIndex, int toIndex) {
+        int n = toIndex - fromIndex + 1;
+        double[] copy = new double[Math.max(n, 1)];
+        if (!tryCopyWindow(fromIndex, toIndex, copy, 0)) {
+            return null;
+        }
+        // RingWindow reads position i from slot (fromIndex + i) % n
+        int shift = fromIndex % n;
+        if (shift < 0) {
+            shift += n;
+        }
+        double[] ring = new double[n];
+        for (int i = 0; i < n; i++) {
+            ring[(shift + i) % n] = copy[i];
+        }
+        return new RingWindow(DoubleBuffer.wrap(ring), 0, n, fromIndex, n);
+    }
+
+    /**
+     * Get the setting for copyMissing.
+     *
+     * @return the value of copyMissing
+     */
+    public boolean getCopyMissing() {
+        return copyMissing;
+    }
+
+    @Override
+    public void setCopyMissing(boolean value) {
+        copyMissing = value;
+    }
+
+    @Override
+    public int getFrameEnd() {
+        return lastIndex;
+    }
+
+    @Override
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * Get the number of points held.
+     *
+     * @return the number of values set in, or just before, the frame
+     */
+    public int getPointCount() {
+        return end - head;
+    }
+
+    /**
+     * Move the frame end forward and drop points that can no longer be read:
+     * every point before the frame except the newest.
+     */
+    private void advance(int index) {
+        lastIndex = index;
+        int frameStart = lastIndex - frameSize + 1;
+        while (head + 1 < end && indices[head + 1] < frameStart) {
+            head++;
+        }
+    }
+
+    /**
+     * Find the position of the last point at or before an index.
+     *
+     * @return the position, or -1 if every point is after the index
+     */
+    private int find(int index) {
+        if (end > head && indices[end - 1] <= index) {
+            return end - 1;
+        }
+        int pos = Arrays.binarySearch(indices, head, end, index);
+        pos = pos >= 0 ? pos : -pos - 2;
+        return pos < head ? -1 : pos;
+    }
+
+    private double valueAt(int index, int pos) {
+        if (pos < 0) {
+            return Double.NaN;
+        }
+        if (indices[pos] == index || copyMissing) {
+            return values[pos];
+        }
+        return Double.NaN;
+    }
+
+    private void append(int index, double value) {
+        insert(end, index, value);
+    }
+
+    /**
+     * Insert a point at a position between head and end. If the arrays are
+     * full, the points are first moved down to the start of the arrays, which
+     * are doubled in size unless at least half of them was free.
+     */
+    private void insert(int pos, int index, double value) {
+        if (end == indices.length) {
+            int n = end - head;
+            int[] newIndices = indices;
+            double[] newValues = values;
+            if (head * 2 < indices.length) {
+                newIndices = new int[Math.max(indices.length * 2, 4)];
+                newValues = new double[newIndices.length];
+            }
+            System.arraycopy(indices, head, newIndices, 0, n);
+            System.arraycopy(values, head, newValues, 0, n);
+            indices = newIndices;
+            values = newValues;
+            pos -= head;
+            head = 0;
+            end = n;
+        }
+        System.arraycopy(indices, pos, indices, pos + 1, end - pos);
+        System.arraycopy(values, pos, values, pos + 1, end - pos);
+        indices[pos] = index;
+        values[pos] = value;
+        end++;
+    }
+
+    @Override
+    public String toString() {
+        return "SparseModulusArray{" + "frameSize=" + frameSize + ", lastIndex="
+                + lastIndex + ", points=" + getPointCount() + ", copyMissing="
+                + copyMissing + '}';
+    }
+
+}
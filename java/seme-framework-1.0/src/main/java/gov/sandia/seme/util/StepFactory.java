@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.util;
+
+import gov.sandia.seme.framework.Step;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Creates Steps that share a base Step's origin, step size and format, without
+ * reflection. A DateTimeStep base produces ImmutableDateTimeStep objects, which
+ * can be passed between threads and held in messages without copying;
+ * IntegerStep and DoubleStep bases produce new steps of the same class.
+ *
+ * Controllers and connections obtain the factory for their base Step through
+ * #forBase, so every component working from the controller's base Step shares
+ * a single factory.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public final class StepFactory {
+
+    private static final Map<Step, StepFactory> FACTORIES = new WeakHashMap();
+
+    private final Step base;
+    private final String format;
+    private final boolean dateTime;
+    private final long originMillis;
+    private final long stepMillis;
+
+    /**
+     * Create a factory for a base Step.
+     *
+     * @param base the Step providing the origin, step size and format
+     */
+    public StepFactory(Step base) {
+        if (!(base instanceof DateTimeStep || base instanceof ImmutableDateTimeStep
+                || base instanceof IntegerStep || base instanceof DoubleStep)) {
+            throw new IllegalArgumentException("No StepFactory support for "
+                    + base.getClass().getName());
+        }
+        this.base = base;
+        this.format = base.getFormat() == null ? "" : base.getFormat();
+        this.dateTime = base instanceof DateTimeStep
+                || base instanceof ImmutableDateTimeStep;
+        if (dateTime) {
+            this.originMillis = ((Date) base.getOrigin()).getTime();
+            this.stepMillis = ((Date) base.getStepSize()).getTime();
+        } else {
+            this.originMillis = 0;
+            this.stepMillis = 0;
+        }
+    }
+
+    /**
+     * Get the shared factory for a base Step, creating it on first use.
+     *
+     * @param base the base Step
+     * @return the factory
+     */
+    public static StepFactory forBase(Step base) {
+        synchronized (FACTORIES) {
+            StepFactory factory = FACTORIES.get(base);
+            if (factory == null) {
+                factory = new StepFactory(base);
+                FACTORIES.put(base, factory);
+            }
+            return factory;
+        }
+    }
+
+    /**
+     * Get the base Step.
+     *
+     * @return the base Step
+     */
+    public Step getBaseStep() {
+        return base;
+    }
+
+    /**
+     * Create the Step for an index.
+     *
+     * @param index the step index
+     * @return the new Step
+     */
+    public Step getStep(int index) {
+        if (dateTime) {
+            return new ImmutableDateTimeStep(originMillis, stepMillis,
+                    originMillis + index * stepMillis, format);
+        } else if (base instanceof IntegerStep) {
+            int origin = (Integer) base.getOrigin();
+            int size = (Integer) base.getStepSize();
+            return new IntegerStep(origin, size, origin + index * size, format);
+        } else {
+            double origin = (Double) base.getOrigin();
+            double size = (Double) base.getStepSize();
+            return new DoubleStep(origin, size, origin + index * size, format);
+        }
+    }
+
+    /**
+     * Create the Step for a value. Strings are parsed using the base Step's
+     * format.
+     *
+     * @param value the step value: a Date, a Number or a String
+     * @return the new Step
+     * @throws IllegalArgumentException if a String value cannot be parsed
+     */
+    public Step getStep(Object value) {
+        if (dateTime) {
+            long millis;
+            if (value instanceof Date) {
+                millis = ((Date) value).getTime();
+            } else if (value instanceof Number) {
+                millis = ((Number) value).longValue();
+            } else {
+                try {
+                    millis = StepFormat.forPattern(format).parseMillis(
+                            (String) value);
+                } catch (ParseException ex) {
+                    throw new IllegalArgumentException("Failed to parse step '"
+                            + value + "' using format '" + format + "'", ex);
+                }
+            }
+            return getStepForMillis(millis);
+        }
+        Number num;
+        if (value instanceof Number) {
+            num = (Number) value;
+        } else {
+            try {
+                num = Double.valueOf((String) value);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Failed to parse step '"
+                        + value + "'", ex);
+            }
+        }
+        if (base instanceof IntegerStep) {
+            return new IntegerStep((Integer) base.getOrigin(),
+                    (Integer) base.getStepSize(), num.intValue(), format);
+        }
+        return new DoubleStep((Double) base.getOrigin(),
+                (Double) base.getStepSize(), num.doubleValue(), format);
+    }
+
+    /**
+     * Create the Step for a date/time value in milliseconds.
+     *
+     * @param valueMillis the step value
+     * @return the new Step
+     */
+    public ImmutableDateTimeStep getStepForMillis(long valueMillis) {
+        if (!dateTime) {
+            throw new UnsupportedOperationException(
+                    "Millisecond values require a date/time base step");
+        }
+        return new ImmutableDateTimeStep(originMillis, stepMillis, valueMillis,
+                format);
+    }
+
+    /**
+     * Get a Step equal to another that cannot be changed by the caller. An
+     * ImmutableDateTimeStep is returned as is; any other Step is copied.
+     *
+     * @param step the step to copy
+     * @return the step, or a copy of it
+     */
+    public Step copyOf(Step step) {
+        if (step instanceof ImmutableDateTimeStep) {
+            return step;
+        } else if (step instanceof DateTimeStep) {
+            return new ImmutableDateTimeStep(
+                    ((DateTimeStep) step).getOrigin().getTime(),
+                    ((DateTimeStep) step).getStepSize().getTime(),
+                    ((DateTimeStep) step).getValue().getTime(),
+                    step.getFormat());
+        } else if (step instanceof IntegerStep) {
+            return new IntegerStep((IntegerStep) step);
+        } else if (step instanceof DoubleStep) {
+            return new DoubleStep((DoubleStep) step);
+        }
+        return getStep(step.getIndex());
+    }
+
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.util;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Provides a shared, thread-safe date/time formatter and parser for a
+ * SimpleDateFormat pattern. Instances are immutable and cached by pattern, so
+ * #forPattern can be called wherever a SimpleDateFormat would have been
+ * created. Each thread works with its own SimpleDateFormat, created once.
+ *
+ * Each thread also remembers the last string it parsed and the last value it
+ * formatted. Parsing the same timestamp again (as in tall files, where many
+ * rows share a timestamp) returns the remembered value. For fixed-width
+ * numeric patterns, such as "yyyy-MM-dd HH:mm:ss", a timestamp that differs
+ * from the last one only in its minute and second fields is calculated from
+ * the last value rather than parsed.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public final class StepFormat {
+
+    private static final ConcurrentHashMap<String, StepFormat> FORMATS = new ConcurrentHashMap();
+
+    private final String pattern;
+    private final int minuteStart;
+    private final int minuteEnd;
+    private final int secondStart;
+    private final int secondEnd;
+    private final ThreadLocal<State> state;
+
+    /**
+     * The per-thread formatter and last-value caches.
+     */
+    private static final class State {
+
+        final SimpleDateFormat format;
+        String lastParsed = null;
+        long lastParsedMillis;
+        long lastFormattedMillis;
+        String lastFormatted = null;
+
+        State(String pattern) {
+            this.format = new SimpleDateFormat(pattern);
+        }
+    }
+
+    private StepFormat(final String pattern) {
+        this.pattern = pattern;
+        this.state = new ThreadLocal<State>() {
+            @Override
+            protected State initialValue() {
+                return new State(pattern);
+            }
+        };
+        int[] fields = fixedWidthFields(pattern);
+        this.minuteStart = fields[0];
+        this.minuteEnd = fields[1];
+        this.secondStart = fields[2];
+        this.secondEnd = fields[3];
+    }
+
+    /**
+     * Get the shared StepFormat for a pattern.
+     *
+     * @param pattern a SimpleDateFormat pattern
+     * @return the StepFormat
+     * @throws IllegalArgumentException if the pattern is invalid
+     */
+    public static StepFormat forPattern(String pattern) {
+        StepFormat fmt = FORMATS.get(pattern);
+        if (fmt == null) {
+            new SimpleDateFormat(pattern);  // Validate before caching.
+            fmt = new StepFormat(pattern);
+            StepFormat prev = FORMATS.putIfAbsent(pattern, fmt);
+            if (prev != null) {
+                fmt = prev;
+            }
+        }
+        return fmt;
+    }
+
+    /**
+     * Get the pattern.
+     *
+     * @return the SimpleDateFormat pattern
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Parse a timestamp.
+     *
+     * @param text the timestamp
+     * @return the time in milliseconds
+     * @throws ParseException if the text does not match the pattern
+     */
+    public long parseMillis(String text) throws ParseException {
+        State s = state.get();
+        String last = s.lastParsed;
+        if (last != null) {
+            if (last.equals(text)) {
+                return s.lastParsedMillis;
+            }
+            if (minuteStart >= 0 && text.length() == last.length()
+                    && text.length() == pattern.length()) {
+                long delta = timeOfHourDelta(last, text);
+                if (delta != Long.MIN_VALUE) {
+                    long millis = s.lastParsedMillis + delta;
+                    s.lastParsed = text;
+                    s.lastParsedMillis = millis;
+                    return millis;
+                }
+            }
+        }
+        long millis = s.format.parse(text).getTime();
+        s.lastParsed = text;
+        s.lastParsedMillis = millis;
+        return millis;
+    }
+
+    /**
+     * Parse a timestamp.
+     *
+     * @param text the timestamp
+     * @return the Date
+     * @throws ParseException if the text does not match the pattern
+     */
+    public Date parse(String text) throws ParseException {
+        return new Date(parseMillis(text));
+    }
+
+    /**
+     * Format a time.
+     *
+     * @param millis the time in milliseconds
+     * @return the formatted time
+     */
+    public String format(long millis) {
+        State s = state.get();
+        if (s.lastFormatted == null || s.lastFormattedMillis != millis) {
+            s.lastFormatted = s.format.format(new Date(millis));
+            s.lastFormattedMillis = millis;
+        }
+        return s.lastFormatted;
+    }
+
+    /**
+     * Format a Date.
+     *
+     * @param date the Date
+     * @return the formatted time
+     */
+    public String format(Date date) {
+        return format(date.getTime());
+    }
+
+    /**
+     * Work out the change in time between two timestamps which only differ in
+     * their minute and second fields.
+     *
+     * @return the change in milliseconds, or Long.MIN_VALUE if the timestamps
+     * differ elsewhere or the fields are not valid
+     */
+    private long timeOfHourDelta(String last, String text) {
+        int end = text.length();
+        if (!text.regionMatches(0, last, 0, minuteStart)) {
+            return Long.MIN_VALUE;
+        }
+        int restStart = minuteEnd;
+        if (secondStart >= 0) {
+            if (!text.regionMatches(minuteEnd, last, minuteEnd,
+                    secondStart - minuteEnd)) {
+                return Long.MIN_VALUE;
+            }
+            restStart = secondEnd;
+        }
+        if (!text.regionMatches(restStart, last, restStart, end - restStart)) {
+            return Long.MIN_VALUE;
+        }
+        int newMin = digits(text, minuteStart, minuteEnd);
+        int oldMin = digits(last, minuteStart, minuteEnd);
+        int newSec = 0;
+        int oldSec = 0;
+        if (secondStart >= 0) {
+            newSec = digits(text, secondStart, secondEnd);
+            oldSec = digits(last, secondStart, secondEnd);
+        }
+        if (newMin < 0 || newMin > 59 || oldMin < 0 || newSec < 0
+                || newSec > 59 || oldSec < 0) {
+            return Long.MIN_VALUE;
+        }
+        return (newMin - oldMin) * 60000L + (newSec - oldSec) * 1000L;
+    }
+
+    private static int digits(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Find the character positions of the minute and second fields, if every
+     * field of the pattern is a fixed-width number.
+     *
+     * @return minute start and end, second start and end; -1 where there is
+     * no such field or the pattern is not fixed-width
+     */
+    private static int[] fixedWidthFields(String pattern) {
+        int[] none = new int[]{-1, -1, -1, -1};
+        int[] fields = new int[]{-1, -1, -1, -1};
+        int i = 0;
+        int n = pattern.length();
+        while (i < n) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                return none;
+            }
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))) {
+                i++;
+                continue;
+            }
+            int j = i;
+            while (j < n && pattern.charAt(j) == c) {
+                j++;
+            }
+            int count = j - i;
+            switch (c) {
+                case 'y':
+                    if (count != 2 && count != 4) {
+                        return none;
+                    }
+                    break;
+                case 'M':
+                case 'd':
+                case 'H':
+                case 'h':
+                case 'k':
+                case 'K':
+                    if (count != 2) {
+                        return none;
+                    }
+                    break;
+                case 'S':
+                    if (count != 3) {
+                        return none;
+                    }
+                    break;
+                case 'm':
+                    if (count != 2 || fields[0] >= 0) {
+                        return none;
+                    }
+                    fields[0] = i;
+                    fields[1] = j;
+                    break;
+                case 's':
+                    if (count != 2 || fields[2] >= 0) {
+                        return none;
+                    }
+                    fields[2] = i;
+                    fields[3] = j;
+                    break;
+                default:
+                    return none;
+            }
+            i = j;
+        }
+        if (fields[0] < 0 || (fields[2] >= 0 && fields[2] < fields[0])) {
+            return none;
+        }
+        return fields;
+    }
+
+    @Override
+    public String toString() {
+        return "StepFormat{" + "pattern=" + pattern + '}';
+    }
+}
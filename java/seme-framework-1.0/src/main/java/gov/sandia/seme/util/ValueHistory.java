@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.util;
+
+import gov.sandia.seme.framework.DataWindow;
+
+/**
+ * Storage for the recent values of a single data channel, indexed by Step
+ * index. Implementations keep a frame of the most recent frameSize steps;
+ * reading or setting an index after the frame moves the frame forward, and
+ * indices before the frame are out of frame. None of these methods throw an
+ * exception for an out-of-frame index; they return a value the caller can
+ * check instead.
+ *
+ * @htmlonly
+ * @author David Hart, dbhart
+ * @endhtmlonly
+ */
+public interface ValueHistory {
+
+    /**
+     * Check whether an index can be read or set.
+     *
+     * @param index the index
+     * @return false if the index has gone out of frame
+     */
+    boolean inFrame(int index);
+
+    /**
+     * Get the value at an index.
+     *
+     * @param index the index
+     * @param outOfFrame the value to return if the index is out of frame
+     * @return the value, or outOfFrame
+     */
+    double tryGet(int index, double outOfFrame);
+
+    /**
+     * Set the value at an index.
+     *
+     * @param index the index
+     * @param value the value
+     * @return false if the index is out of frame and the value was dropped
+     */
+    boolean trySet(int index, double value);
+
+    /**
+     * Copy the values for a range of indices into an array, oldest first.
+     *
+     * @param fromIndex the first index to copy
+     * @param toIndex the last index to copy
+     * @param dest the array to fill
+     * @param offset position in dest of the first value
+     * @return false if fromIndex is out of frame and nothing was copied
+     */
+    boolean tryCopyWindow(int fromIndex, int toIndex, double[] dest,
+            int offset);
+
+    /**
+     * Get a read-only view of the values for a range of indices.
+     *
+     * @param fromIndex the first index in the window
+     * @param toIndex the last index in the window
+     * @return the window, or null if fromIndex is out of frame
+     */
+    DataWindow tryGetWindow(int fromIndex, int toIndex);
+
+    /**
+     * Set whether missing values are copied forward from the last value
+     * (true) or read as NaN (false).
+     *
+     * @param value the new value for copyMissing
+     */
+    void setCopyMissing(boolean value);
+
+    /**
+     * Get the last index of the frame.
+     *
+     * @return the last index
+     */
+    int getFrameEnd();
+
+    /**
+     * Get the frame size.
+     *
+     * @return the number of steps held
+     */
+    int getFrameSize();
+
+}
@@ -0,0 +1,63 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class HistoryStorageTest {
+
+    public HistoryStorageTest() {
+    }
+
+    /**
+     * Test of Components#newHistory for each storage type.
+     */
+    @Test
+    public void testNewHistory() throws Exception {
+        System.out.println("newHistory");
+        Components instance = new Components();
+        assertFalse(instance.newHistory(3, 16).isDirect());
+        instance.setHistoryStorage(HistoryStorage.DIRECT);
+        assertTrue(instance.newHistory(3, 16).isDirect());
+        instance.setHistoryStorage(HistoryStorage.MAPPED);
+        assertTrue(instance.newHistory(3, 16).isDirect());
+    }
+
+    /**
+     * Test of the direct memory limit used to check DIRECT requests.
+     */
+    @Test
+    public void testDirectMemoryLimit() {
+        System.out.println("maxDirectMemory");
+        assertEquals(512L << 20, HistoryStorage.parseMemorySize("512m"));
+        assertEquals(2L << 30, HistoryStorage.parseMemorySize("2G"));
+        assertEquals(64L << 10, HistoryStorage.parseMemorySize("64k"));
+        assertEquals(1L << 40, HistoryStorage.parseMemorySize("1t"));
+        assertEquals(4096L, HistoryStorage.parseMemorySize("4096"));
+        assertEquals(-1L, HistoryStorage.parseMemorySize("lots"));
+        assertTrue(HistoryStorage.maxDirectMemory() > 0);
+        assertTrue(HistoryStorage.directMemoryUsed() >= 0);
+    }
+
+}
@@ -0,0 +1,94 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+import gov.sandia.seme.util.IntegerStep;
+import java.util.ArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class LockFreeMailboxTest {
+
+    public LockFreeMailboxTest() {
+    }
+
+    private static Message msg(String tag, int value) {
+        return new Message(MessageType.VALUE, tag, null,
+                new IntegerStep(0, 1, value, "#"));
+    }
+
+    /**
+     * Test of LockFreeMailbox#poll ordering.
+     */
+    @Test
+    public void testPollOrder() {
+        System.out.println("poll");
+        LockFreeMailbox instance = new LockFreeMailbox();
+        Message a = msg("a", 4);
+        Message b = msg("b", 2);
+        Message c = msg("c", 4);
+        instance.offer(a);
+        instance.offer(b);
+        instance.offer(c);
+        assertEquals(3, instance.size());
+        assertEquals(b, instance.poll());
+        assertEquals(a, instance.poll());
+        assertEquals(c, instance.poll());
+        assertNull(instance.poll());
+        assertTrue(instance.isEmpty());
+    }
+
+    /**
+     * Test of LockFreeMailbox with several producer threads.
+     */
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        System.out.println("concurrent producers");
+        final LockFreeMailbox instance = new LockFreeMailbox();
+        final int perThread = 5000;
+        Thread[] producers = new Thread[4];
+        for (int t = 0; t < producers.length; t++) {
+            final String tag = "t" + t;
+            producers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        instance.offer(msg(tag, i % 100));
+                    }
+                }
+            });
+            producers[t].start();
+        }
+        ArrayList<Message> sink = new ArrayList();
+        while (sink.size() < producers.length * perThread / 2) {
+            instance.drainUpTo(new IntegerStep(0, 1, 49, "#"), sink);
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        instance.drainTo(sink);
+        assertEquals(producers.length * perThread, sink.size());
+        assertTrue(instance.isEmpty());
+    }
+
+}
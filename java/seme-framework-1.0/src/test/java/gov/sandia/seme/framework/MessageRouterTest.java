@@ -27,6 +27,10 @@ import gov.sandia.seme.util.DummyOutputConnection;
 import gov.sandia.seme.util.IntegerStep;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.AfterClass;
 import static org.junit.Assert.assertEquals;
@@ -158,6 +162,46 @@ public class MessageRouterTest {
         assertEquals(0, instance.routeSize());
     }
 
+    /**
+     * Test of the compiled routing table and the tag and node ID methods.
+     */
+    @Test
+    public void testCompiledRoutes() {
+        System.out.println("Compiled Route Table Test");
+        DummyGenericConnection node1 = new DummyGenericConnection("Node01", 0);
+        DummyGenericConnection node2 = new DummyGenericConnection("Node02", 0);
+        DummyGenericConnection node3 = new DummyGenericConnection("Node03", 0);
+        node2.addConsumes("TAG1");
+        node3.addConsumes("TAG1");
+        instance.addNode(node1);
+        instance.addNode(node2);
+        instance.addNode(node3);
+        int tag1 = instance.getTagId("TAG1");
+        assertEquals(tag1, instance.getTagId("TAG1"));
+        assertTrue(instance.getTagId("TAG2") != tag1);
+        assertEquals(0, instance.getNodeId("Node01"));
+        assertEquals(2, instance.getNodeId("Node03"));
+        assertEquals(-1, instance.getNodeId("Node04"));
+        assertEquals(2, instance.getDestinations(tag1).length);
+        assertEquals(0, instance.getDestinations(instance.getTagId("TAG2")).length);
+
+        Message msg = new Message(MessageType.VALUE, "TAG1", new HashMap(),
+                new IntegerStep(0, 1, 1, null));
+        msg.setTagId(tag1);
+        node1.pushMessageToOutbox(msg);
+        instance.routeMessageFromNodes();
+        assertEquals(1, node2.getInboxSize());
+        assertEquals(1, node3.getInboxSize());
+
+        instance.removeNode("Node03");
+        assertEquals(1, instance.getDestinations(tag1).length);
+        node1.pushMessageToOutbox(new Message(MessageType.VALUE, "TAG1",
+                new HashMap(), new IntegerStep(0, 1, 2, null)));
+        instance.routeMessageFromNodes();
+        assertEquals(2, node2.getInboxSize());
+        assertEquals(1, node3.getInboxSize());
+    }
+
     /**
      * Test of MessageRouter#setIterations and getIterations methods.
      */
@@ -169,6 +213,209 @@ public class MessageRouterTest {
         assertEquals(iterations, instance.getIterations());
     }
 
+    /**
+     * Test of MessageRouter#awaitRoutingPass methods.
+     */
+    @Test
+    public void testAwaitRoutingPass() throws Exception {
+        System.out.println("Await Routing Pass Test");
+        assertFalse(instance.awaitRoutingPass(10, TimeUnit.MILLISECONDS));
+        ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor();
+        service.scheduleWithFixedDelay(instance, 0, 1, TimeUnit.MILLISECONDS);
+        try {
+            long before = instance.getIterations();
+            instance.awaitRoutingPass();
+            assertTrue(instance.getIterations() > before);
+            assertTrue(instance.awaitRoutingPass(1, TimeUnit.SECONDS));
+        } finally {
+            service.shutdownNow();
+        }
+    }
+
+    /**
+     * Test of MessageRouter#runUntilStopped and messagePosted (push mode).
+     */
+    @Test
+    public void testPushMode() throws Exception {
+        System.out.println("Push Mode Routing Test");
+        DummyGenericConnection node1 = new DummyGenericConnection("Node01", 0);
+        DummyGenericConnection node2 = new DummyGenericConnection("Node02", 0);
+        node1.addProduces("TAG1");
+        node2.addConsumes("TAG1");
+        instance.addNode(node1);
+        instance.addNode(node2);
+        assertTrue(node1.getOutboxListener() == instance);
+        ExecutorService service = Executors.newSingleThreadExecutor();
+        service.submit(new Runnable() {
+            @Override
+            public void run() {
+                instance.runUntilStopped();
+            }
+        });
+        try {
+            instance.awaitRoutingPass();
+            long before = instance.getIterations();
+            node1.pushMessageToOutbox(new Message(MessageType.VALUE, "TAG1",
+                    new HashMap(), new IntegerStep(0, 1, 1, null)));
+            instance.awaitRoutingPass();
+            assertEquals(1, node2.getInboxHandle().size());
+            assertTrue(instance.getIterations() > before);
+        } finally {
+            instance.stopExecution();
+            service.shutdown();
+            assertTrue(service.awaitTermination(1, TimeUnit.SECONDS));
+        }
+        instance.removeNode("Node01");
+        assertTrue(node1.getOutboxListener() == null);
+    }
+
+    /**
+     * Test of MessageRouter#routeMessageFromNodes with a full destination
+     * inbox.
+     */
+    @Test
+    public void testFullInboxHoldsOutbox() {
+        System.out.println("Full Inbox Routing Test");
+        DummyGenericConnection node1 = new DummyGenericConnection("Node01", 0);
+        DummyGenericConnection node2 = new DummyGenericConnection("Node02", 0);
+        node1.addProduces("TAG1");
+        node2.addConsumes("TAG1");
+        node2.setQueueCapacity(1);
+        instance.addNode(node1);
+        instance.addNode(node2);
+        node1.pushMessageToOutbox(new Message(MessageType.VALUE, "TAG1",
+                new HashMap(), new IntegerStep(0, 1, 1, null)));
+        node1.pushMessageToOutbox(new Message(MessageType.VALUE, "TAG1",
+                new HashMap(), new IntegerStep(0, 1, 2, null)));
+        instance.routeMessageFromNodes();
+        instance.routeMessageFromNodes();
+        assertEquals(1, node2.getInboxHandle().size());
+        assertEquals(1, node1.getOutboxHandle().size());
+        node2.pollMessageFromInbox();
+        instance.routeMessageFromNodes();
+        assertEquals(1, node2.getInboxHandle().size());
+        assertEquals(0, node1.getOutboxHandle().size());
+    }
+
+    /**
+     * Test that messages up to the delivery step are delivered to a full
+     * inbox, and later ones are held until the delivery step moves on.
+     */
+    @Test
+    public void testDeliveryStep() {
+        System.out.println("Delivery Step Routing Test");
+        DummyGenericConnection node1 = new DummyGenericConnection("Node01", 0);
+        DummyGenericConnection node2 = new DummyGenericConnection("Node02", 0);
+        node1.addProduces("TAG1");
+        node1.addProduces("TAG2");
+        node2.addConsumes("TAG1");
+        node2.addConsumes("TAG2");
+        node2.setQueueCapacity(1);
+        instance.addNode(node1);
+        instance.addNode(node2);
+        instance.setDeliveryStep(new IntegerStep(0, 1, 1, "#"));
+        node1.pushMessageToOutbox(new ValueMessage("TAG1",
+                new IntegerStep(0, 1, 1, "#"), 1.0));
+        node1.pushMessageToOutbox(new ValueMessage("TAG2",
+                new IntegerStep(0, 1, 1, "#"), 2.0));
+        node1.pushMessageToOutbox(new ValueMessage("TAG1",
+                new IntegerStep(0, 1, 2, "#"), 3.0));
+        instance.run();
+        assertEquals(2, node2.getInboxHandle().size());
+        assertEquals(1, node1.getOutboxHandle().size());
+        instance.setDeliveryStep(new IntegerStep(0, 1, 2, "#"));
+        instance.run();
+        assertEquals(3, node2.getInboxHandle().size());
+        assertEquals(0, node1.getOutboxHandle().size());
+    }
+
+    /**
+     * Test that a RowMessage is split into individual VALUE messages for
+     * destinations which do not accept rows, and only the consumed columns are
+     * delivered.
+     */
+    @Test
+    public void testRowMessageSplit() {
+        System.out.println("Row Message Routing Test");
+        DummyGenericConnection node1 = new DummyGenericConnection("Node01", 0);
+        DummyGenericConnection node2 = new DummyGenericConnection("Node02", 0);
+        DummyGenericConnection node3 = new DummyGenericConnection("Node03", 0);
+        node1.addProduces("TAG1");
+        node1.addProduces("TAG2");
+        node1.addProduces("TAG3");
+        node2.addConsumes("TAG1");
+        node2.addConsumes("TAG3");
+        node3.addConsumes("TAG2");
+        instance.addNode(node1);
+        instance.addNode(node2);
+        instance.addNode(node3);
+        String[] tags = new String[]{"TAG1", "TAG2", "TAG3"};
+        RowMessage row = new RowMessage("Node01", new IntegerStep(0, 1, 1, null),
+                tags, RowMessage.newTagIds(tags), new int[]{0, 1, 2},
+                new double[]{1.0, 2.0, 3.0}, 3);
+        node1.pushMessageToOutbox(row);
+        instance.routeMessageFromNodes();
+        assertEquals(0, node1.getOutboxHandle().size());
+        assertEquals(2, node2.getInboxHandle().size());
+        assertEquals(1, node3.getInboxHandle().size());
+        Message msg = node2.pollMessageFromInbox();
+        assertEquals("TAG1", msg.getTag());
+        assertEquals(1.0, (Double) msg.getData().get("value"), 0.0);
+        msg = node2.pollMessageFromInbox();
+        assertEquals("TAG3", msg.getTag());
+        assertEquals(3.0, (Double) msg.getData().get("value"), 0.0);
+        msg = node3.pollMessageFromInbox();
+        assertEquals("TAG2", msg.getTag());
+        assertEquals(2.0, (Double) msg.getData().get("value"), 0.0);
+    }
+
+    /**
+     * Test that a RowMessageConsumer receives only the columns it consumes,
+     * that rows with the same columns reuse the planned value numbers, and
+     * that a row with different columns is planned again.
+     */
+    @Test
+    public void testRowMessageSubset() {
+        System.out.println("Row Message Subset Test");
+        DummyGenericConnection node1 = new DummyGenericConnection("Node01", 0);
+        RowConsumer node2 = new RowConsumer("Node02");
+        node1.addProduces("TAG1");
+        node1.addProduces("TAG2");
+        node1.addProduces("TAG3");
+        node2.addConsumes("TAG1");
+        node2.addConsumes("TAG3");
+        instance.addNode(node1);
+        instance.addNode(node2);
+        String[] tags = new String[]{"TAG1", "TAG2", "TAG3"};
+        int[] ids = RowMessage.newTagIds(tags);
+        node1.pushMessageToOutbox(new RowMessage("Node01",
+                new IntegerStep(0, 1, 1, null), tags, ids, new int[]{0, 1, 2},
+                new double[]{1.0, 2.0, 3.0}, 3));
+        node1.pushMessageToOutbox(new RowMessage("Node01",
+                new IntegerStep(0, 1, 2, null), tags, ids, new int[]{0, 1, 2},
+                new double[]{4.0, 5.0, 6.0}, 3));
+        node1.pushMessageToOutbox(new RowMessage("Node01",
+                new IntegerStep(0, 1, 3, null), tags, ids, new int[]{2, 0},
+                new double[]{9.0, 7.0}, 2));
+        instance.run();
+        assertEquals(3, node2.getInboxHandle().size());
+        RowMessage first = (RowMessage) node2.pollMessageFromInbox();
+        RowMessage second = (RowMessage) node2.pollMessageFromInbox();
+        RowMessage third = (RowMessage) node2.pollMessageFromInbox();
+        assertEquals(2, first.size());
+        assertEquals("TAG1", first.getTag(0));
+        assertEquals(1.0, first.getValue(0), 0.0);
+        assertEquals("TAG3", first.getTag(1));
+        assertEquals(3.0, first.getValue(1), 0.0);
+        assertEquals(6.0, second.getValue(1), 0.0);
+        assertTrue(first.entries == second.entries);
+        assertEquals(4.0, (Double) second.toMessage(0).getData().get("value"), 0.0);
+        assertTrue(third.size() == 2 && third.entries == null);
+        assertEquals("TAG3", third.getTag(0));
+        assertEquals(9.0, third.getValue(0), 0.0);
+        assertEquals(instance.getTagId("TAG1"), ids[0]);
+    }
+
     /**
      * Test of MessageRouter#setPauseDelay and getPauseDelay methods.
      */
@@ -639,4 +886,15 @@ public class MessageRouterTest {
         System.out.println("  Generic Connection Count: " + gcc);
     }
 
+
+    /**
+     * A connection which accepts rows in its inbox.
+     */
+    private static class RowConsumer extends DummyGenericConnection
+            implements RowMessageConsumer {
+
+        RowConsumer(String label) {
+            super(label, 0);
+        }
+    }
 }
@@ -27,6 +27,8 @@ import gov.sandia.seme.util.IntegerStep;
 import org.junit.After;
 import org.junit.AfterClass;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -76,4 +78,31 @@ public class MessageTest {
         assertEquals(expResult, result);
     }
 
+    /**
+     * Test of ValueMessage#getData and the primitive accessors.
+     */
+    @Test
+    public void testValueMessage() {
+        System.out.println("ValueMessage");
+        Step step = new IntegerStep(0, 1, 7, "#");
+        ValueMessage instance = new ValueMessage("TAG1", 3, step, 2.5,
+                ValueMessage.QUALITY_BAD);
+        assertEquals(MessageType.VALUE, instance.getType());
+        assertEquals(3, instance.getTagId());
+        assertEquals(7L, instance.getStepIndex());
+        assertEquals(2.5, instance.getValue(), 0.0);
+        assertEquals(ValueMessage.QUALITY_BAD, instance.getQuality());
+        assertEquals(2.5, (Double) instance.getData().get("value"), 0.0);
+        assertEquals(ValueMessage.QUALITY_BAD, instance.getData().get("quality"));
+        instance = new ValueMessage("TAG1", step, 1.0);
+        assertEquals(-1, instance.getTagId());
+        assertFalse(instance.getData().containsKey("quality"));
+        assertNotSame(instance.getData(), instance.getData());
+        instance = new ValueMessage("TAG1", -1, step, 1.0,
+                ValueMessage.QUALITY_GOOD, "Ok");
+        assertEquals(ValueMessage.QUALITY_GOOD, instance.getQuality());
+        assertEquals("Ok", instance.getQualityText());
+        assertEquals("Ok", instance.getData().get("quality"));
+    }
+
 }
@@ -0,0 +1,142 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+import gov.sandia.seme.util.IntegerStep;
+import java.util.ArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class StepBucketedInboxTest {
+
+    public StepBucketedInboxTest() {
+    }
+
+    private static Message msg(String tag, int value) {
+        return new Message(MessageType.VALUE, tag, null,
+                new IntegerStep(0, 1, value, "#"));
+    }
+
+    /**
+     * Test of StepBucketedInbox#poll ordering.
+     */
+    @Test
+    public void testPollOrder() {
+        System.out.println("poll");
+        StepBucketedInbox instance = new StepBucketedInbox();
+        Message a = msg("a", 7);
+        Message b = msg("b", 3);
+        Message c = msg("c", 7);
+        Message d = msg("d", 5);
+        instance.put(a);
+        instance.put(b);
+        instance.put(c);
+        instance.put(d);
+        assertEquals(4, instance.size());
+        assertEquals(b, instance.peek());
+        assertEquals(b, instance.poll());
+        assertEquals(d, instance.poll());
+        assertEquals(a, instance.poll());
+        assertEquals(c, instance.poll());
+        assertNull(instance.poll());
+        assertTrue(instance.isEmpty());
+    }
+
+    /**
+     * Test of StepBucketedInbox#pollUpTo method.
+     */
+    @Test
+    public void testPollUpTo() {
+        System.out.println("pollUpTo");
+        StepBucketedInbox instance = new StepBucketedInbox();
+        Message early = msg("a", 2);
+        Message late = msg("a", 9);
+        instance.put(late);
+        instance.put(early);
+        assertEquals(early, instance.pollUpTo(new IntegerStep(0, 1, 5, "#")));
+        assertNull(instance.pollUpTo(new IntegerStep(0, 1, 5, "#")));
+        assertEquals(late, instance.pollUpTo(new IntegerStep(0, 1, 9, "#")));
+    }
+
+    /**
+     * Test of StepBucketedInbox#drainStep and drainUpTo methods.
+     */
+    @Test
+    public void testDrain() {
+        System.out.println("drain");
+        StepBucketedInbox instance = new StepBucketedInbox();
+        for (int i = 0; i < 100; i++) {
+            instance.put(msg("a", i));
+            instance.put(msg("b", i));
+        }
+        ArrayList<Message> sink = new ArrayList();
+        assertEquals(2, instance.drainStep(new IntegerStep(0, 1, 50, "#"), sink));
+        assertEquals("a", sink.get(0).getTag());
+        assertEquals("b", sink.get(1).getTag());
+        assertEquals(198, instance.size());
+        sink.clear();
+        assertEquals(100, instance.drainUpTo(new IntegerStep(0, 1, 50, "#"), sink));
+        assertEquals(0, sink.get(0).getStep().getIndex());
+        assertEquals(49, sink.get(99).getStep().getIndex());
+        assertEquals(98, instance.size());
+        assertEquals(51, instance.peek().getStep().getIndex());
+    }
+
+    /**
+     * Test of StepBucketedInbox growth when the Step span exceeds the ring.
+     */
+    @Test
+    public void testGrowth() {
+        System.out.println("growth");
+        StepBucketedInbox instance = new StepBucketedInbox();
+        instance.put(msg("a", 1000));
+        instance.put(msg("a", -1000));
+        instance.put(msg("a", 0));
+        assertEquals(-1000, instance.poll().getStep().getIndex());
+        assertEquals(0, instance.poll().getStep().getIndex());
+        assertEquals(1000, instance.poll().getStep().getIndex());
+        assertNull(instance.poll());
+    }
+
+    /**
+     * Test of StepBucketedInbox capacity handling.
+     */
+    @Test
+    public void testCapacity() {
+        System.out.println("capacity");
+        StepBucketedInbox instance = new StepBucketedInbox();
+        assertEquals(Integer.MAX_VALUE, instance.getCapacity());
+        instance.setCapacity(2);
+        assertTrue(instance.offer(msg("a", 1)));
+        assertTrue(instance.offer(msg("a", 2)));
+        assertEquals(0, instance.remainingCapacity());
+        assertFalse(instance.offer(msg("a", 3)));
+        instance.put(msg("a", 3));
+        assertEquals(3, instance.size());
+        instance.poll();
+        instance.poll();
+        assertEquals(1, instance.remainingCapacity());
+    }
+
+}
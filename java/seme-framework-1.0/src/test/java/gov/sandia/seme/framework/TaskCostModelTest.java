@@ -0,0 +1,49 @@
+/* 
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.framework;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class TaskCostModelTest {
+
+    public TaskCostModelTest() {
+    }
+
+    /**
+     * Test of TaskCostModel#record and estimate methods.
+     */
+    @Test
+    public void testRecordAndEstimate() {
+        System.out.println("record/estimate");
+        TaskCostModel instance = new TaskCostModel(0.5);
+        assertEquals(-1.0, instance.estimate("A"), 0.0);
+        instance.record("A", 100);
+        assertEquals(100.0, instance.estimate("A"), 0.0);
+        instance.record("A", 200);
+        assertEquals(150.0, instance.estimate("A"), 0.0);
+        instance.record("B", 10);
+        assertEquals(10.0, instance.estimate("B"), 0.0);
+        instance.clear();
+        assertEquals(-1.0, instance.estimate("A"), 0.0);
+    }
+
+}
@@ -23,10 +23,10 @@ package gov.sandia.seme.util;
 import gov.sandia.seme.framework.Message;
 import gov.sandia.seme.framework.MessageType;
 import gov.sandia.seme.framework.Step;
+import gov.sandia.seme.framework.StepBucketedInbox;
 import gov.sandia.seme.util.MessagableImpl;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.concurrent.PriorityBlockingQueue;
 
 /**
  * A dummy implementation of a generic Messageable object for use with software testing.
@@ -74,8 +74,8 @@ public class DummyGenericConnection  extends MessagableImpl {
     }
     
     public void clearBoxes(){
-        this.inbox  = new PriorityBlockingQueue();
-        this.outbox = new PriorityBlockingQueue();
+        this.inbox  = new StepBucketedInbox();
+        this.outbox = new StepBucketedInbox();
     }
     
     public int getInboxSize(){
@@ -22,10 +22,12 @@ package gov.sandia.seme.util;
 
 import gov.sandia.seme.util.LazyModulusArray;
 import gov.sandia.seme.framework.DataOutOfFrameException;
+import gov.sandia.seme.framework.DataWindow;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.junit.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class LazyModulusArrayTest {
@@ -95,6 +97,35 @@ public class LazyModulusArrayTest {
         }
     }
 
+    /**
+     * Test of LazyModulusArray#copyWindow and #getWindow methods, across the
+     * end of the ring.
+     */
+    @Test
+    public void testCopyWindow() throws Exception {
+        System.out.println("copyWindow");
+        LazyModulusArray instance = new LazyModulusArray(20);
+        for (int i = 0; i < 50; i++) {
+            instance.set(i, i);
+        }
+        double[] dest = new double[12];
+        instance.copyWindow(35, 44, dest, 2);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(35.0 + i, dest[i + 2], 0.0);
+        }
+        DataWindow window = instance.getWindow(31, 49);
+        assertEquals(19, window.size());
+        assertEquals(49, window.getLastIndex());
+        assertEquals(39.0, window.get(8), 0.0);
+        instance.set(39, -1.0);
+        assertEquals(-1.0, window.get(8), 0.0);
+        try {
+            instance.copyWindow(29, 40, new double[12], 0);
+            fail("Failed to give exception");
+        } catch (DataOutOfFrameException ex) {
+        }
+    }
+
     /**
      * Test of LazyModulusArray#getCopyMissing method.
      */
@@ -223,4 +254,20 @@ public class LazyModulusArrayTest {
         instance.setCopyMissing(value);
         assertEquals(instance.getCopyMissing(), true);
     }
+
+    /**
+     * Test that a gap longer than the frame is filled, including a first
+     * value far from index 0.
+     */
+    @Test
+    public void testLongGap() throws Exception {
+        System.out.println("long gap");
+        LazyModulusArray instance = new LazyModulusArray(20);
+        instance.setCopyMissing(true);
+        instance.set(5000000, 1.5);
+        assertTrue(Double.isNaN(instance.get(4999990)));
+        instance.set(9000000, 2.5);
+        assertEquals(1.5, instance.get(8999990), 0.0);
+        assertEquals(2.5, instance.get(9000000), 0.0);
+    }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.util;
+
+import gov.sandia.seme.framework.DataOutOfFrameException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class LazyModulusMatrixTest {
+
+    public LazyModulusMatrixTest() {
+    }
+
+    /**
+     * Test of LazyModulusMatrix#get and #set, including the shared frame.
+     */
+    @Test
+    public void testGetSet() throws Exception {
+        System.out.println("get/set");
+        LazyModulusMatrix instance = new LazyModulusMatrix(3, 20);
+        assertTrue(Double.isNaN(instance.get(1, 0)));
+        for (int i = 0; i < 50; i++) {
+            instance.set(0, i, i);
+            instance.set(2, i, -i);
+        }
+        for (int i = 30; i < 50; i++) {
+            assertEquals(i, instance.get(0, i), 0.0);
+            assertEquals(-i, instance.get(2, i), 0.0);
+            assertTrue(Double.isNaN(instance.get(1, i)));
+        }
+        assertEquals(30, instance.getFrameStart());
+        assertEquals(49, instance.getFrameEnd());
+        // moving one column forward moves every column
+        instance.setCopyMissing(2, true);
+        instance.set(0, 55, 55.0);
+        assertTrue(Double.isNaN(instance.get(0, 52)));
+        assertEquals(-49.0, instance.get(2, 55), 0.0);
+        try {
+            instance.get(1, 30);
+            fail("Expected a DataOutOfFrameException");
+        } catch (DataOutOfFrameException ex) {
+        }
+    }
+
+    /**
+     * Test of LazyModulusMatrix#getRow and #getColumn.
+     */
+    @Test
+    public void testRowsAndColumns() throws Exception {
+        System.out.println("getRow/getColumn");
+        LazyModulusMatrix instance = new LazyModulusMatrix(3, 10);
+        for (int i = 0; i < 25; i++) {
+            for (int c = 0; c < 3; c++) {
+                instance.set(c, i, 100 * c + i);
+            }
+        }
+        double[] row = instance.getRow(20, new int[]{2, 0}, null);
+        assertEquals(220.0, row[0], 0.0);
+        assertEquals(20.0, row[1], 0.0);
+        row = instance.getRow(24, null, new double[3]);
+        assertEquals(124.0, row[1], 0.0);
+        double[] col = instance.getColumn(1, 16, 9, null);
+        for (int i = 0; i < 9; i++) {
+            assertEquals(116.0 + i, col[i], 0.0);
+        }
+    }
+
+    /**
+     * Test that the try methods report out-of-frame indices without
+     * exceptions.
+     */
+    @Test
+    public void testTryMethods() throws Exception {
+        System.out.println("tryGet/trySet");
+        LazyModulusMatrix instance = new LazyModulusMatrix(2, 10);
+        assertTrue(instance.trySet(0, 30, 1.5));
+        assertFalse(instance.inFrame(20));
+        assertFalse(instance.trySet(1, 20, 2.5));
+        assertEquals(-1.0, instance.tryGet(1, 20, -1.0), 0.0);
+        assertEquals(1.5, instance.tryGet(0, 30, -1.0), 0.0);
+        assertNull(instance.tryGetRow(15, null, null));
+        assertFalse(instance.tryCopyWindow(0, 20, 30, new double[11], 0));
+        assertNull(instance.tryGetWindow(0, 20, 30));
+        assertEquals(10, instance.tryGetWindow(0, 21, 30).size());
+    }
+
+    /**
+     * Test that direct and memory-mapped matrices behave like heap ones.
+     */
+    @Test
+    public void testOffHeap() throws Exception {
+        System.out.println("allocateDirect/map");
+        LazyModulusMatrix[] instances = new LazyModulusMatrix[]{
+            LazyModulusMatrix.allocateDirect(2, 8),
+            LazyModulusMatrix.map(2, 8, null)};
+        for (LazyModulusMatrix instance : instances) {
+            assertTrue(instance.isDirect());
+            assertTrue(Double.isNaN(instance.get(1, 3)));
+            for (int i = 0; i < 20; i++) {
+                instance.set(0, i, i);
+                instance.set(1, i, -i);
+            }
+            double[] col = instance.getColumn(1, 13, 7, null);
+            for (int i = 0; i < 7; i++) {
+                assertEquals(-13.0 - i, col[i], 0.0);
+            }
+            assertEquals(19.0, instance.getRow(19, null, null)[0], 0.0);
+        }
+        assertFalse(new LazyModulusMatrix(2, 8).isDirect());
+    }
+
+}
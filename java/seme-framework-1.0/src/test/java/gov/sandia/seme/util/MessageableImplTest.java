@@ -23,11 +23,11 @@ package gov.sandia.seme.util;
 import gov.sandia.seme.framework.Components;
 import gov.sandia.seme.framework.ConfigurationException;
 import gov.sandia.seme.framework.Descriptor;
+import gov.sandia.seme.framework.Mailbox;
 import gov.sandia.seme.framework.Message;
 import gov.sandia.seme.framework.Step;
 import gov.sandia.seme.util.MessagableImpl;
 import java.util.ArrayList;
-import java.util.concurrent.PriorityBlockingQueue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -294,8 +294,8 @@ public class MessageableImplTest {
     @Test
     public void testGetInboxHandle() {
         System.out.println("getInboxHandle");
-        PriorityBlockingQueue expResult = instance.inbox;
-        PriorityBlockingQueue result = instance.getInboxHandle();
+        Mailbox expResult = instance.inbox;
+        Mailbox result = instance.getInboxHandle();
         assertEquals(expResult, result);
     }
 
@@ -326,7 +326,7 @@ public class MessageableImplTest {
     @Test
     public void testGetOutboxHandle() {
         System.out.println("Test Get Outbox Handle");
-        PriorityBlockingQueue result = instance.getOutboxHandle();
+        Mailbox result = instance.getOutboxHandle();
         assertEquals(instance.outbox, result);
     }
 
@@ -488,6 +488,27 @@ public class MessageableImplTest {
         assertEquals(null, result);
     }
 
+    /**
+     * Test of MessagableImpl#hasOutboxCapacity method.
+     */
+    @Test
+    public void testHasOutboxCapacity() {
+        System.out.println("hasOutboxCapacity");
+        DummyGenericConnection d = new DummyGenericConnection("test", 0);
+        instance.setQueueCapacity(1);
+        assertEquals(1, instance.getQueueCapacity());
+        assertTrue(instance.hasOutboxCapacity());
+        instance.pushMessageToOutbox(d.getCounterMessage());
+        assertFalse(instance.hasOutboxCapacity());
+        instance.pushMessageToOutbox(d.getCounterMessage());
+        assertEquals(1, instance.outbox.size());
+        instance.getMessageFromOutbox();
+        assertFalse(instance.hasOutboxCapacity());
+        assertEquals(1, instance.outbox.size());
+        instance.getMessageFromOutbox();
+        assertTrue(instance.hasOutboxCapacity());
+    }
+
     /**
      * Test of MessagableImpl#setBaseStep and getBaseStep methods.
      */
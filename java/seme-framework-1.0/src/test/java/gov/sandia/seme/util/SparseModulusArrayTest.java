@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.util;
+
+import gov.sandia.seme.framework.DataWindow;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class SparseModulusArrayTest {
+
+    public SparseModulusArrayTest() {
+    }
+
+    /**
+     * Test that long gaps read as NaN, or as the last value with copyMissing,
+     * and that only the points needed are kept.
+     */
+    @Test
+    public void testGaps() {
+        System.out.println("gaps");
+        SparseModulusArray instance = new SparseModulusArray(100);
+        assertTrue(instance.trySet(5, 1.0));
+        assertTrue(instance.trySet(1000000, 2.0));
+        assertEquals(2, instance.getPointCount());
+        assertTrue(Double.isNaN(instance.tryGet(999950, -1.0)));
+        assertEquals(-1.0, instance.tryGet(5, -1.0), 0.0);
+        instance.setCopyMissing(true);
+        assertEquals(1.0, instance.tryGet(999950, -1.0), 0.0);
+        assertEquals(2.0, instance.tryGet(2000000, -1.0), 0.0);
+        // the point at 1000000 is now before the frame, but still carried
+        assertEquals(1, instance.getPointCount());
+        assertFalse(instance.trySet(1000000, 3.0));
+    }
+
+    /**
+     * Test that a late value is placed in order and carried forward.
+     */
+    @Test
+    public void testLateValue() {
+        System.out.println("late values");
+        SparseModulusArray instance = new SparseModulusArray(10);
+        instance.setCopyMissing(true);
+        instance.trySet(20, 1.0);
+        instance.trySet(30, 3.0);
+        assertTrue(instance.trySet(25, 2.0));
+        assertEquals(1.0, instance.tryGet(24, -1.0), 0.0);
+        assertEquals(2.0, instance.tryGet(27, -1.0), 0.0);
+        assertTrue(instance.trySet(25, 2.5));
+        assertEquals(2.5, instance.tryGet(29, -1.0), 0.0);
+        assertEquals(3, instance.getPointCount());
+    }
+
+    /**
+     * Test of SparseModulusArray#tryCopyWindow and #tryGetWindow against the
+     * dense LazyModulusArray.
+     */
+    @Test
+    public void testWindows() throws Exception {
+        System.out.println("tryCopyWindow/tryGetWindow");
+        for (boolean copyMissing : new boolean[]{false, true}) {
+            SparseModulusArray sparse = new SparseModulusArray(16);
+            LazyModulusArray dense = new LazyModulusArray(16);
+            dense.setCopyMissing(copyMissing);
+            sparse.setCopyMissing(copyMissing);
+            for (int i = 0; i < 200; i += 7) {
+                sparse.trySet(i, i);
+                dense.set(i, i);
+            }
+            double[] expected = new double[12];
+            double[] actual = new double[12];
+            dense.copyWindow(190, 201, expected, 0);
+            assertTrue(sparse.tryCopyWindow(190, 201, actual, 0));
+            DataWindow window = sparse.tryGetWindow(190, 201);
+            for (int i = 0; i < 12; i++) {
+                assertEquals(expected[i], actual[i], 0.0);
+                assertEquals(expected[i], window.get(i), 0.0);
+            }
+            assertEquals(190, window.getFirstIndex());
+            assertFalse(sparse.tryCopyWindow(180, 201, new double[22], 0));
+            assertNull(sparse.tryGetWindow(180, 201));
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.util;
+
+import gov.sandia.seme.framework.Step;
+import java.util.Date;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class StepFactoryTest {
+
+    private static final long DAY = 86400000L;
+
+    public StepFactoryTest() {
+    }
+
+    /**
+     * Test of StepFactory#getStep for a date/time base step.
+     */
+    @Test
+    public void testDateTimeSteps() {
+        System.out.println("getStep (date/time)");
+        DateTimeStep base = new DateTimeStep(new Date(0), new Date(DAY), null,
+                "yyyy-MM-dd");
+        StepFactory instance = StepFactory.forBase(base);
+        assertSame(instance, StepFactory.forBase(base));
+        Step s = instance.getStep(10);
+        assertTrue(s instanceof ImmutableDateTimeStep);
+        assertEquals(10, s.getIndex());
+        assertEquals(new Date(10 * DAY), s.getValue());
+        s = instance.getStep(new Date(10 * DAY + 1));
+        assertEquals(11, s.getIndex());
+        s = instance.getStep(new Date(-DAY - 1));
+        assertEquals(-1, s.getIndex());
+        DateTimeStep old = new DateTimeStep(new Date(0), new Date(DAY),
+                new Date(10 * DAY + 1), "yyyy-MM-dd");
+        assertEquals(old.getIndex(), instance.copyOf(old).getIndex());
+        assertSame(s, instance.copyOf(s));
+    }
+
+    /**
+     * Test that an ImmutableDateTimeStep cannot be changed through its Dates.
+     */
+    @Test
+    public void testImmutableDates() {
+        System.out.println("getValue (immutable)");
+        ImmutableDateTimeStep s = new ImmutableDateTimeStep(0, DAY, 10 * DAY,
+                "yyyy-MM-dd");
+        s.getValue().setTime(0);
+        s.getOrigin().setTime(DAY);
+        assertEquals(new Date(10 * DAY), s.getValue());
+        assertEquals(new Date(0), s.getOrigin());
+        assertEquals(10, s.getIndex());
+    }
+
+    /**
+     * Test that a step whose index does not fit in an int is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testIndexOutOfRange() {
+        System.out.println("ImmutableDateTimeStep (index out of range)");
+        new ImmutableDateTimeStep(0, 1, 1L + Integer.MAX_VALUE, "");
+    }
+
+    /**
+     * Test of ImmutableDateTimeStep#compareTo.
+     */
+    @Test
+    public void testCompareTo() {
+        System.out.println("compareTo");
+        DateTimeStep base = new DateTimeStep(new Date(0), new Date(DAY), null,
+                "yyyy-MM-dd");
+        StepFactory instance = new StepFactory(base);
+        Step a = instance.getStep(3);
+        Step b = instance.getStep(new Date(3 * DAY - 5));
+        Step c = instance.getStep(4);
+        assertEquals(0, a.compareTo(b));
+        assertEquals(-1, a.compareTo(c));
+        assertEquals(1, c.compareTo(b));
+        DateTimeStep d = new DateTimeStep(new Date(0), new Date(DAY),
+                new Date(4 * DAY), "yyyy-MM-dd");
+        assertEquals(0, c.compareTo(d));
+        assertEquals(0, d.compareTo(c));
+    }
+
+    /**
+     * Test of StepFactory#getStep for integer and double base steps.
+     */
+    @Test
+    public void testNumericSteps() {
+        System.out.println("getStep (numeric)");
+        StepFactory ifactory = new StepFactory(new IntegerStep(0, 3, 0, "#"));
+        Step s = ifactory.getStep(5);
+        assertTrue(s instanceof IntegerStep);
+        assertEquals(15, s.getValue());
+        assertEquals(5, ifactory.getStep((Object) 14).getIndex());
+        StepFactory dfactory = new StepFactory(new DoubleStep(1.5, 1.5, 1.5,
+                "#.#"));
+        s = dfactory.getStep(2);
+        assertEquals(4.5, (Double) s.getValue(), 0.0);
+        assertEquals(2, dfactory.getStep("4.5").getIndex());
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 Sandia Corporation.
+ * Under the terms of Contract DE-AC04-94AL85000 with Sandia Corporation, the U.S.
+ * Government retains certain rights in this software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This software was written as part of an Inter-Agency Agreement between Sandia
+ * National Laboratories and the US EPA NHSRC.
+ */
+package gov.sandia.seme.util;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class StepFormatTest {
+
+    public StepFormatTest() {
+    }
+
+    /**
+     * Test that StepFormat#parseMillis matches SimpleDateFormat, including
+     * timestamps handled by the last-value cache.
+     */
+    @Test
+    public void testParse() throws ParseException {
+        System.out.println("parseMillis");
+        String pattern = "yyyy-MM-dd HH:mm:ss";
+        StepFormat instance = StepFormat.forPattern(pattern);
+        assertSame(instance, StepFormat.forPattern(pattern));
+        SimpleDateFormat sdf = new SimpleDateFormat(pattern);
+        String[] stamps = new String[]{"2014-03-01 10:02:00",
+            "2014-03-01 10:02:00", "2014-03-01 10:04:30", "2014-03-01 10:59:59",
+            "2014-03-01 10:00:01", "2014-03-01 11:00:00", "2014-03-02 11:00:00",
+            "2014-03-02 11:07:00"};
+        for (String s : stamps) {
+            assertEquals(s, sdf.parse(s).getTime(), instance.parseMillis(s));
+        }
+        try {
+            instance.parseMillis("not a date");
+            fail("Expected a ParseException");
+        } catch (ParseException ex) {
+        }
+        assertEquals(sdf.parse("2014-03-02 11:08:00").getTime(),
+                instance.parseMillis("2014-03-02 11:08:00"));
+    }
+
+    /**
+     * Test that variable-width patterns are parsed in full.
+     */
+    @Test
+    public void testVariableWidthParse() throws ParseException {
+        System.out.println("parseMillis (variable width)");
+        String pattern = "M/d/yyyy H:mm";
+        StepFormat instance = StepFormat.forPattern(pattern);
+        SimpleDateFormat sdf = new SimpleDateFormat(pattern);
+        String[] stamps = new String[]{"3/1/2014 9:58", "3/1/2014 9:59",
+            "3/1/2014 10:00", "3/1/2014 10:01"};
+        for (String s : stamps) {
+            assertEquals(s, sdf.parse(s).getTime(), instance.parseMillis(s));
+        }
+    }
+
+    /**
+     * Test of StepFormat#format.
+     */
+    @Test
+    public void testFormat() throws ParseException {
+        System.out.println("format");
+        String pattern = "yyyy-MM-dd HH:mm:ss";
+        StepFormat instance = StepFormat.forPattern(pattern);
+        SimpleDateFormat sdf = new SimpleDateFormat(pattern);
+        long t = sdf.parse("2014-03-01 10:02:00").getTime();
+        assertEquals("2014-03-01 10:02:00", instance.format(t));
+        assertEquals("2014-03-01 10:02:00", instance.format(t));
+        assertEquals("2014-03-01 10:03:00", instance.format(t + 60000L));
+    }
+
+}